@@ -0,0 +1,93 @@
+package filltable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Создание синтетических файлов с данными для замеров
+ */
+public class BenchmarkFiles {
+
+    /**
+     * Примерный размер файла с данными, количество строк подбирается под него
+     */
+    public static final int FILE_SIZE = 16 * 1024 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Имя колонки по номеру
+     *
+     * @param index номер колонки
+     * @return имя колонки
+     */
+    public static String column(int index) {
+        return "c" + index;
+    }
+
+    /**
+     * Создаёт временный файл с заголовком и строками данных.
+     * Файл удаляется при завершении JVM.
+     *
+     * @param columnsCount количество колонок
+     * @param nullPercent  доля NULL-значений в процентах
+     * @param valueLength  длина значения в символах
+     * @param rowsCount    количество строк данных, 0 - подобрать под FILE_SIZE
+     * @return созданный файл
+     * @throws IOException ошибка записи файла
+     */
+    public static File create(int columnsCount, int nullPercent, int valueLength, int rowsCount) throws IOException {
+        if (rowsCount == 0) {
+            rowsCount = Math.max(1, FILE_SIZE / (columnsCount * (valueLength + 1)));
+        }
+
+        File file = File.createTempFile("bench", ".tsv");
+        file.deleteOnExit();
+
+        // одинаковый набор значений для всех запусков
+        Random random = new Random(42);
+        char[] value = new char[valueLength];
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writeHeader(writer, columnsCount);
+            for (int row = 0; row < rowsCount; row++) {
+                for (int i = 0; i < columnsCount; i++) {
+                    if (i > 0) {
+                        writer.write('\t');
+                    }
+                    if (random.nextInt(100) < nullPercent) {
+                        writer.write("NULL");
+                        continue;
+                    }
+                    for (int j = 0; j < valueLength; j++) {
+                        value[j] = (char) ('0' + random.nextInt(10));
+                    }
+                    writer.write(value);
+                }
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Записывает строку заголовка с колонками c0, c1, ...
+     *
+     * @param writer       куда записать
+     * @param columnsCount количество колонок
+     * @throws IOException ошибка записи
+     */
+    private static void writeHeader(BufferedWriter writer, int columnsCount) throws IOException {
+        for (int i = 0; i < columnsCount; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(column(i));
+        }
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,82 @@
+package filltable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер построения пересечения колонок файла и таблицы на очень широких заголовках.
+ * В таблице половина колонок совпадает с колонками файла, половина отсутствует в файле.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnsBenchmark {
+
+    /**
+     * Количество колонок файла
+     */
+    @Param({"100", "1000", "10000"})
+    public int columnsCount;
+
+    private File file;
+
+    private Set<String> desiredColumns;
+
+    /**
+     * Создаёт файл для замера
+     *
+     * @throws Exception ошибка записи файла
+     */
+    @Setup
+    public void createFile() throws Exception {
+        file = BenchmarkFiles.create(columnsCount, 0, 1, 1);
+        desiredColumns = new HashSet<>();
+        for (int i = columnsCount / 2; i < columnsCount + columnsCount / 2; i++) {
+            desiredColumns.add(BenchmarkFiles.column(i));
+        }
+    }
+
+    /**
+     * Удаляет файл замера
+     */
+    @TearDown
+    public void deleteFile() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Чтение заголовка и построение пересечения колонок
+     *
+     * @return пересечение колонок
+     * @throws Exception ошибка чтения файла
+     */
+    @Benchmark
+    public ColumnsIntersection setDesiredColumns() throws Exception {
+        DataFile dataFile = new DataFile(file.getPath());
+        try {
+            return dataFile.setDesiredColumns(desiredColumns);
+        } finally {
+            dataFile.close();
+        }
+    }
+}
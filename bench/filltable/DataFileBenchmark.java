@@ -0,0 +1,161 @@
+package filltable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер разбора файла: полный проход по файлу через next() с получением всех значений.
+ * Файлы синтетические, размером около BenchmarkFiles.FILE_SIZE, поэтому время прохода
+ * при разной ширине строк сравнимо и даёт пропускную способность разбора.
+ * Один и тот же файл читается в разных форматах с разделителем табуляцией,
+ * чтобы сравнить стоимость разбора экранирования и кавычек с TSV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataFileBenchmark {
+
+    /**
+     * Количество колонок файла
+     */
+    @Param({"4", "32", "256"})
+    public int columnsCount;
+
+    /**
+     * Доля NULL-значений в процентах
+     */
+    @Param({"0", "50"})
+    public int nullPercent;
+
+    /**
+     * Длина значения в символах
+     */
+    @Param({"8", "64"})
+    public int valueLength;
+
+    /**
+     * Формат, в котором читается файл
+     */
+    @Param({"tsv", "text", "csv"})
+    public String format;
+
+    private File file;
+
+    private FileFormat fileFormat;
+
+    private Set<String> desiredColumns;
+
+    /**
+     * Создаёт файл для замера
+     *
+     * @throws Exception ошибка записи файла
+     */
+    @Setup
+    public void createFile() throws Exception {
+        file = BenchmarkFiles.create(columnsCount, nullPercent, valueLength, 0);
+        fileFormat = new FileFormat(DataFormat.valueOf(format.toUpperCase()), '\t', null, true, null);
+        desiredColumns = new HashSet<>();
+        for (int i = 0; i < columnsCount; i++) {
+            desiredColumns.add(BenchmarkFiles.column(i));
+        }
+    }
+
+    /**
+     * Удаляет файл замера
+     */
+    @TearDown
+    public void deleteFile() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Проход по файлу с получением значений строками, как при вставке через insert
+     *
+     * @return суммарная длина значений
+     * @throws Exception ошибка чтения файла
+     */
+    @Benchmark
+    public long readValues() throws Exception {
+        DataFile dataFile = openFile();
+        try {
+            long length = 0;
+            while (dataFile.next()) {
+                for (int i = 0; i < columnsCount; i++) {
+                    String value = dataFile.getValue(i);
+                    if (value != null) {
+                        length += value.length();
+                    }
+                }
+            }
+            return length;
+        } finally {
+            dataFile.close();
+        }
+    }
+
+    /**
+     * Проход по файлу с получением строк в формате COPY без декодирования
+     *
+     * @return суммарная длина строк
+     * @throws Exception ошибка чтения файла
+     */
+    @Benchmark
+    public long readCopyLines() throws Exception {
+        DataFile dataFile = openFile();
+        try {
+            long length = 0;
+            while (dataFile.next()) {
+                length += dataFile.getCopyLine().length;
+            }
+            return length;
+        } finally {
+            dataFile.close();
+        }
+    }
+
+    /**
+     * Проход по файлу только с проверкой структуры строк
+     *
+     * @return количество строк
+     * @throws Exception ошибка чтения файла
+     */
+    @Benchmark
+    public int readLines() throws Exception {
+        DataFile dataFile = openFile();
+        try {
+            int linesCount = 0;
+            while (dataFile.next()) {
+                linesCount++;
+            }
+            return linesCount;
+        } finally {
+            dataFile.close();
+        }
+    }
+
+    private DataFile openFile() throws Exception {
+        DataFile dataFile = new DataFile(file.getPath(), fileFormat);
+        dataFile.setDesiredColumns(desiredColumns);
+        return dataFile;
+    }
+}
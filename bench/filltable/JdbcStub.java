@@ -0,0 +1,86 @@
+package filltable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+
+/**
+ * Заглушка JDBC для замеров: соединение с таблицей заданных колонок, запросы к которой ничего не делают.
+ * Позволяет отделить затраты программы на подготовку параметров от затрат драйвера и сервера.
+ * COPY заглушкой не поддерживается, загрузку через COPY без сервера выполняет RecordingJdbc.
+ */
+public class JdbcStub {
+
+    private JdbcStub() {
+    }
+
+    /**
+     * Создаёт соединение с таблицей, все колонки которой одного типа
+     *
+     * @param columns  имена колонок таблицы
+     * @param sqlType  тип колонок из java.sql.Types
+     * @param typeName имя типа колонок в PostgreSQL
+     * @return соединение
+     */
+    public static Connection connect(String[] columns, int sqlType, String typeName) {
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return columns.length;
+                case "getColumnName":
+                    return columns[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return sqlType;
+                case "getColumnTypeName":
+                    return typeName;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        ResultSet resultSet = proxy(ResultSet.class, (proxy, method, args) ->
+                method.getName().equals("getMetaData") ? metaData : defaultValue(method.getReturnType()));
+        Statement statement = proxy(Statement.class, (proxy, method, args) ->
+                method.getName().equals("executeQuery") ? resultSet : defaultValue(method.getReturnType()));
+        PreparedStatement preparedStatement = proxy(PreparedStatement.class, (proxy, method, args) ->
+                method.getName().equals("executeBatch") ? new int[0] : defaultValue(method.getReturnType()));
+
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createStatement":
+                    return statement;
+                case "prepareStatement":
+                    return preparedStatement;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(JdbcStub.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Значение по умолчанию для возвращаемого типа метода-заглушки
+     *
+     * @param type возвращаемый тип
+     * @return ноль, false или null
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,371 @@
+package filltable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка пути загрузки на заменителе сервера RecordingJdbc: правильность и скорость каждого способа загрузки.
+ * Файлы синтетические, значение каждой ячейки вычисляется по номеру строки, поэтому ожидаемый результат
+ * не хранится, а вычисляется заново для каждой зафиксированной строки.
+ * Загрузка идёт через FileLoader, Table и Main.tryInsert/tryCopy, как у программы, без сервера.
+ * Проверяется:
+ * 1. Количество зафиксированных и пропущенных строк, в том числе строк, отвергнутых "сервером",
+ * которые ищутся делением порции под точками сохранения (кроме COPY: там ошибка сервера прерывает загрузку);
+ * 2. NULL в файле остаётся NULL;
+ * 3. Значения попадают в свои колонки: порядок колонок файла отличается от таблицы, в файле есть лишняя колонка,
+ * а одной колонки таблицы нет.
+ * Скорость замеряется на файле без ошибок с отключённым хранением строк, лучший из нескольких запусков.
+ * Аргументы: количество строк файла для замера скорости (по умолчанию 200000), путь к файлу базовой скорости
+ * (по умолчанию load-baseline.properties), допустимое падение скорости в процентах (по умолчанию 20)
+ * и check или record, чтобы записать текущую скорость в файл базовой скорости вместо сравнения.
+ * Скорость зависит от машины, поэтому базовая скорость записывается явно на той машине, где идёт проверка.
+ * Код завершения 1 - проверка правильности не прошла. Падение скорости и отсутствие файла базовой скорости
+ * тоже дают код 1, но только при замере не меньше MIN_GATED_ROWS_COUNT строк: на коротком замере скорость
+ * от запуска к запуску меняется больше допуска, поэтому она только выводится предупреждением.
+ * Проверка выполняется сборкой в фазе verify.
+ */
+public class LoadRegressionCheck {
+
+    /**
+     * Колонки таблицы заменителя
+     */
+    private static final String[] TABLE_COLUMNS = {"id", "name", "amount", "day", "note"};
+
+    private static final int[] TABLE_SQL_TYPES = {Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.DATE,
+            Types.VARCHAR};
+
+    private static final String[] TABLE_TYPE_NAMES = {"int4", "varchar", "int4", "date", "varchar"};
+
+    /**
+     * Колонки файла: в другом порядке, без day и с лишней колонкой extra
+     */
+    private static final String[] FILE_COLUMNS = {"note", "id", "extra", "amount", "name"};
+
+    /**
+     * Количество строк файла для проверки правильности
+     */
+    private static final int CHECK_ROWS_COUNT = 20000;
+
+    /**
+     * Количество запусков без замера перед замером скорости, чтобы код успел скомпилироваться
+     */
+    private static final int WARMUP_RUNS_COUNT = 2;
+
+    /**
+     * Наименьшее количество запусков каждого способа при замере скорости, берётся лучший
+     */
+    private static final int RUNS_COUNT = 5;
+
+    /**
+     * Наименьшая длительность замера скорости всех способов, когда падение скорости останавливает сборку:
+     * запуски повторяются, пока она не пройдёт
+     */
+    private static final long MEASURE_NANOS = TimeUnit.SECONDS.toNanos(40);
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Наименьшее количество строк замера, при котором падение скорости останавливает сборку
+     */
+    private static final int MIN_GATED_ROWS_COUNT = 1000000;
+
+    private LoadRegressionCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rowsCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String baselinePath = args.length > 1 ? args[1] : "load-baseline.properties";
+        int tolerancePercent = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        boolean isRecord = args.length > 3 && args[3].equals("record");
+        boolean isSpeedGated = rowsCount >= MIN_GATED_ROWS_COUNT;
+
+        List<String> failures = new ArrayList<>();
+        for (var loadMode : LoadMode.values()) {
+            checkCorrectness(loadMode, failures);
+        }
+
+        Properties current = new Properties();
+        File file = createFile(rowsCount, false, false);
+        double[] rates = measure(file, rowsCount, isSpeedGated ? MEASURE_NANOS : 0, failures);
+        for (var loadMode : LoadMode.values()) {
+            double rowsPerSecond = rates[loadMode.ordinal()];
+            current.setProperty(loadMode.name().toLowerCase(), String.format(Locale.ROOT, "%.0f", rowsPerSecond));
+            System.out.printf(Locale.ROOT, "%-6s %12.0f строк/с\n", loadMode.name().toLowerCase(), rowsPerSecond);
+        }
+        if (isRecord) {
+            try (OutputStream output = Files.newOutputStream(Paths.get(baselinePath))) {
+                current.store(output, "rows per second by load mode");
+            }
+            System.out.printf("Базовая скорость записана в %s\n", baselinePath);
+        } else {
+            List<String> speedFailures = new ArrayList<>();
+            compareWithBaseline(current, baselinePath, tolerancePercent, speedFailures);
+            if (isSpeedGated) {
+                failures.addAll(speedFailures);
+            } else {
+                for (var speedFailure : speedFailures) {
+                    System.out.println("Предупреждение: " + speedFailure);
+                }
+                if (!speedFailures.isEmpty()) {
+                    System.out.printf("Скорость не проверяется: замер на %d строках, нужно не меньше %d\n",
+                            rowsCount, MIN_GATED_ROWS_COUNT);
+                }
+            }
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("Проверка пройдена");
+            return;
+        }
+        for (var failure : failures) {
+            System.out.println("Ошибка: " + failure);
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Загрузить файл с ошибочными строками с сохранением строк и сравнить результат с ожидаемым
+     *
+     * @param loadMode способ загрузки
+     * @param failures найденные ошибки, дополняются
+     * @throws Exception ошибка создания файла или загрузки
+     */
+    private static void checkCorrectness(LoadMode loadMode, List<String> failures) throws Exception {
+        // ошибка сервера прерывает COPY целиком, поэтому для COPY в файле только ошибки, найденные на клиенте
+        boolean hasServerErrors = loadMode != LoadMode.COPY;
+        File file = createFile(CHECK_ROWS_COUNT, true, hasServerErrors);
+        RecordingJdbc jdbc = new RecordingJdbc(TABLE_COLUMNS, TABLE_SQL_TYPES, TABLE_TYPE_NAMES, true);
+        FileLoader loader = load(loadMode, file, jdbc);
+        String mode = loadMode.name().toLowerCase();
+
+        int expectedErrors = 0;
+        for (int id = 1; id <= CHECK_ROWS_COUNT; id++) {
+            if (isRejected(id, hasServerErrors)) {
+                expectedErrors++;
+            }
+        }
+        if (loader.getErrorsCount() != expectedErrors) {
+            failures.add(String.format("%s: пропущено строк %d, ожидалось %d", mode, loader.getErrorsCount(),
+                    expectedErrors));
+        }
+        if (jdbc.getCommittedRowsCount() != CHECK_ROWS_COUNT - expectedErrors) {
+            failures.add(String.format("%s: зафиксировано строк %d, ожидалось %d", mode,
+                    jdbc.getCommittedRowsCount(), CHECK_ROWS_COUNT - expectedErrors));
+        }
+
+        Set<String> expectedColumns = Set.of("note", "id", "amount", "name");
+        Set<Integer> ids = new HashSet<>();
+        for (var row : jdbc.getCommittedRows()) {
+            if (!row.keySet().equals(expectedColumns)) {
+                failures.add(String.format("%s: вставлены колонки %s, ожидались %s", mode, row.keySet(),
+                        expectedColumns));
+                return;
+            }
+            int id = Integer.parseInt(row.get("id"));
+            String error = checkRow(id, row, hasServerErrors);
+            if (error == null && !ids.add(id)) {
+                error = "строка вставлена дважды";
+            }
+            if (error != null) {
+                failures.add(String.format("%s: строка id=%d: %s", mode, id, error));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Загрузить файл несколько раз каждым способом без сохранения строк и получить лучшую скорость после разогрева.
+     * Способы чередуются по кругу, чтобы временное замедление машины сказалось на всех способах, а не на одном,
+     * и круги повторяются не меньше RUNS_COUNT раз и не меньше заданного времени.
+     *
+     * @param file         файл без ошибочных строк
+     * @param rowsCount    количество строк файла
+     * @param measureNanos наименьшая длительность замера
+     * @param failures     найденные ошибки, дополняются
+     * @return строк в секунду по номеру способа загрузки
+     * @throws Exception ошибка загрузки
+     */
+    private static double[] measure(File file, int rowsCount, long measureNanos, List<String> failures)
+            throws Exception {
+        LoadMode[] loadModes = LoadMode.values();
+        for (int run = 0; run < WARMUP_RUNS_COUNT; run++) {
+            for (var loadMode : loadModes) {
+                load(loadMode, file, new RecordingJdbc(TABLE_COLUMNS, TABLE_SQL_TYPES, TABLE_TYPE_NAMES, false));
+            }
+        }
+
+        double[] best = new double[loadModes.length];
+        long measureStartNanos = System.nanoTime();
+        for (int run = 0; run < RUNS_COUNT || System.nanoTime() - measureStartNanos < measureNanos; run++) {
+            for (var loadMode : loadModes) {
+                RecordingJdbc jdbc = new RecordingJdbc(TABLE_COLUMNS, TABLE_SQL_TYPES, TABLE_TYPE_NAMES, false);
+                long startNanos = System.nanoTime();
+                load(loadMode, file, jdbc);
+                double seconds = (System.nanoTime() - startNanos) / 1e9;
+                if (jdbc.getCommittedRowsCount() != rowsCount) {
+                    failures.add(String.format("%s: при замере зафиксировано строк %d из %d",
+                            loadMode.name().toLowerCase(), jdbc.getCommittedRowsCount(), rowsCount));
+                }
+                best[loadMode.ordinal()] = Math.max(best[loadMode.ordinal()], rowsCount / seconds);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Загрузить файл в заменитель так же, как программа загружает один файл
+     *
+     * @param loadMode способ загрузки
+     * @param file     файл с данными
+     * @param jdbc     заменитель сервера
+     * @return загрузка файла с итогом
+     * @throws Exception ошибка загрузки или загрузка не удалась
+     */
+    private static FileLoader load(LoadMode loadMode, File file, RecordingJdbc jdbc) throws Exception {
+        String filePath = file.getPath();
+        Arguments arguments = new Arguments(new String[]{"jdbc:stub", "bench", filePath,
+                "--mode=" + loadMode.name().toLowerCase(), "--on-error=skip", "--progress=0",
+                "--batch-size=" + BATCH_SIZE});
+        Connection connection = jdbc.connect();
+        DataFile dataFile = new DataFile(filePath);
+        Table table = new Table(connection, "bench");
+        ColumnsIntersection columnsIntersection = dataFile.setDesiredColumns(table.getColumns(), null);
+
+        FileLoader loader = new FileLoader(arguments, connection, new LoadMetrics());
+        if (!loader.load(filePath, dataFile, table, columnsIntersection.getColumnsIntersection(),
+                filePath + ".reject")) {
+            throw new Exception(String.format("Загрузка способом %s не удалась", loadMode.name().toLowerCase()));
+        }
+        return loader;
+    }
+
+    /**
+     * Создать временный файл: строка с номером id содержит значения, вычисляемые по id
+     *
+     * @param rowsCount       количество строк данных
+     * @param hasClientErrors добавить строки со значением не того типа, их отвергнет программа
+     * @param hasServerErrors добавить строки, которые отвергнет "сервер"
+     * @return файл, удаляется при завершении JVM
+     * @throws IOException ошибка записи файла
+     */
+    private static File createFile(int rowsCount, boolean hasClientErrors, boolean hasServerErrors)
+            throws IOException {
+        File file = File.createTempFile("load-check", ".tsv");
+        file.deleteOnExit();
+        new File(file.getPath() + ".reject").deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(String.join("\t", FILE_COLUMNS));
+            writer.write('\n');
+            for (int id = 1; id <= rowsCount; id++) {
+                String amount = hasClientErrors && id % 1009 == 0 ? "x" + id : expectedAmount(id);
+                String name = hasServerErrors && id % 997 == 0 ? RecordingJdbc.REJECTED_VALUE : expectedName(id);
+                writer.write(String.join("\t", valueOrNull(expectedNote(id)), String.valueOf(id), "e" + id,
+                        valueOrNull(amount), name));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Проверить зафиксированную строку по её id
+     *
+     * @param id              номер строки файла
+     * @param row             значения по колонкам вставки
+     * @param hasServerErrors в файле есть строки, которые отвергнет "сервер"
+     * @return описание несоответствия, null - строка верна
+     */
+    private static String checkRow(int id, Map<String, String> row, boolean hasServerErrors) {
+        if (id < 1 || id > CHECK_ROWS_COUNT || isRejected(id, hasServerErrors)) {
+            return "строка не должна быть вставлена";
+        }
+        String[][] expected = {{"name", expectedName(id)}, {"amount", expectedAmount(id)}, {"note", expectedNote(id)}};
+        for (var column : expected) {
+            String value = row.get(column[0]);
+            if (value == null ? column[1] != null : !value.equals(column[1])) {
+                return String.format("колонка %s: '%s', ожидалось '%s'", column[0], value, column[1]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Узнать, должна ли строка быть пропущена
+     *
+     * @param id              номер строки файла
+     * @param hasServerErrors в файле есть строки, которые отвергнет "сервер"
+     * @return true - значение не целое число или строку отвергнет "сервер"
+     */
+    private static boolean isRejected(int id, boolean hasServerErrors) {
+        return id % 1009 == 0 || hasServerErrors && id % 997 == 0;
+    }
+
+    private static String expectedName(int id) {
+        return "имя " + id;
+    }
+
+    private static String expectedAmount(int id) {
+        return id % 11 == 0 ? null : String.valueOf(id * 3);
+    }
+
+    private static String expectedNote(int id) {
+        return id % 7 == 0 ? null : "заметка" + id;
+    }
+
+    private static String valueOrNull(String value) {
+        return value == null ? "NULL" : value;
+    }
+
+    /**
+     * Сравнить скорость с базовой. Отсутствие файла базовой скорости - ошибка: иначе проверка скорости
+     * на новой копии проекта всегда проходила бы.
+     *
+     * @param current          текущая скорость по способам загрузки
+     * @param baselinePath     путь к файлу базовой скорости
+     * @param tolerancePercent допустимое падение скорости в процентах
+     * @param failures         найденные ошибки, дополняются
+     * @throws IOException ошибка чтения файла
+     */
+    private static void compareWithBaseline(Properties current, String baselinePath, int tolerancePercent,
+                                            List<String> failures) throws IOException {
+        if (!Files.exists(Paths.get(baselinePath))) {
+            failures.add(String.format("нет файла базовой скорости %s, его нужно записать запуском с аргументом " +
+                    "record", baselinePath));
+            return;
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream input = Files.newInputStream(Paths.get(baselinePath))) {
+            baseline.load(input);
+        }
+        for (var mode : current.stringPropertyNames()) {
+            String base = baseline.getProperty(mode);
+            if (base == null) {
+                failures.add(String.format("%s: нет базовой скорости в %s", mode, baselinePath));
+                continue;
+            }
+            double baseRate = Double.parseDouble(base);
+            double rate = Double.parseDouble(current.getProperty(mode));
+            if (rate < baseRate * (100 - tolerancePercent) / 100) {
+                failures.add(String.format(Locale.ROOT, "%s: скорость %.0f строк/с ниже базовой %.0f " +
+                        "больше чем на %d%%", mode, rate, baseRate, tolerancePercent));
+            }
+        }
+    }
+}
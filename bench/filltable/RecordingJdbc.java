@@ -0,0 +1,417 @@
+package filltable;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Заменитель сервера PostgreSQL в том же процессе для проверки пути загрузки.
+ * В отличие от JdbcStub выполняет запросы на вставку: разбирает параметры запросов insert, пачки,
+ * запросы на несколько строк и поток COPY в текстовом формате, хранит строки транзакции
+ * и переносит их в зафиксированные при commit.
+ * Поддерживает точки сохранения: после ошибки все запросы отвергаются до отката к точке сохранения,
+ * как на сервере, поэтому поиск ошибочных строк делением порции проверяется так же, как с сервером.
+ * Строка, в которой есть значение REJECTED_VALUE, отвергается "сервером".
+ * Строки хранятся, только если включена запись, иначе только считаются, чтобы не мерить работу заменителя.
+ */
+public class RecordingJdbc {
+
+    /**
+     * Значение, строку с которым "сервер" отвергает
+     */
+    public static final String REJECTED_VALUE = "rejected";
+
+    private final String[] columns;
+
+    private final int[] sqlTypes;
+
+    private final String[] typeNames;
+
+    /**
+     * Хранить ли зафиксированные строки, иначе только считать их
+     */
+    private final boolean isRecording;
+
+    /**
+     * Зафиксированные строки: значения по именам колонок вставки
+     */
+    private final List<Map<String, String>> committedRows = new ArrayList<>();
+
+    private long committedRowsCount = 0;
+
+    /**
+     * Количество выполненных запросов на вставку и потоков COPY
+     */
+    private long statementsCount = 0;
+
+    /**
+     * Строки текущей транзакции
+     */
+    private final List<Map<String, String>> pendingRows = new ArrayList<>();
+
+    private long pendingRowsCount = 0;
+
+    /**
+     * Количество строк транзакции на момент установки точки сохранения
+     */
+    private final Map<Savepoint, Long> savepoints = new HashMap<>();
+
+    /**
+     * Транзакция прервана ошибкой, до отката все запросы отвергаются
+     */
+    private boolean isAborted = false;
+
+    /**
+     * Создаёт заменитель с таблицей заданных колонок
+     *
+     * @param columns     имена колонок таблицы
+     * @param sqlTypes    типы колонок из java.sql.Types
+     * @param typeNames   имена типов колонок в PostgreSQL
+     * @param isRecording хранить зафиксированные строки, иначе только считать
+     */
+    public RecordingJdbc(String[] columns, int[] sqlTypes, String[] typeNames, boolean isRecording) {
+        this.columns = columns;
+        this.sqlTypes = sqlTypes;
+        this.typeNames = typeNames;
+        this.isRecording = isRecording;
+    }
+
+    /**
+     * Создаёт соединение с таблицей. Все соединения заменителя работают с одной транзакцией,
+     * поэтому соединение должно быть одно.
+     *
+     * @return соединение, которое также реализует PGConnection для COPY
+     * @throws SQLException ошибка создания CopyManager
+     */
+    public Connection connect() throws SQLException {
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return columns.length;
+                case "getColumnName":
+                    return columns[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return sqlTypes[(Integer) args[0] - 1];
+                case "getColumnTypeName":
+                    return typeNames[(Integer) args[0] - 1];
+                default:
+                    return defaultValue(method);
+            }
+        });
+        ResultSet resultSet = proxy(ResultSet.class, (proxy, method, args) ->
+                method.getName().equals("getMetaData") ? metaData : defaultValue(method));
+        Statement statement = proxy(Statement.class, (proxy, method, args) ->
+                method.getName().equals("executeQuery") ? resultSet : defaultValue(method));
+
+        // CopyManager драйвера создаётся без сервера, его поток COPY подменяется
+        CopyManager copyManager = new CopyManager(proxy(BaseConnection.class, (proxy, method, args) ->
+                defaultValue(method))) {
+            @Override
+            public CopyIn copyIn(String sql) {
+                return createCopyIn(sql);
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(RecordingJdbc.class.getClassLoader(),
+                new Class<?>[]{Connection.class, PGConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return statement;
+                        case "prepareStatement":
+                            return createInsert((String) args[0]);
+                        case "unwrap":
+                            return proxy;
+                        case "getCopyAPI":
+                            return copyManager;
+                        case "setSavepoint":
+                            return setSavepoint();
+                        case "releaseSavepoint":
+                            savepoints.remove((Savepoint) args[0]);
+                            return null;
+                        case "rollback":
+                            rollback(args == null ? null : (Savepoint) args[0]);
+                            return null;
+                        case "commit":
+                            commit();
+                            return null;
+                        case "isValid":
+                            return true;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    /**
+     * Возвращает зафиксированные строки, если включена запись.
+     *
+     * @return значения по именам колонок вставки
+     */
+    public List<Map<String, String>> getCommittedRows() {
+        return committedRows;
+    }
+
+    /**
+     * Возвращает количество зафиксированных строк.
+     *
+     * @return количество строк
+     */
+    public long getCommittedRowsCount() {
+        return committedRowsCount;
+    }
+
+    /**
+     * Возвращает количество выполненных запросов на вставку и потоков COPY.
+     *
+     * @return количество запросов
+     */
+    public long getStatementsCount() {
+        return statementsCount;
+    }
+
+    /**
+     * Создаёт подготовленный запрос insert into таблица (колонки) values (?,...),...
+     *
+     * @param sql текст запроса
+     * @return запрос, вставляющий строки при execute и executeBatch
+     */
+    private PreparedStatement createInsert(String sql) {
+        String[] insertColumns = parseColumns(sql);
+        Map<Integer, String> parameters = new TreeMap<>();
+        List<List<String>> batch = new ArrayList<>();
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : String.valueOf(args[1]));
+                return null;
+            }
+            switch (name) {
+                case "addBatch":
+                    batch.add(new ArrayList<>(parameters.values()));
+                    parameters.clear();
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    return null;
+                case "clearParameters":
+                    parameters.clear();
+                    return null;
+                case "executeBatch":
+                    statementsCount++;
+                    try {
+                        for (var values : batch) {
+                            insertRows(insertColumns, values);
+                        }
+                    } finally {
+                        batch.clear();
+                    }
+                    return new int[0];
+                case "execute":
+                case "executeUpdate":
+                    statementsCount++;
+                    List<String> values = new ArrayList<>(parameters.values());
+                    parameters.clear();
+                    insertRows(insertColumns, values);
+                    return name.equals("execute") ? (Object) false : (Object) (values.size() / insertColumns.length);
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Создаёт поток COPY в текстовом формате: строки разбираются при endCopy
+     *
+     * @param sql запрос copy таблица (колонки) from stdin
+     * @return поток COPY
+     */
+    private CopyIn createCopyIn(String sql) {
+        String[] insertColumns = parseColumns(sql);
+        StringBuilder data = new StringBuilder();
+        boolean[] isActive = {true};
+        return proxy(CopyIn.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "writeToCopy":
+                    data.append(new String((byte[]) args[0], (Integer) args[1], (Integer) args[2],
+                            StandardCharsets.UTF_8));
+                    return null;
+                case "endCopy":
+                    isActive[0] = false;
+                    statementsCount++;
+                    long rowsCount = 0;
+                    for (var line : data.toString().split("\n")) {
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        List<String> values = new ArrayList<>();
+                        for (var value : line.split("\t", -1)) {
+                            values.add(value.equals("\\N") ? null : unescapeCopy(value));
+                        }
+                        insertRows(insertColumns, values);
+                        rowsCount++;
+                    }
+                    return rowsCount;
+                case "cancelCopy":
+                    isActive[0] = false;
+                    return null;
+                case "isActive":
+                    return isActive[0];
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Добавить строки в транзакцию, значения строк идут подряд
+     *
+     * @param insertColumns колонки вставки
+     * @param values        значения всех строк
+     * @throws SQLException транзакция прервана или строка содержит REJECTED_VALUE
+     */
+    private void insertRows(String[] insertColumns, List<String> values) throws SQLException {
+        if (isAborted) {
+            throw new SQLException("current transaction is aborted, commands ignored until end of transaction block");
+        }
+        if (values.size() % insertColumns.length != 0) {
+            throw new SQLException(String.format("Количество значений %d не кратно количеству колонок %d",
+                    values.size(), insertColumns.length));
+        }
+        if (values.contains(REJECTED_VALUE)) {
+            isAborted = true;
+            throw new SQLException(String.format("value \"%s\" rejected", REJECTED_VALUE));
+        }
+        for (int row = 0; row < values.size(); row += insertColumns.length) {
+            pendingRowsCount++;
+            if (isRecording) {
+                Map<String, String> record = new HashMap<>();
+                for (int i = 0; i < insertColumns.length; i++) {
+                    record.put(insertColumns[i], values.get(row + i));
+                }
+                pendingRows.add(record);
+            }
+        }
+    }
+
+    private Savepoint setSavepoint() throws SQLException {
+        if (isAborted) {
+            throw new SQLException("current transaction is aborted, commands ignored until end of transaction block");
+        }
+        Savepoint savepoint = proxy(Savepoint.class, (proxy, method, args) -> defaultValue(method));
+        savepoints.put(savepoint, pendingRowsCount);
+        return savepoint;
+    }
+
+    /**
+     * Откатить транзакцию целиком или до точки сохранения
+     *
+     * @param savepoint точка сохранения, null - вся транзакция
+     * @throws SQLException неизвестная точка сохранения
+     */
+    private void rollback(Savepoint savepoint) throws SQLException {
+        isAborted = false;
+        if (savepoint == null) {
+            pendingRows.clear();
+            pendingRowsCount = 0;
+            savepoints.clear();
+            return;
+        }
+        Long rowsCount = savepoints.get(savepoint);
+        if (rowsCount == null) {
+            throw new SQLException("savepoint does not exist");
+        }
+        pendingRowsCount = rowsCount;
+        if (isRecording) {
+            pendingRows.subList((int) pendingRowsCount, pendingRows.size()).clear();
+        }
+    }
+
+    private void commit() throws SQLException {
+        if (isAborted) {
+            throw new SQLException("current transaction is aborted");
+        }
+        committedRowsCount += pendingRowsCount;
+        committedRows.addAll(pendingRows);
+        pendingRows.clear();
+        pendingRowsCount = 0;
+        savepoints.clear();
+    }
+
+    /**
+     * Имена колонок из запроса вида ... таблица (колонка,...) ...
+     *
+     * @param sql запрос insert или copy
+     * @return имена колонок
+     */
+    private static String[] parseColumns(String sql) {
+        String list = sql.substring(sql.indexOf('(') + 1, sql.indexOf(')'));
+        return Arrays.stream(list.split(",")).map(String::trim).toArray(String[]::new);
+    }
+
+    /**
+     * Убрать экранирование текстового формата COPY
+     *
+     * @param value значение в формате COPY
+     * @return значение
+     */
+    private static String unescapeCopy(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char symbol = value.charAt(i);
+            if (symbol != '\\' || i + 1 == value.length()) {
+                result.append(symbol);
+                continue;
+            }
+            char escaped = value.charAt(++i);
+            result.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+        }
+        return result.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(RecordingJdbc.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Значение по умолчанию для возвращаемого типа метода-заглушки
+     *
+     * @param method метод
+     * @return ноль, false или null
+     */
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
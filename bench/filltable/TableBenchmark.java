@@ -0,0 +1,123 @@
+package filltable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер вставки пачки строк через Table на заглушке JDBC.
+ * Запросы ничего не делают, поэтому замеряется только работа программы:
+ * перевод значений в типы колонок, передача параметров и сборка запросов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+    /**
+     * Количество строк в пачке
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Способ вставки
+     */
+    @Param({"INSERT", "BATCH", "VALUES"})
+    public LoadMode loadMode;
+
+    /**
+     * Количество колонок таблицы
+     */
+    @Param({"4", "32"})
+    public int columnsCount;
+
+    /**
+     * Тип колонок таблицы в PostgreSQL: varchar передаётся как есть, int4 переводится в число
+     */
+    @Param({"varchar", "int4"})
+    public String typeName;
+
+    private Table table;
+
+    private List<FileRow> rows;
+
+    /**
+     * Создаёт таблицу на заглушке и пачку строк для замера
+     *
+     * @throws Exception ошибка чтения метаданных таблицы
+     */
+    @Setup
+    public void createTable() throws Exception {
+        String[] columns = new String[columnsCount];
+        for (int i = 0; i < columnsCount; i++) {
+            columns[i] = BenchmarkFiles.column(i);
+        }
+        int sqlType = typeName.equals("int4") ? Types.INTEGER : Types.VARCHAR;
+        table = new Table(JdbcStub.connect(columns, sqlType, typeName), "bench");
+        table.setInsertColumns(List.of(columns));
+
+        rows = new ArrayList<>(BATCH_SIZE);
+        for (int row = 0; row < BATCH_SIZE; row++) {
+            List<Object> values = new ArrayList<>(columnsCount);
+            for (int i = 0; i < columnsCount; i++) {
+                values.add(Integer.toString(row * columnsCount + i));
+            }
+            rows.add(new FileRow(row + 1, 0, null, values));
+        }
+    }
+
+    /**
+     * Закрывает подготовленные запросы таблицы
+     *
+     * @throws SQLException ошибка закрытия запросов
+     */
+    @TearDown
+    public void closeTable() throws SQLException {
+        table.closeStatements();
+    }
+
+    /**
+     * Вставка пачки строк выбранным способом
+     *
+     * @return количество вставленных строк
+     * @throws Exception ошибка вставки
+     */
+    @Benchmark
+    public int insertRows() throws Exception {
+        switch (loadMode) {
+            case BATCH:
+                table.insertBatch(rows);
+                break;
+            case VALUES:
+                table.insertValues(rows);
+                break;
+            default:
+                for (var row : rows) {
+                    List<Object> values = row.getValues();
+                    for (int i = 0; i < values.size(); i++) {
+                        table.setValue(i, values.get(i));
+                    }
+                    table.insert();
+                }
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,762 @@
+package filltable;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Класс, отвечающий за разбор аргументов командной строки.
+ * Первые три аргумента обязательные и позиционные: строка соединения, название таблицы, путь к файлу
+ * (или к папке, шаблон glob, @список файлов).
+ * Далее могут идти необязательные параметры вида --имя=значение и флаги вида --имя.
+ */
+public class Arguments {
+
+    private final String connectionUrl;
+    private final String tableName;
+    private final String filePath;
+
+    /**
+     * Способ загрузки строк в таблицу
+     */
+    private LoadMode loadMode = LoadMode.INSERT;
+
+    /**
+     * Количество строк в одной пачке при пакетной вставке
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Действие при ошибке в строке файла
+     */
+    private OnError onError = OnError.ASK;
+
+    /**
+     * Допустимое количество ошибочных строк, -1 - без ограничения
+     */
+    private int maxErrors = -1;
+
+    /**
+     * Путь к файлу отклонённых строк, null - рядом с исходным файлом
+     */
+    private String rejectFilePath = null;
+
+    /**
+     * Читать файл в отдельном потоке, пока идёт вставка
+     */
+    private boolean isPipeline = false;
+
+    /**
+     * Количество одновременно загружающих части файла соединений
+     */
+    private int parallel = 1;
+
+    /**
+     * Как фиксируются изменения при параллельной загрузке
+     */
+    private ParallelCommit parallelCommit = ParallelCommit.WORKER;
+
+    /**
+     * Период вывода хода загрузки в секундах, 0 - не выводить
+     */
+    private int progressSeconds = 10;
+
+    /**
+     * Путь к файлу JSON с итоговыми показателями загрузки, null - не записывать
+     */
+    private String metricsFilePath = null;
+
+    /**
+     * Количество строк между фиксациями изменений с контрольной точкой, 0 - одна транзакция на весь файл
+     */
+    private int checkpointRows = 0;
+
+    /**
+     * Таблица хода загрузки для контрольных точек
+     */
+    private String checkpointTable = "fill_table_progress";
+
+    /**
+     * Ключевые колонки для загрузки с обновлением, null - обычная вставка
+     */
+    private List<String> upsertColumns = null;
+
+    /**
+     * Действие при совпадении ключа в режиме upsert
+     */
+    private OnConflict onConflict = OnConflict.UPDATE;
+
+    /**
+     * Переносить строки в режиме upsert запросом merge
+     */
+    private boolean isMerge = false;
+
+    /**
+     * Количество одновременно загружаемых файлов и соединений в пуле при загрузке нескольких файлов
+     */
+    private int filesParallel = 1;
+
+    /**
+     * Только проверить файл, не загружая его
+     */
+    private boolean isValidate = false;
+
+    /**
+     * Удалить индексы таблицы перед загрузкой и создать их заново после неё
+     */
+    private boolean isRebuildIndexes = false;
+
+    /**
+     * Создавать индексы заново без блокировки записи в таблицу (create index concurrently)
+     */
+    private boolean isConcurrently = false;
+
+    /**
+     * Значение maintenance_work_mem при создании индексов, null - настройка сервера
+     */
+    private String maintenanceWorkMem = null;
+
+    /**
+     * Таблица определений удалённых индексов
+     */
+    private String indexTable = "fill_table_indexes";
+
+    /**
+     * Имя профиля сеанса, null - параметры сеанса не меняются
+     */
+    private String profileName = null;
+
+    /**
+     * Файл профилей сеанса
+     */
+    private String profileFilePath = "load-profiles.properties";
+
+    /**
+     * Профиль сеанса, прочитанный из файла профилей, null - параметры сеанса не меняются
+     */
+    private SessionProfile sessionProfile = null;
+
+    /**
+     * Формат файла
+     */
+    private DataFormat dataFormat = DataFormat.TSV;
+
+    /**
+     * Разделитель значений, null - по умолчанию для формата
+     */
+    private Character delimiter = null;
+
+    /**
+     * Обозначение NULL, null - по умолчанию для формата
+     */
+    private String nullToken = null;
+
+    /**
+     * В файле нет строки с именами колонок
+     */
+    private boolean isNoHeader = false;
+
+    /**
+     * Имена колонок файла без строки заголовка
+     */
+    private List<String> fileColumns = null;
+
+    /**
+     * Настройки формата файла, собранные из параметров
+     */
+    private FileFormat fileFormat = FileFormat.DEFAULT;
+
+    /**
+     * Файл сопоставления колонок, null - только пересечение колонок по именам
+     */
+    private String mappingFilePath = null;
+
+    /**
+     * Сопоставление колонок, прочитанное из файла, null - только пересечение колонок по именам
+     */
+    private ColumnMapping columnMapping = null;
+
+    /**
+     * Промежуток между просмотрами папки в режиме watch в секундах, 0 - режим выключен
+     */
+    private int watchSeconds = 0;
+
+    /**
+     * Распределять строки по секциям секционированной таблицы на клиенте и загружать каждую секцию
+     * своим соединением
+     */
+    private boolean isRoutePartitions = false;
+
+    /**
+     * Разбирает аргументы командной строки.
+     *
+     * @param args аргументы командной строки
+     * @throws Exception аргументы заданы неверно
+     */
+    public Arguments(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new Exception("Требуются строка соединения, название таблицы и путь к файлу");
+        }
+
+        connectionUrl = args[0];
+        tableName = args[1];
+        filePath = args[2];
+
+        for (int i = 3; i < args.length; i++) {
+            parseOption(args[i]);
+        }
+
+        if (checkpointRows > 0 && parallel > 1) {
+            throw new Exception("Параметр checkpoint нельзя использовать вместе с parallel");
+        }
+        if (isMerge && upsertColumns == null) {
+            throw new Exception("Флаг merge используется только вместе с параметром upsert");
+        }
+        if ((isConcurrently || maintenanceWorkMem != null) && !isRebuildIndexes) {
+            throw new Exception("Флаг concurrently и параметр maintenance-work-mem используются только " +
+                    "вместе с флагом rebuild-indexes");
+        }
+        if (InputFiles.STDIN.equals(filePath) && onError == OnError.ASK && !isValidate) {
+            throw new Exception("При чтении из стандартного ввода нельзя спрашивать пользователя, " +
+                    "укажите параметр on-error");
+        }
+        if (isNoHeader != (fileColumns != null)) {
+            throw new Exception("Флаг no-header и параметр columns используются только вместе");
+        }
+        if (delimiter != null && !FileFormat.isValidDelimiter(dataFormat, delimiter)) {
+            throw new Exception(String.format("Символ %s нельзя использовать как разделитель в формате %s",
+                    delimiter, dataFormat.name().toLowerCase()));
+        }
+        fileFormat = new FileFormat(dataFormat, delimiter, nullToken, !isNoHeader,
+                fileColumns == null ? null : fileColumns.toArray(new String[0]));
+        if (mappingFilePath != null) {
+            columnMapping = ColumnMapping.load(mappingFilePath);
+        }
+        if (profileName != null) {
+            sessionProfile = SessionProfile.load(profileFilePath, profileName);
+        }
+        if (watchSeconds > 0) {
+            if (!Files.isDirectory(Paths.get(filePath))) {
+                throw new Exception("Параметр watch используется только с путём к папке");
+            }
+            if (onError == OnError.ASK) {
+                throw new Exception("При ожидании файлов в папке нельзя спрашивать пользователя, " +
+                        "укажите параметр on-error");
+            }
+            if (isValidate || isRebuildIndexes) {
+                throw new Exception("Параметр watch нельзя использовать вместе с флагами validate и rebuild-indexes");
+            }
+        }
+        if (isRoutePartitions && !isValidate) {
+            if (parallel > 1 || checkpointRows > 0 || upsertColumns != null || watchSeconds > 0) {
+                throw new Exception("Флаг route-partitions нельзя использовать вместе с параметрами parallel, " +
+                        "checkpoint, upsert и watch");
+            }
+            if (InputFiles.isMultiple(filePath)) {
+                throw new Exception("Флаг route-partitions используется только при загрузке одного файла");
+            }
+        }
+        if (InputFiles.isMultiple(filePath) && !isValidate) {
+            if (parallel > 1) {
+                throw new Exception("Параметр parallel нельзя использовать при загрузке нескольких файлов, " +
+                        "используйте files-parallel");
+            }
+            if (rejectFilePath != null) {
+                throw new Exception("Параметр reject-file нельзя использовать при загрузке нескольких файлов");
+            }
+        }
+    }
+
+    /**
+     * Разбирает необязательный параметр вида --имя=значение или флаг вида --имя.
+     *
+     * @param option параметр
+     * @throws Exception неизвестный параметр или недопустимое значение
+     */
+    private void parseOption(String option) throws Exception {
+        if (!option.startsWith("--")) {
+            throw new Exception(String.format("Параметр %s должен иметь вид --имя=значение или --имя", option));
+        }
+
+        int separatorIndex = option.indexOf('=');
+        if (separatorIndex < 0) {
+            parseFlag(option.substring(2));
+            return;
+        }
+
+        String name = option.substring(2, separatorIndex);
+        String value = option.substring(separatorIndex + 1);
+
+        switch (name) {
+            case "mode":
+                loadMode = parseEnum(LoadMode.class, name, value);
+                break;
+            case "batch-size":
+                batchSize = parsePositiveInt(name, value);
+                break;
+            case "on-error":
+                onError = parseEnum(OnError.class, name, value);
+                break;
+            case "max-errors":
+                maxErrors = parseNonNegativeInt(name, value);
+                break;
+            case "reject-file":
+                rejectFilePath = value;
+                break;
+            case "parallel":
+                parallel = parsePositiveInt(name, value);
+                break;
+            case "parallel-commit":
+                parallelCommit = parseEnum(ParallelCommit.class, name, value);
+                break;
+            case "progress":
+                progressSeconds = parseNonNegativeInt(name, value);
+                break;
+            case "metrics-file":
+                metricsFilePath = value;
+                break;
+            case "checkpoint":
+                checkpointRows = parsePositiveInt(name, value);
+                break;
+            case "checkpoint-table":
+                checkpointTable = value;
+                break;
+            case "upsert":
+                upsertColumns = parseColumns(name, value);
+                break;
+            case "on-conflict":
+                onConflict = parseEnum(OnConflict.class, name, value);
+                break;
+            case "files-parallel":
+                filesParallel = parsePositiveInt(name, value);
+                break;
+            case "maintenance-work-mem":
+                maintenanceWorkMem = value;
+                break;
+            case "index-table":
+                indexTable = value;
+                break;
+            case "profile":
+                profileName = value;
+                break;
+            case "profile-file":
+                profileFilePath = value;
+                break;
+            case "watch":
+                watchSeconds = parsePositiveInt(name, value);
+                break;
+            case "mapping":
+                mappingFilePath = value;
+                break;
+            case "format":
+                dataFormat = parseEnum(DataFormat.class, name, value);
+                break;
+            case "delimiter":
+                delimiter = parseDelimiter(name, value);
+                break;
+            case "null":
+                nullToken = value;
+                break;
+            case "columns":
+                fileColumns = parseColumns(name, value);
+                if (new HashSet<>(fileColumns).size() != fileColumns.size()) {
+                    throw new Exception(String.format("Параметр %s содержит повторяющиеся имена колонок", name));
+                }
+                break;
+            default:
+                throw new Exception(String.format("Неизвестный параметр %s", name));
+        }
+    }
+
+    /**
+     * Разбирает флаг вида --имя.
+     *
+     * @param name имя флага
+     * @throws Exception неизвестный флаг
+     */
+    private void parseFlag(String name) throws Exception {
+        switch (name) {
+            case "pipeline":
+                isPipeline = true;
+                break;
+            case "merge":
+                isMerge = true;
+                break;
+            case "validate":
+                isValidate = true;
+                break;
+            case "rebuild-indexes":
+                isRebuildIndexes = true;
+                break;
+            case "concurrently":
+                isConcurrently = true;
+                break;
+            case "no-header":
+                isNoHeader = true;
+                break;
+            case "route-partitions":
+                isRoutePartitions = true;
+                break;
+            default:
+                throw new Exception(String.format("Неизвестный флаг %s", name));
+        }
+    }
+
+    /**
+     * Разбирает положительное целое значение.
+     *
+     * @param name  имя параметра, используется в сообщении об ошибке
+     * @param value значение параметра
+     * @return целое число больше нуля
+     * @throws Exception значение не является положительным целым числом
+     */
+    private static int parsePositiveInt(String name, String value) throws Exception {
+        int result = parseNonNegativeInt(name, value);
+        if (result == 0) {
+            throw new Exception(String.format("Значение параметра %s должно быть больше нуля", name));
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает неотрицательное целое значение.
+     *
+     * @param name  имя параметра, используется в сообщении об ошибке
+     * @param value значение параметра
+     * @return целое число не меньше нуля
+     * @throws Exception значение не является неотрицательным целым числом
+     */
+    private static int parseNonNegativeInt(String name, String value) throws Exception {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new Exception(String.format("Значение параметра %s должно быть целым числом", name));
+        }
+        if (result < 0) {
+            throw new Exception(String.format("Значение параметра %s не может быть отрицательным", name));
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает список имён колонок через запятую.
+     *
+     * @param name  имя параметра, используется в сообщении об ошибке
+     * @param value значение параметра
+     * @return имена колонок в нижнем регистре
+     * @throws Exception список пуст или содержит пустое имя
+     */
+    private static List<String> parseColumns(String name, String value) throws Exception {
+        List<String> columns = new ArrayList<>();
+        for (var column : value.split(",", -1)) {
+            column = column.trim().toLowerCase();
+            if (column.isEmpty()) {
+                throw new Exception(String.format("Параметр %s содержит пустое имя колонки", name));
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * Разбирает разделитель значений: один символ, \\t или tab - табуляция.
+     *
+     * @param name  имя параметра, используется в сообщении об ошибке
+     * @param value значение параметра
+     * @return символ разделителя
+     * @throws Exception значение не является одним символом
+     */
+    private static char parseDelimiter(String name, String value) throws Exception {
+        if (value.equals("\\t") || value.equalsIgnoreCase("tab")) {
+            return '\t';
+        }
+        if (value.length() != 1) {
+            throw new Exception(String.format("Значение параметра %s должно быть одним символом", name));
+        }
+        return value.charAt(0);
+    }
+
+    /**
+     * Разбирает значение перечисления без учёта регистра.
+     *
+     * @param enumClass класс перечисления
+     * @param name      имя параметра, используется в сообщении об ошибке
+     * @param value     значение параметра
+     * @return элемент перечисления
+     * @throws Exception значение не соответствует ни одному элементу перечисления
+     */
+    private static <T extends Enum<T>> T parseEnum(Class<T> enumClass, String name, String value) throws Exception {
+        for (var constant : enumClass.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new Exception(String.format("Недопустимое значение %s параметра %s", value, name));
+    }
+
+    /**
+     * Возвращает строку соединения с БД.
+     *
+     * @return строка соединения
+     */
+    public String getConnectionUrl() {
+        return connectionUrl;
+    }
+
+    /**
+     * Возвращает название таблицы.
+     *
+     * @return название таблицы
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Возвращает путь к файлу с данными.
+     * При загрузке нескольких файлов - путь к папке, шаблон glob или @путь к списку файлов.
+     *
+     * @return путь к файлу
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Возвращает способ загрузки строк в таблицу.
+     *
+     * @return способ загрузки
+     */
+    public LoadMode getLoadMode() {
+        return loadMode;
+    }
+
+    /**
+     * Возвращает количество строк в одной пачке при пакетной вставке.
+     *
+     * @return размер пачки
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Возвращает действие при ошибке в строке файла.
+     *
+     * @return действие при ошибке
+     */
+    public OnError getOnError() {
+        return onError;
+    }
+
+    /**
+     * Возвращает допустимое количество ошибочных строк.
+     *
+     * @return количество ошибок, -1 - без ограничения
+     */
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Возвращает путь к файлу отклонённых строк.
+     * Если не задан, файл создаётся рядом с исходным с расширением .reject
+     *
+     * @return путь к файлу отклонённых строк
+     */
+    public String getRejectFilePath() {
+        return rejectFilePath != null ? rejectFilePath : InputFiles.getOutputBasePath(filePath) + ".reject";
+    }
+
+    /**
+     * Узнать, нужно ли читать файл в отдельном потоке, пока идёт вставка.
+     *
+     * @return true - режим конвейера
+     */
+    public boolean isPipeline() {
+        return isPipeline;
+    }
+
+    /**
+     * Возвращает количество одновременно загружающих части файла соединений.
+     *
+     * @return количество соединений, 1 - обычная загрузка одним соединением
+     */
+    public int getParallel() {
+        return parallel;
+    }
+
+    /**
+     * Возвращает способ фиксации изменений при параллельной загрузке.
+     *
+     * @return способ фиксации изменений
+     */
+    public ParallelCommit getParallelCommit() {
+        return parallelCommit;
+    }
+
+    /**
+     * Возвращает период вывода хода загрузки.
+     *
+     * @return период в секундах, 0 - не выводить
+     */
+    public int getProgressSeconds() {
+        return progressSeconds;
+    }
+
+    /**
+     * Возвращает путь к файлу JSON с итоговыми показателями загрузки.
+     *
+     * @return путь к файлу, null - не записывать
+     */
+    public String getMetricsFilePath() {
+        return metricsFilePath;
+    }
+
+    /**
+     * Возвращает количество строк между фиксациями изменений с контрольной точкой.
+     *
+     * @return количество строк, 0 - одна транзакция на весь файл
+     */
+    public int getCheckpointRows() {
+        return checkpointRows;
+    }
+
+    /**
+     * Возвращает таблицу хода загрузки для контрольных точек.
+     *
+     * @return название таблицы
+     */
+    public String getCheckpointTable() {
+        return checkpointTable;
+    }
+
+    /**
+     * Возвращает ключевые колонки для загрузки с обновлением.
+     *
+     * @return имена колонок, null - обычная вставка
+     */
+    public List<String> getUpsertColumns() {
+        return upsertColumns;
+    }
+
+    /**
+     * Возвращает действие при совпадении ключа в режиме upsert.
+     *
+     * @return действие при совпадении ключа
+     */
+    public OnConflict getOnConflict() {
+        return onConflict;
+    }
+
+    /**
+     * Узнать, переносятся ли строки в режиме upsert запросом merge.
+     *
+     * @return true - запрос merge, false - insert ... on conflict
+     */
+    public boolean isMerge() {
+        return isMerge;
+    }
+
+    /**
+     * Возвращает количество одновременно загружаемых файлов при загрузке нескольких файлов.
+     *
+     * @return количество файлов и соединений в пуле
+     */
+    public int getFilesParallel() {
+        return filesParallel;
+    }
+
+    /**
+     * Узнать, нужно ли только проверить файл, не загружая его.
+     *
+     * @return true - режим проверки
+     */
+    public boolean isValidate() {
+        return isValidate;
+    }
+
+    /**
+     * Узнать, нужно ли удалить индексы таблицы перед загрузкой и создать их заново после неё.
+     *
+     * @return true - индексы пересоздаются
+     */
+    public boolean isRebuildIndexes() {
+        return isRebuildIndexes;
+    }
+
+    /**
+     * Узнать, нужно ли создавать индексы заново без блокировки записи в таблицу.
+     *
+     * @return true - create index concurrently
+     */
+    public boolean isConcurrently() {
+        return isConcurrently;
+    }
+
+    /**
+     * Возвращает значение maintenance_work_mem при создании индексов.
+     *
+     * @return значение, например 1GB, null - настройка сервера
+     */
+    public String getMaintenanceWorkMem() {
+        return maintenanceWorkMem;
+    }
+
+    /**
+     * Возвращает таблицу определений удалённых индексов.
+     *
+     * @return название таблицы
+     */
+    public String getIndexTable() {
+        return indexTable;
+    }
+
+    /**
+     * Возвращает профиль сеанса, выставляемый соединениям загрузки.
+     *
+     * @return профиль сеанса, null - параметры сеанса не меняются
+     */
+    public SessionProfile getSessionProfile() {
+        return sessionProfile;
+    }
+
+    /**
+     * Возвращает настройки формата файла.
+     *
+     * @return формат, разделитель, обозначение NULL и наличие строки заголовка
+     */
+    public FileFormat getFileFormat() {
+        return fileFormat;
+    }
+
+    /**
+     * Возвращает сопоставление колонок таблицы и файла.
+     *
+     * @return сопоставление колонок, null - только пересечение колонок по именам
+     */
+    public ColumnMapping getColumnMapping() {
+        return columnMapping;
+    }
+
+    /**
+     * Возвращает промежуток между просмотрами папки в режиме watch.
+     *
+     * @return количество секунд, 0 - режим выключен
+     */
+    public int getWatchSeconds() {
+        return watchSeconds;
+    }
+
+    /**
+     * Узнать, нужно ли распределять строки по секциям таблицы на клиенте.
+     *
+     * @return true - каждая секция загружается своим соединением
+     */
+    public boolean isRoutePartitions() {
+        return isRoutePartitions;
+    }
+}
@@ -0,0 +1,37 @@
+package filltable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Источник байтов файла для DataFile.
+ * Данные доступны через буфер, который по мере чтения сдвигается вдоль файла окнами.
+ */
+public interface ByteSource extends Closeable {
+    /**
+     * Возвращает текущий буфер.
+     * Данные лежат с нулевой позиции до limit буфера.
+     *
+     * @return текущий буфер
+     */
+    ByteBuffer getBuffer();
+
+    /**
+     * Сдвигает буфер так, чтобы байт с позиции keepFrom оказался в его начале, и добавляет в буфер следующие данные.
+     * Если после keepFrom данных больше, чем помещается, буфер увеличивается.
+     * После вызова нужно заново получить буфер: он может быть другим объектом.
+     *
+     * @param keepFrom позиция в текущем буфере, с которой данные нужно сохранить
+     * @return true - добавлены новые данные, false - данные закончились
+     * @throws IOException ошибка чтения
+     */
+    boolean refill(int keepFrom) throws IOException;
+
+    /**
+     * Возвращает позицию начала текущего буфера от начала файла.
+     *
+     * @return смещение в байтах
+     */
+    long getBufferOffset();
+}
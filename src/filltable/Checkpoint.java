@@ -0,0 +1,274 @@
+package filltable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Контрольные точки загрузки.
+ * Изменения фиксируются каждые N строк, и в той же транзакции в таблицу хода загрузки в целевой БД
+ * записываются позиция в файле и номер строки сразу за последней зафиксированной строкой.
+ * Строки и контрольная точка фиксируются вместе, поэтому падение между ними не может привести к повтору строк.
+ * При повторном запуске загрузка продолжается с сохранённой позиции без чтения и разбора начала файла.
+ * Вместе с позицией сохраняется размер файла отклонённых строк, при продолжении файл обрезается до него.
+ * По окончании загрузки запись о ходе загрузки удаляется в той же транзакции, что и последние строки.
+ * В режиме upsert перед каждой фиксацией строки переносятся из промежуточной таблицы в основную.
+ */
+public class Checkpoint {
+
+    private final Connection connection;
+
+    /**
+     * Таблица хода загрузки
+     */
+    private final String progressTable;
+
+    /**
+     * Полный путь к файлу, по нему вместе с таблицей ищется ход загрузки
+     */
+    private final String filePath;
+
+    private final String tableName;
+
+    /**
+     * Размер файла, при продолжении загрузки должен совпадать с сохранённым
+     */
+    private final long fileSize;
+
+    /**
+     * Количество строк между фиксациями изменений
+     */
+    private final int rowsPerCommit;
+
+    /**
+     * Количество строк, загруженных после последней фиксации
+     */
+    private int rowsSinceCommit = 0;
+
+    /**
+     * Позиция в файле, с которой продолжается загрузка, 0 - загрузка с начала
+     */
+    private long position = 0;
+
+    /**
+     * Номер последней зафиксированной строки данных, 0 - загрузка с начала
+     */
+    private int lineNumber = 0;
+
+    /**
+     * Размер файла отклонённых строк на момент последней фиксации, -1 - не сохранён
+     */
+    private long rejectFileSize = -1;
+
+    /**
+     * Загрузка с обновлением, null - строки загружаются прямо в таблицу
+     */
+    private Upsert upsert = null;
+
+    /**
+     * Обработчик ошибочных строк, отклонённые строки которого записываются вместе с контрольными точками
+     */
+    private RowErrorHandler errorHandler = null;
+
+    /**
+     * Создаёт контрольные точки загрузки файла в таблицу и читает сохранённый ход загрузки.
+     * Если таблицы хода загрузки нет, она создаётся.
+     *
+     * @param connection    соединение с БД без автоматической фиксации
+     * @param progressTable таблица хода загрузки
+     * @param filePath      путь к файлу
+     * @param tableName     название таблицы, в которую загружается файл
+     * @param rowsPerCommit количество строк между фиксациями изменений
+     * @throws SQLException ошибка создания или чтения таблицы хода загрузки
+     * @throws IOException  ошибка получения размера файла
+     * @throws Exception    файл изменился с прошлой загрузки
+     */
+    public Checkpoint(Connection connection, String progressTable, String filePath, String tableName,
+                      int rowsPerCommit) throws SQLException, IOException, Exception {
+        this.connection = connection;
+        this.progressTable = progressTable;
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        this.filePath = path.toString();
+        this.tableName = tableName;
+        this.fileSize = Files.size(path);
+        this.rowsPerCommit = rowsPerCommit;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("create table if not exists %s (" +
+                    "file_path text not null, " +
+                    "table_name text not null, " +
+                    "file_size bigint not null, " +
+                    "byte_offset bigint not null, " +
+                    "line_number bigint not null, " +
+                    "updated_at timestamptz not null default now(), " +
+                    "primary key (file_path, table_name))", progressTable));
+            // таблица могла быть создана прежней версией программы
+            statement.execute(String.format("alter table %s add column if not exists reject_size bigint",
+                    progressTable));
+        }
+        connection.commit();
+
+        readSaved();
+    }
+
+    /**
+     * Читает сохранённый ход загрузки
+     *
+     * @throws SQLException ошибка чтения таблицы хода загрузки
+     * @throws Exception    файл изменился с прошлой загрузки
+     */
+    private void readSaved() throws SQLException, Exception {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "select file_size, byte_offset, line_number, reject_size from %s " +
+                        "where file_path = ? and table_name = ?",
+                progressTable))) {
+            statement.setString(1, filePath);
+            statement.setString(2, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return;
+                }
+                long savedFileSize = resultSet.getLong(1);
+                if (savedFileSize != fileSize) {
+                    throw new Exception(String.format(
+                            "Файл %s изменился с прошлой загрузки: размер %d, был %d. " +
+                                    "Удалите запись о ходе загрузки из таблицы %s, чтобы загружать файл с начала",
+                            filePath, fileSize, savedFileSize, progressTable));
+                }
+                position = resultSet.getLong(2);
+                lineNumber = (int) resultSet.getLong(3);
+                rejectFileSize = resultSet.getLong(4);
+                if (resultSet.wasNull()) {
+                    // контрольная точка прежней версии, файл отклонённых строк дописывается как есть
+                    rejectFileSize = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Узнать, продолжается ли прерванная загрузка
+     *
+     * @return true - есть сохранённый ход загрузки
+     */
+    public boolean isResumed() {
+        return position > 0;
+    }
+
+    /**
+     * Возвращает позицию в файле, с которой продолжается загрузка.
+     * Для сжатого файла - позиция в распакованных данных.
+     *
+     * @return смещение в байтах от начала файла, 0 - загрузка с начала
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Возвращает номер последней зафиксированной строки данных.
+     *
+     * @return номер строки, 0 - загрузка с начала
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Задать загрузку с обновлением, строки которой переносятся в основную таблицу перед каждой фиксацией
+     *
+     * @param upsert загрузка с обновлением
+     */
+    public void setUpsert(Upsert upsert) {
+        this.upsert = upsert;
+    }
+
+    /**
+     * Задать обработчик ошибочных строк: отклонённые строки записываются в файл вместе с контрольными точками,
+     * при продолжении загрузки файл отклонённых строк обрезается до сохранённого размера
+     *
+     * @param errorHandler обработчик ошибочных строк
+     * @throws IOException ошибка обрезки файла отклонённых строк
+     */
+    public void setErrorHandler(RowErrorHandler errorHandler) throws IOException {
+        this.errorHandler = errorHandler;
+        if (!isResumed()) {
+            errorHandler.startCheckpoints(-1);
+        } else {
+            // без сохранённого размера файл сохраняется целиком
+            errorHandler.startCheckpoints(rejectFileSize < 0 ? Long.MAX_VALUE : rejectFileSize);
+        }
+    }
+
+    /**
+     * Учесть загруженную порцию строк и узнать, пора ли фиксировать изменения
+     *
+     * @param chunk загруженная порция строк
+     * @return true - загружено не меньше строк, чем задано между фиксациями
+     */
+    public boolean addChunk(List<FileRow> chunk) {
+        rowsSinceCommit += chunk.size();
+        return rowsSinceCommit >= rowsPerCommit;
+    }
+
+    /**
+     * Сохранить контрольную точку сразу за строкой и зафиксировать изменения вместе с ней
+     *
+     * @param lastRow последняя загруженная строка
+     * @throws SQLException ошибка записи контрольной точки или фиксации
+     * @throws Exception    ошибка переноса строк из промежуточной таблицы или записи файла отклонённых строк
+     */
+    public void commit(FileRow lastRow) throws SQLException, Exception {
+        if (upsert != null) {
+            upsert.merge();
+        }
+        // если фиксация не удастся, строки файла отклонённых строк после прежней точки обрежутся при продолжении
+        long rejectSize = errorHandler == null ? -1 : errorHandler.flushRejects(lastRow.getLineNumber());
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "insert into %s (file_path, table_name, file_size, byte_offset, line_number, reject_size) " +
+                        "values (?, ?, ?, ?, ?, ?) on conflict (file_path, table_name) do update set " +
+                        "file_size = excluded.file_size, byte_offset = excluded.byte_offset, " +
+                        "line_number = excluded.line_number, reject_size = excluded.reject_size, " +
+                        "updated_at = now()", progressTable))) {
+            statement.setString(1, filePath);
+            statement.setString(2, tableName);
+            statement.setLong(3, fileSize);
+            statement.setLong(4, lastRow.getEndPosition());
+            statement.setLong(5, lastRow.getLineNumber());
+            if (rejectSize < 0) {
+                statement.setNull(6, Types.BIGINT);
+            } else {
+                statement.setLong(6, rejectSize);
+            }
+            statement.execute();
+        }
+        connection.commit();
+
+        position = lastRow.getEndPosition();
+        lineNumber = lastRow.getLineNumber();
+        rejectFileSize = rejectSize;
+        rowsSinceCommit = 0;
+    }
+
+    /**
+     * Удалить ход загрузки по её окончании. Изменения фиксирует вызывающий вместе с последними строками.
+     *
+     * @throws SQLException ошибка удаления записи о ходе загрузки
+     */
+    public void finish() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "delete from %s where file_path = ? and table_name = ?", progressTable))) {
+            statement.setString(1, filePath);
+            statement.setString(2, tableName);
+            statement.execute();
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package filltable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Сопоставление колонок таблицы и файла, дополняющее пересечение по именам.
+ * Правила записываются в файле по одному на строке в виде колонка_таблицы = выражение, пустые строки
+ * и строки с # в начале пропускаются. Выражение - колонка файла, строка в одинарных кавычках, null
+ * или функция от выражений: trim, upper, lower, coalesce, concat, date_format(значение, 'формат файла',
+ * 'формат таблицы'), regex_replace(значение, 'регулярное выражение', 'замена').
+ * Правило для колонки из пересечения по именам заменяет её значение, правило для другой колонки таблицы
+ * добавляет её к колонкам вставки.
+ * Правила собираются один раз на заголовок файла в массив преобразований по позициям колонок вставки,
+ * при чтении строк остаётся только вызов преобразования, без поиска колонок и разбора выражений.
+ */
+public class ColumnMapping {
+
+    /**
+     * Вид выражения правила
+     */
+    private enum Kind {
+        COLUMN,
+        LITERAL,
+        FUNCTION
+    }
+
+    /**
+     * Правила по колонкам таблицы в порядке файла сопоставления
+     */
+    private final Map<String, Expression> rules;
+
+    private ColumnMapping(Map<String, Expression> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Прочитать правила сопоставления из файла
+     *
+     * @param filePath путь к файлу сопоставления
+     * @return сопоставление колонок
+     * @throws IOException ошибка чтения файла
+     * @throws Exception   правило записано неверно или колонка таблицы указана несколько раз
+     */
+    public static ColumnMapping load(String filePath) throws IOException, Exception {
+        Map<String, Expression> rules = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separatorIndex = line.indexOf('=');
+            if (separatorIndex <= 0) {
+                throw new Exception(String.format("Строка %d файла сопоставления %s должна иметь вид " +
+                        "колонка_таблицы = выражение", i + 1, filePath));
+            }
+            String column = unquote(line.substring(0, separatorIndex).trim()).toLowerCase();
+            if (rules.containsKey(column)) {
+                throw new Exception(String.format("Колонка %s указана в файле сопоставления %s несколько раз",
+                        column, filePath));
+            }
+            try {
+                rules.put(column, new Parser(line.substring(separatorIndex + 1)).parse());
+            } catch (Exception e) {
+                throw new Exception(String.format("Ошибка в строке %d файла сопоставления %s: %s",
+                        i + 1, filePath, e.getMessage()));
+            }
+        }
+        if (rules.isEmpty()) {
+            throw new Exception(String.format("В файле сопоставления %s нет правил", filePath));
+        }
+        return new ColumnMapping(rules);
+    }
+
+    /**
+     * Собрать пересечение колонок с правилами сопоставления для файла с заданным заголовком.
+     * Колонка, значение которой берётся из колонки файла без изменений, остаётся обычной колонкой пересечения,
+     * для остальных колонок собираются преобразования.
+     *
+     * @param byName       пересечение колонок файла и таблицы по именам
+     * @param fileColumns  имена колонок файла
+     * @param tableColumns колонки таблицы
+     * @return пересечение колонок с преобразованиями
+     * @throws Exception колонки правила нет в таблице, колонки выражения нет в файле или выражение неверно
+     */
+    public ColumnsIntersection compile(ColumnsIntersection byName, String[] fileColumns, Set<String> tableColumns)
+            throws Exception {
+        Map<String, Integer> fileIndexes = new HashMap<>();
+        for (int i = 0; i < fileColumns.length; i++) {
+            fileIndexes.put(fileColumns[i].toLowerCase(), i);
+        }
+
+        List<String> columns = new ArrayList<>(byName.getColumnsIntersection());
+        List<Integer> indexes = new ArrayList<>();
+        for (var index : byName.getFileColumnsIndexes()) {
+            indexes.add(index);
+        }
+        List<ColumnTransform> transforms = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            transforms.add(null);
+        }
+        // колонки файла, на которые ссылаются выражения
+        Set<Integer> referencedIndexes = new LinkedHashSet<>();
+
+        for (var rule : rules.entrySet()) {
+            String column = rule.getKey();
+            if (!tableColumns.contains(column)) {
+                throw new Exception(String.format("Колонки %s из файла сопоставления нет в таблице", column));
+            }
+            int position = columns.indexOf(column);
+            if (position < 0) {
+                position = columns.size();
+                columns.add(column);
+                indexes.add(-1);
+                transforms.add(null);
+            }
+
+            Expression expression = rule.getValue();
+            if (expression.kind == Kind.COLUMN) {
+                // переименование колонки: значение берётся из файла напрямую, как при пересечении по именам
+                indexes.set(position, getFileIndex(fileIndexes, expression.name, column));
+                transforms.set(position, null);
+            } else {
+                indexes.set(position, -1);
+                transforms.set(position, compile(expression, fileIndexes, column, referencedIndexes));
+            }
+        }
+
+        Set<String> missingFileColumns = new LinkedHashSet<>();
+        for (int i = 0; i < fileColumns.length; i++) {
+            if (!indexes.contains(i) && !referencedIndexes.contains(i)) {
+                missingFileColumns.add(fileColumns[i]);
+            }
+        }
+        Set<String> missingDesiredColumns = new LinkedHashSet<>(byName.getMissingDesiredColumns());
+        missingDesiredColumns.removeAll(rules.keySet());
+
+        int[] fileColumnsIndexes = new int[indexes.size()];
+        for (int i = 0; i < fileColumnsIndexes.length; i++) {
+            fileColumnsIndexes[i] = indexes.get(i);
+        }
+        boolean hasTransforms = transforms.stream().anyMatch(transform -> transform != null);
+        return new ColumnsIntersection(columns, fileColumnsIndexes, missingFileColumns, missingDesiredColumns,
+                hasTransforms ? transforms.toArray(new ColumnTransform[0]) : null);
+    }
+
+    /**
+     * Собрать преобразование из выражения
+     *
+     * @param expression        выражение
+     * @param fileIndexes       индексы колонок файла по именам в нижнем регистре
+     * @param column            колонка таблицы, используется в сообщениях об ошибках
+     * @param referencedIndexes индексы колонок файла, на которые ссылаются выражения, дополняется
+     * @return преобразование
+     * @throws Exception колонки нет в файле, функция неизвестна или её аргументы неверны
+     */
+    private static ColumnTransform compile(Expression expression, Map<String, Integer> fileIndexes, String column,
+                                           Set<Integer> referencedIndexes) throws Exception {
+        switch (expression.kind) {
+            case COLUMN: {
+                int fileIndex = getFileIndex(fileIndexes, expression.name, column);
+                referencedIndexes.add(fileIndex);
+                return dataFile -> dataFile.getFileValue(fileIndex);
+            }
+            case LITERAL: {
+                String value = expression.name;
+                return dataFile -> value;
+            }
+            default:
+                break;
+        }
+
+        List<Expression> arguments = expression.arguments;
+        ColumnTransform[] sources = new ColumnTransform[arguments.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = compile(arguments.get(i), fileIndexes, column, referencedIndexes);
+        }
+
+        switch (expression.name) {
+            case "trim": {
+                checkArgumentsCount(expression, column, 1, 1);
+                ColumnTransform source = sources[0];
+                return dataFile -> {
+                    String value = source.apply(dataFile);
+                    return value == null ? null : value.trim();
+                };
+            }
+            case "upper": {
+                checkArgumentsCount(expression, column, 1, 1);
+                ColumnTransform source = sources[0];
+                return dataFile -> {
+                    String value = source.apply(dataFile);
+                    return value == null ? null : value.toUpperCase(Locale.ROOT);
+                };
+            }
+            case "lower": {
+                checkArgumentsCount(expression, column, 1, 1);
+                ColumnTransform source = sources[0];
+                return dataFile -> {
+                    String value = source.apply(dataFile);
+                    return value == null ? null : value.toLowerCase(Locale.ROOT);
+                };
+            }
+            case "coalesce":
+                checkArgumentsCount(expression, column, 2, Integer.MAX_VALUE);
+                return dataFile -> {
+                    for (var source : sources) {
+                        String value = source.apply(dataFile);
+                        if (value != null) {
+                            return value;
+                        }
+                    }
+                    return null;
+                };
+            case "concat":
+                checkArgumentsCount(expression, column, 1, Integer.MAX_VALUE);
+                return dataFile -> {
+                    // как concat в PostgreSQL, NULL пропускается
+                    StringBuilder result = new StringBuilder();
+                    for (var source : sources) {
+                        String value = source.apply(dataFile);
+                        if (value != null) {
+                            result.append(value);
+                        }
+                    }
+                    return result.toString();
+                };
+            case "date_format": {
+                checkArgumentsCount(expression, column, 3, 3);
+                String filePattern = getLiteral(expression, column, 1);
+                DateTimeFormatter fileFormatter;
+                DateTimeFormatter tableFormatter;
+                try {
+                    fileFormatter = DateTimeFormatter.ofPattern(filePattern, Locale.ROOT);
+                    tableFormatter = DateTimeFormatter.ofPattern(getLiteral(expression, column, 2), Locale.ROOT);
+                } catch (IllegalArgumentException e) {
+                    throw new Exception(String.format("Неверный формат даты в сопоставлении колонки %s: %s",
+                            column, e.getMessage()));
+                }
+                ColumnTransform source = sources[0];
+                return dataFile -> {
+                    String value = source.apply(dataFile);
+                    if (value == null) {
+                        return null;
+                    }
+                    try {
+                        return tableFormatter.format(fileFormatter.parse(value));
+                    } catch (DateTimeException e) {
+                        throw new Exception(String.format("Значение %s колонки %s не соответствует формату даты %s",
+                                value, column, filePattern));
+                    }
+                };
+            }
+            case "regex_replace": {
+                checkArgumentsCount(expression, column, 3, 3);
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(getLiteral(expression, column, 1));
+                } catch (PatternSyntaxException e) {
+                    throw new Exception(String.format("Неверное регулярное выражение в сопоставлении колонки %s: %s",
+                            column, e.getDescription()));
+                }
+                String replacement = getLiteral(expression, column, 2);
+                ColumnTransform source = sources[0];
+                return dataFile -> {
+                    String value = source.apply(dataFile);
+                    return value == null ? null : pattern.matcher(value).replaceAll(replacement);
+                };
+            }
+            default:
+                throw new Exception(String.format("Неизвестная функция %s в сопоставлении колонки %s",
+                        expression.name, column));
+        }
+    }
+
+    /**
+     * Получить индекс колонки файла по имени
+     *
+     * @param fileIndexes индексы колонок файла по именам в нижнем регистре
+     * @param name        имя колонки файла
+     * @param column      колонка таблицы, используется в сообщении об ошибке
+     * @return индекс колонки в файле
+     * @throws Exception колонки нет в файле
+     */
+    private static int getFileIndex(Map<String, Integer> fileIndexes, String name, String column) throws Exception {
+        Integer index = fileIndexes.get(name.toLowerCase());
+        if (index == null) {
+            throw new Exception(String.format("Колонки %s из сопоставления колонки %s нет в файле", name, column));
+        }
+        return index;
+    }
+
+    /**
+     * Проверить количество аргументов функции
+     *
+     * @param expression вызов функции
+     * @param column     колонка таблицы, используется в сообщении об ошибке
+     * @param min        наименьшее количество аргументов
+     * @param max        наибольшее количество аргументов
+     * @throws Exception количество аргументов не входит в допустимые пределы
+     */
+    private static void checkArgumentsCount(Expression expression, String column, int min, int max)
+            throws Exception {
+        int count = expression.arguments.size();
+        if (count < min || count > max) {
+            throw new Exception(String.format("Неверное количество аргументов функции %s в сопоставлении колонки %s: %d",
+                    expression.name, column, count));
+        }
+    }
+
+    /**
+     * Получить аргумент функции, который должен быть строкой в кавычках, например формат даты
+     *
+     * @param expression вызов функции
+     * @param column     колонка таблицы, используется в сообщении об ошибке
+     * @param index      индекс аргумента
+     * @return строка
+     * @throws Exception аргумент не является строкой в кавычках
+     */
+    private static String getLiteral(Expression expression, String column, int index) throws Exception {
+        Expression argument = expression.arguments.get(index);
+        if (argument.kind != Kind.LITERAL || argument.name == null) {
+            throw new Exception(String.format("Аргумент %d функции %s в сопоставлении колонки %s должен быть " +
+                    "строкой в одинарных кавычках", index + 1, expression.name, column));
+        }
+        return argument.name;
+    }
+
+    /**
+     * Убрать двойные кавычки вокруг имени колонки
+     *
+     * @param name имя колонки, возможно в двойных кавычках
+     * @return имя без кавычек
+     */
+    private static String unquote(String name) {
+        if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * Разобранное выражение правила
+     */
+    private static class Expression {
+
+        private final Kind kind;
+
+        /**
+         * Имя колонки файла, значение строки (null - NULL) или имя функции в нижнем регистре
+         */
+        private final String name;
+
+        /**
+         * Аргументы функции
+         */
+        private final List<Expression> arguments;
+
+        Expression(Kind kind, String name, List<Expression> arguments) {
+            this.kind = kind;
+            this.name = name;
+            this.arguments = arguments;
+        }
+    }
+
+    /**
+     * Разбор выражения правила
+     */
+    private static class Parser {
+
+        private final String text;
+
+        private int position = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Разобрать выражение целиком
+         *
+         * @return выражение
+         * @throws Exception выражение записано неверно
+         */
+        Expression parse() throws Exception {
+            Expression expression = parseExpression();
+            skipSpaces();
+            if (position < text.length()) {
+                throw new Exception(String.format("Лишние символы после выражения: %s", text.substring(position)));
+            }
+            return expression;
+        }
+
+        private Expression parseExpression() throws Exception {
+            skipSpaces();
+            if (position == text.length()) {
+                throw new Exception("Ожидается выражение");
+            }
+
+            char c = text.charAt(position);
+            if (c == '\'') {
+                return new Expression(Kind.LITERAL, readQuoted('\''), List.of());
+            }
+            if (c == '"') {
+                return new Expression(Kind.COLUMN, readQuoted('"'), List.of());
+            }
+            if (!Character.isLetter(c) && c != '_') {
+                throw new Exception(String.format("Неожиданный символ %s", c));
+            }
+
+            int start = position;
+            while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                position++;
+            }
+            String name = text.substring(start, position);
+            skipSpaces();
+            if (position == text.length() || text.charAt(position) != '(') {
+                return name.equalsIgnoreCase("null") ? new Expression(Kind.LITERAL, null, List.of())
+                        : new Expression(Kind.COLUMN, name, List.of());
+            }
+
+            position++;
+            List<Expression> arguments = new ArrayList<>();
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == ')') {
+                position++;
+                return new Expression(Kind.FUNCTION, name.toLowerCase(), arguments);
+            }
+            while (true) {
+                arguments.add(parseExpression());
+                skipSpaces();
+                if (position == text.length()) {
+                    throw new Exception(String.format("Не закрыта скобка функции %s", name));
+                }
+                char separator = text.charAt(position++);
+                if (separator == ')') {
+                    return new Expression(Kind.FUNCTION, name.toLowerCase(), arguments);
+                }
+                if (separator != ',') {
+                    throw new Exception(String.format("Ожидается запятая или скобка в аргументах функции %s", name));
+                }
+            }
+        }
+
+        /**
+         * Прочитать строку в кавычках, две кавычки подряд внутри - сама кавычка
+         *
+         * @param quote символ кавычки
+         * @return строка без кавычек
+         * @throws Exception кавычка не закрыта
+         */
+        private String readQuoted(char quote) throws Exception {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c != quote) {
+                    value.append(c);
+                } else if (position < text.length() && text.charAt(position) == quote) {
+                    value.append(quote);
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw new Exception("Не закрыта кавычка");
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package filltable;
+
+/**
+ * Вычисление значения колонки для вставки из текущей строки файла, собранное из правила сопоставления колонок.
+ * Вызывается для каждой строки, поэтому всё, что не зависит от строки (индексы колонок файла,
+ * регулярные выражения, форматы дат), подготавливается один раз при сборке.
+ * Не хранит состояния, поэтому одно преобразование используется из нескольких потоков.
+ *
+ * @see ColumnMapping#compile(ColumnsIntersection, String[], java.util.Set) собрать преобразования
+ */
+@FunctionalInterface
+public interface ColumnTransform {
+
+    /**
+     * Вычислить значение колонки для текущей строки файла
+     *
+     * @param dataFile файл, текущая строка которого преобразуется
+     * @return значение, null - NULL
+     * @throws Exception значение не удалось преобразовать
+     */
+    String apply(DataFile dataFile) throws Exception;
+}
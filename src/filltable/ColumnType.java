@@ -0,0 +1,417 @@
+package filltable;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Тип колонки таблицы с точки зрения передачи значений на сервер.
+ * Значение из файла переводится в Java-тип на клиенте и передаётся типизированным параметром,
+ * поэтому ошибка разбора видна ещё до отправки на сервер, а сервер не приводит текст к типу колонки.
+ * Дата и время, записанные не в формате ISO, передаются текстом: их формат зависит от настроек сервера.
+ */
+public enum ColumnType {
+    TEXT(Types.VARCHAR) {
+        @Override
+        Object parse(String value) {
+            return value;
+        }
+    },
+    SMALLINT(Types.SMALLINT) {
+        @Override
+        Object parse(String value) {
+            return Short.parseShort(checkInteger(value));
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setShort(index, (Short) value);
+        }
+    },
+    INTEGER(Types.INTEGER) {
+        @Override
+        Object parse(String value) {
+            return Integer.parseInt(checkInteger(value));
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setInt(index, (Integer) value);
+        }
+    },
+    BIGINT(Types.BIGINT) {
+        @Override
+        Object parse(String value) {
+            return Long.parseLong(checkInteger(value));
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setLong(index, (Long) value);
+        }
+    },
+    NUMERIC(Types.NUMERIC) {
+        @Override
+        Object parse(String value) {
+            String trimmed = value.trim();
+            // NaN и бесконечности BigDecimal не представляет, их разбирает сервер
+            if (parseSpecialFloat(trimmed) != null) {
+                return value;
+            }
+            // BigDecimal принимает и цифры других алфавитов, сервер - только ASCII
+            if (!DECIMAL_FLOAT.matcher(trimmed).matches()) {
+                throw new IllegalArgumentException();
+            }
+            return new BigDecimal(trimmed);
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setBigDecimal(index, (BigDecimal) value);
+        }
+    },
+    REAL(Types.REAL) {
+        @Override
+        Object parse(String value) {
+            double parsed = parseFloat(value);
+            float result = (float) parsed;
+            if (Float.isInfinite(result) && !Double.isInfinite(parsed) || result == 0 && parsed != 0) {
+                throw new IllegalArgumentException();
+            }
+            return result;
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setFloat(index, (Float) value);
+        }
+    },
+    DOUBLE(Types.DOUBLE) {
+        @Override
+        Object parse(String value) {
+            return parseFloat(value);
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setDouble(index, (Double) value);
+        }
+    },
+    BOOLEAN(Types.BOOLEAN) {
+        @Override
+        Object parse(String value) {
+            // те же написания, что принимает PostgreSQL: слова и их однозначные начала
+            String word = value.trim().toLowerCase();
+            if (word.equals("1") || isPrefix(word, "true", 1) || isPrefix(word, "yes", 1)
+                    || isPrefix(word, "on", 2)) {
+                return true;
+            }
+            if (word.equals("0") || isPrefix(word, "false", 1) || isPrefix(word, "no", 1)
+                    || isPrefix(word, "off", 2)) {
+                return false;
+            }
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setBoolean(index, (Boolean) value);
+        }
+    },
+    DATE(Types.DATE) {
+        @Override
+        Object parse(String value) {
+            return parseOrKeep(value, () -> LocalDate.parse(value.trim()));
+        }
+    },
+    TIME(Types.TIME) {
+        @Override
+        Object parse(String value) {
+            return parseOrKeep(value, () -> LocalTime.parse(value.trim()));
+        }
+    },
+    TIMESTAMP(Types.TIMESTAMP) {
+        @Override
+        Object parse(String value) {
+            return parseOrKeep(value, () -> LocalDateTime.parse(value.trim().replace(' ', 'T')));
+        }
+    },
+    TIMESTAMPTZ(Types.TIMESTAMP_WITH_TIMEZONE) {
+        @Override
+        Object parse(String value) {
+            return parseOrKeep(value, () -> OffsetDateTime.parse(value.trim().replace(' ', 'T')));
+        }
+    },
+
+    /**
+     * Прочие типы (uuid, json, перечисления, массивы и т.д.) передаются текстом без указания типа,
+     * тип определяет сервер по колонке
+     */
+    OTHER(Types.OTHER) {
+        @Override
+        Object parse(String value) {
+            return value;
+        }
+    };
+
+    /**
+     * Десятичная запись целого числа, как её принимает PostgreSQL
+     */
+    private static final Pattern DECIMAL_INTEGER = Pattern.compile("[+-]?[0-9]+");
+
+    /**
+     * Десятичная запись числа с плавающей точкой, как её принимает PostgreSQL
+     */
+    private static final Pattern DECIMAL_FLOAT = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    /**
+     * Тип из java.sql.Types, используется при передаче NULL
+     */
+    private final int sqlType;
+
+    ColumnType(int sqlType) {
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * Определяет тип по метаданным колонки
+     *
+     * @param sqlType  тип из java.sql.Types
+     * @param typeName имя типа в PostgreSQL
+     * @return тип колонки
+     */
+    public static ColumnType of(int sqlType, String typeName) {
+        switch (typeName.toLowerCase()) {
+            case "text":
+            case "varchar":
+            case "bpchar":
+            case "char":
+            case "name":
+                return TEXT;
+            case "int2":
+                return SMALLINT;
+            case "int4":
+                return INTEGER;
+            case "int8":
+                return BIGINT;
+            case "numeric":
+                return NUMERIC;
+            case "float4":
+                return REAL;
+            case "float8":
+                return DOUBLE;
+            case "bool":
+                return BOOLEAN;
+            case "date":
+                return DATE;
+            case "time":
+                return TIME;
+            case "timestamp":
+                return TIMESTAMP;
+            case "timestamptz":
+                return TIMESTAMPTZ;
+        }
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return TEXT;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * Переводит значение из файла в значение для передачи на сервер
+     *
+     * @param column имя колонки, используется в сообщении об ошибке
+     * @param value  значение из файла, null - NULL
+     * @return значение для передачи на сервер
+     * @throws Exception значение не соответствует типу колонки
+     */
+    public Object convert(String column, String value) throws Exception {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return parse(value);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new Exception(String.format("Значение '%s' колонки %s не соответствует типу %s",
+                    value, column, name().toLowerCase()));
+        }
+    }
+
+    /**
+     * Проверяет ли тип значения на клиенте.
+     *
+     * @return true - значение разбирается на клиенте, false - передаётся текстом как есть
+     */
+    public boolean isChecked() {
+        return this != TEXT && this != OTHER;
+    }
+
+    /**
+     * Передаёт значение параметром запроса
+     *
+     * @param statement запрос
+     * @param index     номер параметра, начиная с 1
+     * @param value     значение, полученное convert
+     * @throws SQLException ошибка передачи параметра
+     * @see ColumnType#convert(String, String) перевести значение из файла
+     */
+    public void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, sqlType);
+        } else if (value instanceof String) {
+            // текстовые колонки или дата/время не в формате ISO
+            if (this == TEXT) {
+                statement.setString(index, (String) value);
+            } else {
+                statement.setObject(index, value, Types.OTHER);
+            }
+        } else {
+            bindValue(statement, index, value);
+        }
+    }
+
+    /**
+     * Разбирает непустое значение из файла
+     *
+     * @param value значение
+     * @return значение для передачи на сервер
+     * @throws IllegalArgumentException значение не соответствует типу
+     */
+    abstract Object parse(String value);
+
+    /**
+     * Передаёт разобранное значение параметром запроса.
+     * По умолчанию через setObject, его понимает драйвер PostgreSQL для типов java.time.
+     *
+     * @param statement запрос
+     * @param index     номер параметра, начиная с 1
+     * @param value     разобранное значение, не null и не String
+     * @throws SQLException ошибка передачи параметра
+     */
+    void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+        statement.setObject(index, value);
+    }
+
+    /**
+     * Проверяет запись целого числа перед разбором: parseInt и parseLong принимают и цифры других алфавитов,
+     * а сервер - только ASCII
+     *
+     * @param value значение
+     * @return значение без пробелов по краям
+     * @throws IllegalArgumentException значение не соответствует типу
+     */
+    private static String checkInteger(String value) {
+        String trimmed = value.trim();
+        if (!DECIMAL_INTEGER.matcher(trimmed).matches()) {
+            throw new IllegalArgumentException();
+        }
+        return trimmed;
+    }
+
+    /**
+     * Разбирает число с плавающей точкой в записи PostgreSQL: десятичное число, NaN или бесконечность
+     * в любом регистре (inf, infinity со знаком). Записи Java (1f, 1d, шестнадцатеричные) не принимаются,
+     * как и числа за пределами double.
+     *
+     * @param value значение
+     * @return число
+     * @throws IllegalArgumentException значение не соответствует типу
+     */
+    private static double parseFloat(String value) {
+        String trimmed = value.trim();
+        Double special = parseSpecialFloat(trimmed);
+        if (special != null) {
+            return special;
+        }
+        if (!DECIMAL_FLOAT.matcher(trimmed).matches()) {
+            throw new IllegalArgumentException();
+        }
+        double result = Double.parseDouble(trimmed);
+        // переполнение и потерю всех значащих цифр сервер считает ошибкой
+        if (Double.isInfinite(result) || result == 0 && hasNonZeroDigit(trimmed)) {
+            throw new IllegalArgumentException();
+        }
+        return result;
+    }
+
+    /**
+     * Разбирает NaN или бесконечность в записи PostgreSQL
+     *
+     * @param value значение без пробелов по краям
+     * @return NaN или бесконечность, null - другое значение
+     */
+    private static Double parseSpecialFloat(String value) {
+        switch (value.toLowerCase()) {
+            case "nan":
+                return Double.NaN;
+            case "inf":
+            case "+inf":
+            case "infinity":
+            case "+infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+            case "-infinity":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Проверяет, есть ли в записи числа ненулевые цифры до порядка
+     *
+     * @param value десятичная запись числа
+     * @return true - число не равно нулю
+     */
+    private static boolean hasNonZeroDigit(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 'e' || c == 'E') {
+                break;
+            }
+            if (c >= '1' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет, что слово - начало полного написания не короче заданной длины
+     *
+     * @param word      слово в нижнем регистре
+     * @param full      полное написание
+     * @param minLength наименьшая длина, при которой начало однозначно
+     * @return true - слово совпадает с началом написания
+     */
+    private static boolean isPrefix(String word, String full, int minLength) {
+        return word.length() >= minLength && full.startsWith(word);
+    }
+
+    /**
+     * Разбирает дату или время в формате ISO, иначе оставляет текст для разбора на сервере
+     *
+     * @param value  значение
+     * @param parser разбор в формате ISO
+     * @return разобранное значение или исходный текст
+     */
+    private static Object parseOrKeep(String value, Supplier<Object> parser) {
+        try {
+            return parser.get();
+        } catch (DateTimeParseException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package filltable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Класс, отвечающий за хранение информации о пересечении колонок файла с заданными.
+ * Колонки пересечения упорядочены так же, как в файле, и в этом же порядке задаются колонки для вставки,
+ * поэтому позиция колонки в пересечении - это и номер параметра вставки, и номер значения строки файла.
+ * Не изменяется после создания, поэтому одно пересечение можно использовать для нескольких файлов
+ * с одинаковым заголовком.
+ * Пересечение, собранное с сопоставлением колонок, содержит преобразования: значение колонки с преобразованием
+ * вычисляется из строки файла, индекс колонки файла у неё -1.
+ *
+ * @see ColumnMapping сопоставление колонок
+ */
+public class ColumnsIntersection {
+    /**
+     * Пересечение колонок в порядке колонок файла
+     */
+    private final List<String> columnsIntersection;
+
+    /**
+     * Индексы колонок файла по позициям колонок пересечения
+     */
+    private final int[] fileColumnsIndexes;
+
+    /**
+     * Не попавшие в пересечение колонки из файла
+     */
+    private final Set<String> missingFileColumns;
+
+    /**
+     * Не попавшие в пересечение требуемые колонки
+     */
+    private final Set<String> missingDesiredColumns;
+
+    /**
+     * Преобразования по позициям колонок пересечения, null - у колонок нет преобразований
+     */
+    private final ColumnTransform[] transforms;
+
+    /**
+     * Создаёт экземпляр пересечения колонок файла с заданными колонками
+     *
+     * @param columnsIntersection   пересечение имен колонок в порядке колонок файла
+     * @param fileColumnsIndexes    индексы колонок из пересечения в файле, по позициям колонок пересечения
+     * @param missingFileColumns    не вошедшие в пересечение колонки файла
+     * @param missingDesiredColumns не вошедшие в пересечение колонки таблицы
+     */
+    public ColumnsIntersection(List<String> columnsIntersection,
+                               int[] fileColumnsIndexes,
+                               Set<String> missingFileColumns,
+                               Set<String> missingDesiredColumns) {
+        this(columnsIntersection, fileColumnsIndexes, missingFileColumns, missingDesiredColumns, null);
+    }
+
+    /**
+     * Создаёт экземпляр пересечения колонок с преобразованиями значений
+     *
+     * @param columnsIntersection   колонки для вставки
+     * @param fileColumnsIndexes    индексы колонок в файле по позициям колонок пересечения, -1 - у колонки
+     *                              есть преобразование
+     * @param missingFileColumns    не используемые колонки файла
+     * @param missingDesiredColumns не вошедшие в пересечение колонки таблицы
+     * @param transforms            преобразования по позициям колонок пересечения (null у колонок без
+     *                              преобразования), null - преобразований нет
+     */
+    public ColumnsIntersection(List<String> columnsIntersection,
+                               int[] fileColumnsIndexes,
+                               Set<String> missingFileColumns,
+                               Set<String> missingDesiredColumns,
+                               ColumnTransform[] transforms) {
+        if (columnsIntersection.size() != fileColumnsIndexes.length) {
+            throw new IllegalArgumentException("Количество колонок пересечения не совпадает с количеством индексов");
+        }
+        if (transforms != null && transforms.length != fileColumnsIndexes.length) {
+            throw new IllegalArgumentException("Количество преобразований не совпадает с количеством колонок");
+        }
+
+        this.columnsIntersection = List.copyOf(columnsIntersection);
+        this.fileColumnsIndexes = fileColumnsIndexes.clone();
+        this.missingFileColumns = Collections.unmodifiableSet(new LinkedHashSet<>(missingFileColumns));
+        this.missingDesiredColumns = Collections.unmodifiableSet(new LinkedHashSet<>(missingDesiredColumns));
+        this.transforms = transforms == null ? null : transforms.clone();
+    }
+
+    /**
+     * Возвращает пересечение колонок из файла и требуемых колонок.
+     *
+     * @return Пересечение колонок в порядке колонок файла, не изменяется
+     */
+    public List<String> getColumnsIntersection() {
+        return columnsIntersection;
+    }
+
+    /**
+     * Возвращает колонки из файла, которые не попали в пересечение.
+     *
+     * @return Колонки из файла, которые не попали в пересечение
+     */
+    public Set<String> getMissingFileColumns() {
+        return missingFileColumns;
+    }
+
+    /**
+     * Возвращает требуемые колонки, которые не попали в пересечение.
+     *
+     * @return Требуемые колонки, которые не попали в пересечение
+     */
+    public Set<String> getMissingDesiredColumns() {
+        return missingDesiredColumns;
+    }
+
+    /**
+     * Возвращает индексы колонок файла, которые попали в пересечение.
+     *
+     * @return копия индексов колонок файла по позициям колонок пересечения
+     */
+    public int[] getFileColumnsIndexes() {
+        return fileColumnsIndexes.clone();
+    }
+
+    /**
+     * Возвращает преобразования значений колонок.
+     *
+     * @return копия преобразований по позициям колонок пересечения, null - преобразований нет
+     */
+    public ColumnTransform[] getTransforms() {
+        return transforms == null ? null : transforms.clone();
+    }
+
+    /**
+     * Возвращает индекс колонки файла по позиции колонки в пересечении.
+     *
+     * @param position позиция колонки в пересечении
+     * @return индекс колонки в файле, -1 - значение вычисляется преобразованием
+     */
+    public int getFileColumnIndex(int position) {
+        return fileColumnsIndexes[position];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> %s", columnsIntersection, Arrays.toString(fileColumnsIndexes));
+    }
+}
@@ -0,0 +1,303 @@
+package filltable;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Сжатие файла с данными, определяется по первым байтам файла.
+ * gzip распаковывается средствами Java, файлы bgzip (gzip из блоков BGZF) - параллельно несколькими потоками.
+ * Для zstd и lz4 в Java нет распаковщика, они распаковываются программами zstd и lz4,
+ * которые должны быть установлены, - распаковка идёт в отдельном процессе.
+ * Распаковка в любом случае идёт в отдельном потоке с чтением наперёд в ограниченные буферы.
+ * Стандартный ввод и именованный канал читаются один раз с начала до конца, сжатие определяется
+ * по первым байтам потока.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD,
+    LZ4;
+
+    /**
+     * Количество распакованных блоков, прочитанных наперёд
+     */
+    private static final int READ_AHEAD_BLOCKS = 4;
+
+    /**
+     * Размер буфера чтения сжатого файла
+     */
+    private static final int INPUT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Количество первых байтов, по которым определяется сжатие, включая заголовок блока BGZF
+     */
+    private static final int HEADER_LENGTH = 18;
+
+    /**
+     * Определяет сжатие файла по первым байтам
+     *
+     * @param filePath путь к файлу
+     * @return сжатие файла, NONE - файл не сжат
+     * @throws IOException ошибка чтения файла
+     */
+    public static Compression detect(String filePath) throws IOException {
+        return detect(readHeader(filePath, 4));
+    }
+
+    /**
+     * Определяет сжатие по первым байтам
+     *
+     * @param magic первые байты файла или потока
+     * @return сжатие, NONE - данные не сжаты
+     */
+    private static Compression detect(byte[] magic) {
+        if (magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (magic.length >= 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+            return ZSTD;
+        }
+        if (magic.length >= 4 && (magic[0] & 0xff) == 0x04 && (magic[1] & 0xff) == 0x22
+                && (magic[2] & 0xff) == 0x4d && (magic[3] & 0xff) == 0x18) {
+            return LZ4;
+        }
+        return NONE;
+    }
+
+    /**
+     * Открывает файл для чтения с учётом сжатия.
+     * Несжатый файл отображается в память, сжатый распаковывается потоком.
+     * Сжатый файл можно читать только до конца, пропуская начало распакованных данных.
+     *
+     * @param filePath путь к файлу
+     * @param start    начало чтения, для сжатого файла - в распакованных байтах
+     * @param end      конец чтения, не включая, -1 - до конца файла
+     * @return источник байтов
+     * @throws IOException ошибка открытия файла или сжатый файл читается не до конца
+     */
+    public static ByteSource openByteSource(String filePath, long start, long end) throws IOException {
+        if (InputFiles.isStream(filePath)) {
+            return openStreamByteSource(filePath, start, end);
+        }
+        Compression compression = detect(filePath);
+        if (compression == NONE) {
+            return new MappedByteSource(filePath, start, end);
+        }
+        if (end >= 0) {
+            throw new IOException(String.format("Сжатый файл %s нельзя читать частями", filePath));
+        }
+        InputStream in = new ReadAheadInputStream(compression.open(filePath), READ_AHEAD_BLOCKS, "decompress");
+        try {
+            return new StreamByteSource(in, start);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает стандартный ввод или именованный канал для чтения с учётом сжатия.
+     * Поток читается один раз, поэтому первые байты для определения сжатия читаются с возвратом,
+     * а данные передаются разбору по мере поступления.
+     *
+     * @param filePath путь к каналу или - для стандартного ввода
+     * @param start    начало чтения, для потока допустимо только 0
+     * @param end      конец чтения, для потока допустимо только -1
+     * @return источник байтов
+     * @throws IOException ошибка открытия потока или поток читается не с начала или не до конца
+     */
+    private static ByteSource openStreamByteSource(String filePath, long start, long end) throws IOException {
+        if (start > 0 || end >= 0) {
+            throw new IOException(String.format("Поток %s можно читать только целиком с начала", filePath));
+        }
+        BufferedInputStream source = new BufferedInputStream(InputFiles.openStream(filePath), INPUT_BUFFER_SIZE);
+        InputStream in = null;
+        try {
+            source.mark(HEADER_LENGTH);
+            byte[] header = source.readNBytes(HEADER_LENGTH);
+            source.reset();
+            in = new ReadAheadInputStream(detect(header).open(source, header, filePath), READ_AHEAD_BLOCKS,
+                    "stream", true);
+            return new StreamByteSource(in, 0);
+        } catch (IOException e) {
+            if (in != null) {
+                in.close();
+            } else {
+                source.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает поток распакованных данных из уже открытого потока сжатых данных
+     *
+     * @param source   поток сжатых данных
+     * @param header   первые байты потока
+     * @param filePath путь к потоку для сообщений
+     * @return поток распакованных данных
+     * @throws IOException ошибка чтения заголовка или запуска программы распаковки
+     */
+    private InputStream open(InputStream source, byte[] header, String filePath) throws IOException {
+        switch (this) {
+            case GZIP:
+                if (ParallelGzipInputStream.isBgzf(header)) {
+                    return new ParallelGzipInputStream(source, Runtime.getRuntime().availableProcessors());
+                }
+                return new GZIPInputStream(source, INPUT_BUFFER_SIZE);
+            case ZSTD:
+                return openProcess("zstd", source, filePath);
+            case LZ4:
+                return openProcess("lz4", source, filePath);
+            default:
+                return source;
+        }
+    }
+
+    /**
+     * Открывает поток распакованных данных файла
+     *
+     * @param filePath путь к файлу
+     * @return поток распакованных данных
+     * @throws IOException ошибка открытия файла или запуска программы распаковки
+     */
+    public InputStream open(String filePath) throws IOException {
+        switch (this) {
+            case GZIP:
+                if (ParallelGzipInputStream.isBgzf(readHeader(filePath, 18))) {
+                    return new ParallelGzipInputStream(
+                            new BufferedInputStream(new FileInputStream(filePath), INPUT_BUFFER_SIZE),
+                            Runtime.getRuntime().availableProcessors());
+                }
+                // обычный gzip, в том числе из нескольких членов, распаковывается последовательно
+                return new GZIPInputStream(new FileInputStream(filePath), INPUT_BUFFER_SIZE);
+            case ZSTD:
+                return openProcess("zstd", filePath);
+            case LZ4:
+                return openProcess("lz4", filePath);
+            default:
+                return new BufferedInputStream(new FileInputStream(filePath), INPUT_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Читает первые байты файла
+     *
+     * @param filePath путь к файлу
+     * @param length   количество байтов
+     * @return первые байты, меньше length, если файл короче
+     * @throws IOException ошибка чтения файла
+     */
+    private static byte[] readHeader(String filePath, int length) throws IOException {
+        try (InputStream in = new FileInputStream(filePath)) {
+            return in.readNBytes(length);
+        }
+    }
+
+    /**
+     * Запускает программу распаковки, которая выводит распакованные данные в стандартный вывод
+     *
+     * @param program  программа распаковки
+     * @param filePath путь к файлу
+     * @return поток стандартного вывода программы
+     * @throws IOException программа не найдена
+     */
+    private static InputStream openProcess(String program, String filePath) throws IOException {
+        Process process;
+        try {
+            process = new ProcessBuilder(program, "-dc", filePath)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            throw new IOException(String.format("Для чтения файла %s нужна программа %s", filePath, program), e);
+        }
+        return new ProcessInputStream(process, program);
+    }
+
+    /**
+     * Запускает программу распаковки, которая читает сжатые данные из стандартного ввода.
+     * Сжатые данные передаются программе отдельным потоком выполнения.
+     *
+     * @param program  программа распаковки
+     * @param source   поток сжатых данных
+     * @param filePath путь к потоку для сообщений
+     * @return поток стандартного вывода программы
+     * @throws IOException программа не найдена
+     */
+    private static InputStream openProcess(String program, InputStream source, String filePath)
+            throws IOException {
+        Process process;
+        try {
+            process = new ProcessBuilder(program, "-dc")
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            throw new IOException(String.format("Для чтения потока %s нужна программа %s", filePath, program), e);
+        }
+        Thread pipe = new Thread(() -> {
+            try (InputStream in = source; OutputStream out = process.getOutputStream()) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                // программа завершилась раньше, ошибку покажет её код завершения
+            }
+        }, "pipe-" + program);
+        pipe.setDaemon(true);
+        pipe.start();
+        return new ProcessInputStream(process, program);
+    }
+
+    /**
+     * Стандартный вывод программы распаковки.
+     * В конце потока проверяет код завершения программы, при закрытии завершает программу.
+     */
+    private static class ProcessInputStream extends FilterInputStream {
+
+        private final Process process;
+
+        private final String program;
+
+        ProcessInputStream(Process process, String program) {
+            super(process.getInputStream());
+            this.process = process;
+            this.program = program;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n < 0) {
+                checkExitCode();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            process.destroy();
+            super.close();
+        }
+
+        /**
+         * Проверяет, что программа распаковки завершилась без ошибки
+         *
+         * @throws IOException программа завершилась с ошибкой
+         */
+        private void checkExitCode() throws IOException {
+            try {
+                int exitCode = process.waitFor();
+                if (exitCode != 0) {
+                    throw new IOException(String.format("Программа %s завершилась с кодом %d", program, exitCode));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Чтение прервано", e);
+            }
+        }
+    }
+}
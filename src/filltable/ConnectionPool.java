@@ -0,0 +1,149 @@
+package filltable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограниченный пул соединений с БД для загрузки нескольких файлов.
+ * Соединения открываются по мере надобности, но одновременно взято не больше заданного количества,
+ * и используются повторно для следующих файлов, поэтому соединение не открывается заново на каждый файл.
+ * Соединения выдаются без автоматической фиксации, с выставленным профилем сеанса,
+ * параметры профиля сбрасываются при закрытии пула.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String connectionUrl;
+
+    /**
+     * Профиль сеанса соединений, null - параметры сеанса не меняются
+     */
+    private final SessionProfile sessionProfile;
+
+    /**
+     * Разрешения на взятие соединения, по одному на соединение пула
+     */
+    private final Semaphore permits;
+
+    /**
+     * Свободные соединения
+     */
+    private final BlockingQueue<Connection> idle;
+
+    /**
+     * Все открытые соединения
+     */
+    private final List<Connection> opened = new ArrayList<>();
+
+    /**
+     * Создаёт пул, соединения пока не открываются
+     *
+     * @param connectionUrl  строка соединения с БД
+     * @param sessionProfile профиль сеанса соединений, null - параметры сеанса не меняются
+     * @param size           наибольшее количество соединений
+     */
+    public ConnectionPool(String connectionUrl, SessionProfile sessionProfile, int size) {
+        this.connectionUrl = connectionUrl;
+        this.sessionProfile = sessionProfile;
+        this.permits = new Semaphore(size);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Взять соединение: свободное или новое, если свободных нет.
+     * Если взяты все соединения, ждёт, пока какое-нибудь не вернут.
+     *
+     * @return соединение без автоматической фиксации
+     * @throws SQLException         невозможно открыть соединение
+     * @throws InterruptedException ожидание прервано
+     */
+    public Connection take() throws SQLException, InterruptedException {
+        permits.acquire();
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        SessionProfile.Session session;
+        try {
+            session = SessionProfile.open(connectionUrl, sessionProfile);
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+        connection = session.getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            permits.release();
+            try {
+                session.close();
+            } catch (SQLException ignored) {
+                // соединение уже недоступно
+            }
+            throw e;
+        }
+        synchronized (opened) {
+            opened.add(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Вернуть соединение в пул. Незафиксированные изменения откатываются.
+     * Соединение, которое нельзя откатить, закрывается, а вместо него при надобности откроется новое.
+     *
+     * @param connection соединение, взятое из пула
+     */
+    public void release(Connection connection) {
+        try {
+            connection.rollback();
+            idle.add(connection);
+        } catch (SQLException e) {
+            synchronized (opened) {
+                opened.remove(connection);
+            }
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // соединение уже недоступно
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Закрыть все соединения пула
+     *
+     * @throws SQLException ошибка закрытия соединения
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        synchronized (opened) {
+            for (var connection : opened) {
+                if (sessionProfile != null) {
+                    try {
+                        sessionProfile.reset(connection);
+                    } catch (SQLException ignored) {
+                        // соединение недоступно, параметры сбросятся вместе с сеансом
+                    }
+                }
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+            opened.clear();
+        }
+        idle.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
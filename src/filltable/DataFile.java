@@ -0,0 +1,989 @@
+package filltable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Класс, который читает данные из файла.
+ * Можно задать имена колонок, которые можно получить.
+ * Будет строиться пересечение колонок файла и тех, которые желаете получить.
+ * Формат файла (TSV, текстовый формат COPY, CSV), разделитель и обозначение NULL задаются FileFormat.
+ * Строка разбирается конечным автоматом за один проход по байтам окна, значения с экранированием
+ * и кавычками раскрываются только при запросе значения.
+ */
+public class DataFile {
+
+    /**
+     * Состояние разбора: обычные байты значения
+     */
+    private static final int STATE_VALUE = 0;
+
+    /**
+     * Состояние разбора текстового формата COPY: байт после обратной косой черты
+     */
+    private static final int STATE_ESCAPE = 1;
+
+    /**
+     * Состояние разбора CSV: внутри значения в кавычках
+     */
+    private static final int STATE_QUOTED = 2;
+
+    /**
+     * Состояние разбора CSV: кавычка внутри значения в кавычках - закрывающая или первая из двух
+     */
+    private static final int STATE_QUOTE_END = 3;
+
+    private final ByteSource file;
+
+    private final FileFormat format;
+
+    /**
+     * Разделитель значений
+     */
+    private final byte delimiter;
+
+    /**
+     * Байт, меняющий состояние разбора: \ для текстового формата COPY, " для CSV.
+     * Для TSV - перевод строки, который обрабатывается раньше, поэтому состояние не меняется
+     */
+    private final byte special;
+
+    /**
+     * Текущее окно файла.
+     * Строки разбираются прямо в байтах окна, в UTF-8 байты \t и \n не встречаются внутри многобайтовых символов.
+     * Декодируются только запрошенные значения.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Начало текущей строки в окне
+     */
+    private int lineStart = 0;
+
+    /**
+     * Длина текущей строки без символов перевода строки
+     */
+    private int lineLength = 0;
+
+    /**
+     * Начало следующей строки в окне
+     */
+    private int nextLineStart = 0;
+
+    /**
+     * Концы полей текущей строки относительно её начала.
+     * Поле i начинается сразу после конца поля i - 1 и разделителя
+     */
+    private int[] fieldEnds = new int[16];
+
+    /**
+     * Содержит ли поле текущей строки экранирование или кавычки, такое значение раскрывается перед декодированием
+     */
+    private boolean[] fieldEscaped = new boolean[16];
+
+    /**
+     * Нарушение формата в текущей строке, например незакрытая кавычка, null - строка разобрана без ошибок
+     */
+    private String formatError = null;
+
+    /**
+     * Количество полей в текущей строке
+     */
+    private int fieldsCount = 0;
+
+    /**
+     * Была ли считана строка
+     */
+    private boolean hasLine = false;
+
+    /**
+     * Буфер для копирования байтов значения из окна перед декодированием и для сборки строки COPY
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Буфер для раскрытого значения с экранированием или кавычками
+     */
+    private byte[] unescaped = new byte[256];
+
+    /**
+     * Колонки файла.
+     * Первая строка файла
+     */
+    private String[] fileColumns = null;
+
+    /**
+     * Пересечение колонок из файла и требуемых колонок
+     */
+    private ColumnsIntersection columnsIntersection = null;
+
+    /**
+     * Индексы колонок файла, попавших в пересечение, без упаковки в Integer
+     */
+    private int[] intersectionIndexes = null;
+
+    /**
+     * Преобразования значений колонок пересечения из сопоставления колонок, null - преобразований нет
+     */
+    private ColumnTransform[] transforms = null;
+
+    /**
+     * Значения колонок с преобразованиями, вычисленные для строки COPY
+     */
+    private String[] transformedValues = null;
+
+    /**
+     * Строгий декодер UTF-8 для проверки кодировки, создаётся при первой строке не из ASCII
+     */
+    private CharsetDecoder strictDecoder = null;
+
+    /**
+     * Буфер символов для проверки кодировки
+     */
+    private CharBuffer decodedChars = CharBuffer.allocate(0);
+
+
+    /**
+     * Создаёт экземпляр класса, открывает файл для чтения.
+     *
+     * @param filePath путь к файлу
+     * @throws IOException файл не найден или не может быть открыт
+     */
+    public DataFile(String filePath) throws IOException {
+        this(filePath, FileFormat.DEFAULT);
+    }
+
+    /**
+     * Создаёт экземпляр класса для файла заданного формата, открывает файл для чтения.
+     *
+     * @param filePath путь к файлу
+     * @param format   формат файла
+     * @throws IOException файл не найден или не может быть открыт
+     */
+    public DataFile(String filePath, FileFormat format) throws IOException {
+        this(Compression.openByteSource(filePath, 0, -1), format);
+    }
+
+    /**
+     * Создаёт экземпляр класса, читающий только заданный диапазон строк файла.
+     * Строка с именами колонок в диапазон не входит, имена колонок передаются заранее.
+     *
+     * @param filePath    путь к файлу
+     * @param range       диапазон байтов файла, состоящий из целых строк
+     * @param fileColumns имена колонок файла
+     * @throws IOException файл не найден или не может быть открыт
+     * @see FileRange#split(String, int, boolean) разбить файл на диапазоны
+     */
+    public DataFile(String filePath, FileRange range, String[] fileColumns) throws IOException {
+        this(filePath, range, fileColumns, FileFormat.DEFAULT);
+    }
+
+    /**
+     * Создаёт экземпляр класса, читающий только заданный диапазон строк файла заданного формата.
+     *
+     * @param filePath    путь к файлу
+     * @param range       диапазон байтов файла, состоящий из целых строк
+     * @param fileColumns имена колонок файла
+     * @param format      формат файла
+     * @throws IOException файл не найден или не может быть открыт
+     * @see FileRange#split(String, int, boolean) разбить файл на диапазоны
+     */
+    public DataFile(String filePath, FileRange range, String[] fileColumns, FileFormat format) throws IOException {
+        this(Compression.openByteSource(filePath, range.getStart(), range.getEnd()), format);
+        this.fileColumns = fileColumns;
+    }
+
+    /**
+     * Создаёт экземпляр класса, читающий данные из источника байтов.
+     *
+     * @param file источник байтов
+     */
+    public DataFile(ByteSource file) {
+        this(file, FileFormat.DEFAULT);
+    }
+
+    /**
+     * Создаёт экземпляр класса, читающий данные заданного формата из источника байтов.
+     * Если в формате нет строки заголовка, имена колонок берутся из формата.
+     *
+     * @param file   источник байтов
+     * @param format формат файла
+     */
+    public DataFile(ByteSource file, FileFormat format) {
+        this.file = file;
+        this.buffer = file.getBuffer();
+        this.format = format;
+        this.delimiter = format.getDelimiter();
+        switch (format.getType()) {
+            case TEXT:
+                this.special = '\\';
+                break;
+            case CSV:
+                this.special = '"';
+                break;
+            default:
+                this.special = '\n';
+                break;
+        }
+        if (!format.hasHeader()) {
+            this.fileColumns = format.getColumns();
+        }
+    }
+
+    /**
+     * Даёт колонки, которые есть в файле.
+     *
+     * @return массив с именами колонок файла
+     * @throws IOException ошибка чтения файла
+     * @throws Exception   имена колонок в файле повторяются
+     */
+    public String[] getFileColumns() throws IOException, Exception {
+        if (fileColumns != null) {
+            return fileColumns;
+        }
+        try {
+            if (!readLine()) {
+                throw new Exception("Файл пуст, нет строки с именами колонок");
+            }
+            if (formatError != null) {
+                throw new Exception(String.format("Ошибка в строке с именами колонок: %s", formatError));
+            }
+            String[] columns = new String[fieldsCount];
+            for (int i = 0; i < fieldsCount; i++) {
+                columns[i] = decodeField(i);
+            }
+            checkNotRepeatColumns(columns);
+            fileColumns = columns;
+            return fileColumns;
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Считать следующую строку и узнать о её наличие.
+     * Если до этого ни разу не были получены имена колок файла, то они будут считаны.
+     *
+     * @return true - есть ли следующая строка в файле, false - нет строк
+     * @throws IOException ошибка чтения файла
+     * @throws Exception   нарушение формата файла (некорректное количество колонок на новой строке)
+     */
+    public boolean next() throws IOException, Exception {
+        // если ещё не читали имена колонок, то считаем
+        if (fileColumns == null) {
+            getFileColumns();
+        }
+        try {
+            if (!readLine()) {
+                hasLine = false;
+                close();
+                return false;
+            }
+            hasLine = true;
+            if (formatError != null) {
+                throw new Exception(formatError);
+            }
+            checkLineColumnsCount(fieldsCount);
+            return true;
+        } catch (IOException e) {
+            // ошибка чтения файла, сразу закрываем
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Закрывает файл.
+     *
+     * @throws IOException ошибка закрытия файла
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Получить значение колонки index в текущей строке.
+     * Если было построено пересечение, то требуется индекс колонки пересечения, иначе индекс колонки в файле.
+     * Значение колонки с преобразованием из сопоставления колонок вычисляется преобразованием.
+     *
+     * @param index индекс нужной колонки
+     * @return Значение колонки в текущей строке index
+     * @throws IndexOutOfBoundsException индекс выходит за допустимые пределы
+     * @throws Exception                 не был вызван next или значение не удалось преобразовать
+     * @see DataFile#next() получить следующую строку
+     */
+    public String getValue(int index) throws IndexOutOfBoundsException, Exception {
+        if (intersectionIndexes == null) {
+            // не строили пересечение, значит просто берём значение из файла
+            return getFileValue(index);
+        }
+        if (!hasLine) {
+            throw new Exception("next не был вызван");
+        }
+        if (index < 0 || index >= intersectionIndexes.length) {
+            throw new IndexOutOfBoundsException("Недопустимый индекс колонки");
+        }
+        if (transforms != null && transforms[index] != null) {
+            return transforms[index].apply(this);
+        }
+        return getFileValue(intersectionIndexes[index]);
+    }
+
+    /**
+     * Получить значение колонки файла в текущей строке по индексу колонки в файле, без учёта пересечения.
+     *
+     * @param index индекс колонки в файле
+     * @return значение колонки в текущей строке
+     * @throws IndexOutOfBoundsException индекс выходит за допустимые пределы
+     * @throws Exception                 не был вызван next
+     */
+    public String getFileValue(int index) throws IndexOutOfBoundsException, Exception {
+        if (!hasLine) {
+            throw new Exception("next не был вызван");
+        }
+        if (index < 0 || index >= fileColumns.length) {
+            throw new IndexOutOfBoundsException("Недопустимый индекс колонки");
+        }
+        if (isNullValue(index)) {
+            return null;
+        }
+        return decodeField(index);
+    }
+
+    /**
+     * Получить значения колонок пересечения текущей строки сразу в текстовом формате COPY, без декодирования.
+     * Значения разделены табуляцией, строка заканчивается переводом строки, null передаётся как \\N,
+     * обратная косая черта, табуляция, \r и \n экранируются, чтобы значения попали в таблицу так же,
+     * как через getValue. Значения с экранированием или кавычками формата файла сначала раскрываются.
+     * Значения колонок с преобразованием вычисляются до сборки строки, остальные копируются из окна.
+     *
+     * @return строка COPY в UTF-8
+     * @throws Exception не был вызван next, не было построено пересечение или значение не удалось преобразовать
+     * @see Table#copyLine(byte[]) загрузить готовую строку COPY
+     */
+    public byte[] getCopyLine() throws Exception {
+        if (!hasLine) {
+            throw new Exception("next не был вызван");
+        }
+        if (intersectionIndexes == null) {
+            throw new Exception("Не построено пересечение колонок");
+        }
+
+        if (transforms != null) {
+            // преобразование может декодировать значения через scratch, поэтому вычисляется до сборки строки
+            for (int i = 0; i < transforms.length; i++) {
+                transformedValues[i] = transforms[i] == null ? null : transforms[i].apply(this);
+            }
+        }
+
+        int length = 0;
+        for (int i = 0; i < intersectionIndexes.length; i++) {
+            if (transforms != null && transforms[i] != null) {
+                length = appendCopyValue(length, i > 0, transformedValues[i]);
+                continue;
+            }
+            int index = intersectionIndexes[i];
+            int start = lineStart + getFieldStart(index);
+            int fieldLength = getFieldLength(index);
+
+            // в худшем случае каждый байт экранируется, плюс разделитель
+            ensureScratchCapacity(length + fieldLength * 2 + 3);
+            if (i > 0) {
+                scratch[length++] = '\t';
+            }
+            if (isNullValue(index)) {
+                scratch[length++] = '\\';
+                scratch[length++] = 'N';
+                continue;
+            }
+            if (fieldEscaped[index]) {
+                // раскрытое значение не длиннее исходного, поэтому места в scratch хватает
+                int unescapedLength = unescapeField(index);
+                for (int j = 0; j < unescapedLength; j++) {
+                    length = appendCopyByte(length, unescaped[j]);
+                }
+                continue;
+            }
+            for (int j = start; j < start + fieldLength; j++) {
+                length = appendCopyByte(length, buffer.get(j));
+            }
+        }
+        ensureScratchCapacity(length + 1);
+        scratch[length++] = '\n';
+        return Arrays.copyOf(scratch, length);
+    }
+
+    /**
+     * Добавляет вычисленное значение в строку COPY в scratch
+     *
+     * @param length       текущая длина строки COPY
+     * @param hasDelimiter перед значением нужен разделитель
+     * @param value        значение, null - NULL
+     * @return новая длина строки COPY
+     */
+    private int appendCopyValue(int length, boolean hasDelimiter, String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        ensureScratchCapacity(length + (bytes == null ? 0 : bytes.length * 2) + 3);
+        if (hasDelimiter) {
+            scratch[length++] = '\t';
+        }
+        if (bytes == null) {
+            scratch[length++] = '\\';
+            scratch[length++] = 'N';
+            return length;
+        }
+        for (var b : bytes) {
+            length = appendCopyByte(length, b);
+        }
+        return length;
+    }
+
+    /**
+     * Добавляет байт значения в строку COPY в scratch, экранируя служебные символы текстового формата COPY
+     *
+     * @param length текущая длина строки COPY
+     * @param b      байт значения
+     * @return новая длина строки COPY
+     */
+    private int appendCopyByte(int length, byte b) {
+        switch (b) {
+            case '\\':
+                scratch[length++] = '\\';
+                break;
+            case '\t':
+                scratch[length++] = '\\';
+                b = 't';
+                break;
+            case '\r':
+                scratch[length++] = '\\';
+                b = 'r';
+                break;
+            case '\n':
+                scratch[length++] = '\\';
+                b = 'n';
+                break;
+            default:
+                break;
+        }
+        scratch[length++] = b;
+        return length;
+    }
+
+    /**
+     * Проверяет, что текущая строка записана в корректной кодировке UTF-8.
+     * При обычном чтении неверные байты молча заменяются символом замены, эта проверка их обнаруживает.
+     * Строки только из символов ASCII проверяются одним проходом по байтам, без декодирования.
+     *
+     * @throws Exception не был вызван next или строка содержит неверную последовательность байтов UTF-8
+     */
+    public void checkEncoding() throws Exception {
+        if (!hasLine) {
+            throw new Exception("next не был вызван");
+        }
+
+        int end = lineStart + lineLength;
+        int position = lineStart;
+        while (position < end && buffer.get(position) >= 0) {
+            position++;
+        }
+        if (position == end) {
+            return;
+        }
+
+        if (strictDecoder == null) {
+            strictDecoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+        if (decodedChars.capacity() < lineLength) {
+            decodedChars = CharBuffer.allocate(Math.max(lineLength, decodedChars.capacity() * 2));
+        }
+        ByteBuffer line = buffer.duplicate();
+        line.limit(end).position(lineStart);
+        decodedChars.clear();
+        strictDecoder.reset();
+        CoderResult result = strictDecoder.decode(line, decodedChars, true);
+        if (result.isError()) {
+            throw new Exception(String.format("Неверная последовательность байтов UTF-8 с позиции %d строки",
+                    line.position() - lineStart + 1));
+        }
+    }
+
+    /**
+     * Декодирует значение поля текущей строки, раскрывая экранирование и кавычки формата
+     *
+     * @param index индекс поля
+     * @return значение
+     */
+    private String decodeField(int index) {
+        if (fieldEscaped[index]) {
+            int length = unescapeField(index);
+            return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+        }
+        return decode(lineStart + getFieldStart(index), getFieldLength(index));
+    }
+
+    /**
+     * Раскрывает значение поля с экранированием текстового формата COPY или кавычками CSV в буфер unescaped
+     *
+     * @param index индекс поля
+     * @return длина раскрытого значения
+     */
+    private int unescapeField(int index) {
+        int position = lineStart + getFieldStart(index);
+        int end = position + getFieldLength(index);
+        if (unescaped.length < end - position) {
+            unescaped = new byte[Math.max(end - position, unescaped.length * 2)];
+        }
+
+        int length = 0;
+        if (format.getType() == DataFormat.CSV) {
+            // поле начинается с кавычки, "" внутри - одна кавычка, после закрывающей кавычки байты берутся как есть
+            position++;
+            boolean isQuoted = true;
+            while (position < end) {
+                byte b = buffer.get(position++);
+                if (isQuoted && b == '"') {
+                    if (position < end && buffer.get(position) == '"') {
+                        position++;
+                    } else {
+                        isQuoted = false;
+                        continue;
+                    }
+                }
+                unescaped[length++] = b;
+            }
+            return length;
+        }
+
+        while (position < end) {
+            byte b = buffer.get(position++);
+            if (b != '\\' || position == end) {
+                unescaped[length++] = b;
+                continue;
+            }
+            b = buffer.get(position++);
+            switch (b) {
+                case 'b':
+                    unescaped[length++] = '\b';
+                    break;
+                case 'f':
+                    unescaped[length++] = '\f';
+                    break;
+                case 'n':
+                    unescaped[length++] = '\n';
+                    break;
+                case 'r':
+                    unescaped[length++] = '\r';
+                    break;
+                case 't':
+                    unescaped[length++] = '\t';
+                    break;
+                case 'v':
+                    unescaped[length++] = 0x0b;
+                    break;
+                case 'x': {
+                    // \xh или \xhh - байт в шестнадцатеричной записи
+                    int value = 0;
+                    int digits = 0;
+                    while (digits < 2 && position < end && Character.digit(buffer.get(position), 16) >= 0) {
+                        value = value * 16 + Character.digit(buffer.get(position++), 16);
+                        digits++;
+                    }
+                    unescaped[length++] = digits == 0 ? (byte) 'x' : (byte) value;
+                    break;
+                }
+                default:
+                    if (b >= '0' && b <= '7') {
+                        // \d, \dd или \ddd - байт в восьмеричной записи
+                        int value = b - '0';
+                        int digits = 1;
+                        while (digits < 3 && position < end && buffer.get(position) >= '0'
+                                && buffer.get(position) <= '7') {
+                            value = value * 8 + buffer.get(position++) - '0';
+                            digits++;
+                        }
+                        unescaped[length++] = (byte) value;
+                    } else {
+                        // любой другой символ после \ означает сам себя, в том числе разделитель и \
+                        unescaped[length++] = b;
+                    }
+                    break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Декодирует байты окна из UTF-8
+     *
+     * @param start  начало в окне
+     * @param length количество байтов
+     * @return строка
+     */
+    private String decode(int start, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        ensureScratchCapacity(length);
+        buffer.duplicate().position(start).get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Увеличивает вспомогательный буфер, если он меньше заданного размера
+     *
+     * @param capacity требуемый размер
+     */
+    private void ensureScratchCapacity(int capacity) {
+        if (scratch.length < capacity) {
+            scratch = Arrays.copyOf(scratch, Math.max(capacity, scratch.length * 2));
+        }
+    }
+
+    /**
+     * Проверяет, записано ли в поле текущей строки обозначение NULL, не создавая строку.
+     * Обозначение сравнивается с исходными байтами поля, до раскрытия экранирования.
+     * В CSV значение в кавычках никогда не NULL, поэтому "" - пустая строка.
+     *
+     * @param index индекс поля
+     * @return true - значение null
+     */
+    private boolean isNullValue(int index) {
+        int start = lineStart + getFieldStart(index);
+        int length = getFieldLength(index);
+        byte[] nullToken = format.getNullToken();
+        if (nullToken != null) {
+            if (length != nullToken.length || (fieldEscaped[index] && format.getType() == DataFormat.CSV)) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(start + i) != nullToken[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        // (c | 0x20) переводит латинскую букву в нижний регистр, другие символы не совпадут с искомыми
+        return length == 4
+                && (buffer.get(start) | 0x20) == 'n'
+                && (buffer.get(start + 1) | 0x20) == 'u'
+                && (buffer.get(start + 2) | 0x20) == 'l'
+                && (buffer.get(start + 3) | 0x20) == 'l';
+    }
+
+    /**
+     * Возвращает начало поля текущей строки относительно начала строки.
+     *
+     * @param index индекс поля
+     * @return начало поля
+     */
+    private int getFieldStart(int index) {
+        return index == 0 ? 0 : fieldEnds[index - 1] + 1;
+    }
+
+    /**
+     * Возвращает длину поля текущей строки.
+     *
+     * @param index индекс поля
+     * @return длина поля
+     */
+    private int getFieldLength(int index) {
+        return fieldEnds[index] - getFieldStart(index);
+    }
+
+    /**
+     * Считывает следующую строку и находит в ней границы полей за один проход по байтам окна.
+     * Если строка не помещается в окно, окно сдвигается на начало строки, при необходимости увеличиваясь.
+     * Границы полей хранятся относительно начала строки, поэтому сдвиг их не портит.
+     * Разделитель и перевод строки после обратной косой черты текстового формата COPY и внутри кавычек CSV
+     * не разделяют значения, такие поля отмечаются для раскрытия. Нарушение формата запоминается в formatError.
+     *
+     * @return true - строка считана, false - достигнут конец файла
+     * @throws IOException ошибка чтения файла
+     */
+    private boolean readLine() throws IOException {
+        lineStart = nextLineStart;
+        fieldsCount = 0;
+        formatError = null;
+        int position = lineStart;
+        int limit = buffer.limit();
+        int state = STATE_VALUE;
+        boolean isEscaped = false;
+
+        while (true) {
+            if (position == limit) {
+                boolean hasMoreData = file.refill(lineStart);
+                buffer = file.getBuffer();
+                position -= lineStart;
+                lineStart = 0;
+                limit = buffer.limit();
+                if (!hasMoreData && position == limit) {
+                    if (position == lineStart) {
+                        // после последнего перевода строки ничего нет
+                        nextLineStart = lineStart;
+                        return false;
+                    }
+                    // последняя строка без перевода строки в конце
+                    finishLine(position, position, isEscaped);
+                    if (state == STATE_QUOTED) {
+                        formatError = "Кавычка значения не закрыта до конца файла";
+                    } else if (state == STATE_ESCAPE) {
+                        formatError = "Файл заканчивается обратной косой чертой";
+                    }
+                    return true;
+                }
+                continue;
+            }
+
+            byte b = buffer.get(position);
+            if (state == STATE_VALUE) {
+                if (b == '\n') {
+                    finishLine(position, position + 1, isEscaped);
+                    return true;
+                }
+                if (b == delimiter) {
+                    addFieldEnd(position - lineStart, isEscaped);
+                    isEscaped = false;
+                } else if (b == special) {
+                    if (special == '\\') {
+                        state = STATE_ESCAPE;
+                        isEscaped = true;
+                    } else if (position - lineStart == getFieldStart(fieldsCount)) {
+                        // в CSV кавычка имеет значение только в начале поля
+                        state = STATE_QUOTED;
+                        isEscaped = true;
+                    }
+                }
+            } else if (state == STATE_ESCAPE) {
+                state = STATE_VALUE;
+            } else if (state == STATE_QUOTED) {
+                if (b == '"') {
+                    state = STATE_QUOTE_END;
+                }
+            } else {
+                if (b == '"') {
+                    // "" внутри кавычек - сама кавычка
+                    state = STATE_QUOTED;
+                } else {
+                    // кавычка закрыла значение, байт после неё разбирается как обычный
+                    state = STATE_VALUE;
+                    if (b != delimiter && b != '\n' && b != '\r' && formatError == null) {
+                        formatError = String.format("После закрывающей кавычки в колонке %d идёт символ %s " +
+                                "вместо разделителя", fieldsCount + 1, (char) b);
+                    }
+                    continue;
+                }
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Завершает разбор строки: запоминает конец последнего поля и начало следующей строки.
+     * Символ \r перед \n не входит в строку.
+     *
+     * @param end           позиция конца строки в окне
+     * @param nextLineStart начало следующей строки в окне
+     * @param isEscaped     последнее поле содержит экранирование или кавычки
+     */
+    private void finishLine(int end, int nextLineStart, boolean isEscaped) {
+        if (end > lineStart && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        lineLength = end - lineStart;
+        addFieldEnd(lineLength, isEscaped);
+        this.nextLineStart = nextLineStart;
+    }
+
+    /**
+     * Добавляет конец очередного поля текущей строки.
+     *
+     * @param end       конец поля относительно начала строки
+     * @param isEscaped поле содержит экранирование или кавычки
+     */
+    private void addFieldEnd(int end, boolean isEscaped) {
+        if (fieldsCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldEnds.length * 2);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, fieldEscaped.length * 2);
+        }
+        fieldEscaped[fieldsCount] = isEscaped;
+        fieldEnds[fieldsCount++] = end;
+    }
+
+    /**
+     * Получить текущую строку в исходном виде.
+     * Доступна и в случае, если next завершился ошибкой нарушения структуры файла.
+     *
+     * @return текущая строка, null - next не был вызван
+     */
+    public String getLastLine() {
+        if (!hasLine) {
+            return null;
+        }
+        return decode(lineStart, lineLength);
+    }
+
+    /**
+     * Возвращает позицию в файле сразу за текущей строкой, то есть количество байтов файла, прочитанных до неё.
+     * До первого вызова next - позиция первой строки данных.
+     *
+     * @return смещение в байтах от начала файла
+     */
+    public long getPosition() {
+        return file.getBufferOffset() + nextLineStart;
+    }
+
+    /**
+     * Возвращает пересечение колонок из файла и требуемых
+     *
+     * @return Пересечение колонок из файла и требуемых
+     * @see DataFile#setDesiredColumns(Set) задать требуемые колонки
+     */
+    public ColumnsIntersection getColumnsIntersection() {
+        return columnsIntersection;
+    }
+
+    /**
+     * Задаёт уже построенное пересечение колонок, например построенное для другого файла с такими же колонками.
+     * Пересечение должно быть построено по тем же именам колонок файла в том же порядке.
+     *
+     * @param columnsIntersection пересечение колонок
+     * @throws IOException ошибка чтения имён колонок файла
+     * @throws Exception   повторение имён колонок в файле
+     * @see DataFile#setDesiredColumns(Set) построить пересечение колонок
+     */
+    public void setColumnsIntersection(ColumnsIntersection columnsIntersection) throws IOException, Exception {
+        if (fileColumns == null) {
+            getFileColumns();
+        }
+        this.columnsIntersection = columnsIntersection;
+        this.intersectionIndexes = columnsIntersection.getFileColumnsIndexes();
+        this.transforms = columnsIntersection.getTransforms();
+        this.transformedValues = transforms == null ? null : new String[transforms.length];
+    }
+
+    /**
+     * Проверяет, что колонки не повторяются.
+     *
+     * @param columns массив имён колонок
+     * @throws Exception имена колонок повторяются
+     */
+    private void checkNotRepeatColumns(String[] columns) throws Exception {
+        Set<String> meetColumns = new HashSet<>();
+
+        for (var column : columns) {
+            String lowerCaseColumn = column.toLowerCase();
+            if (meetColumns.contains(lowerCaseColumn)) {
+                throw new Exception(String.format("Колонка %s встречается несколько раз в файле", column));
+            }
+            meetColumns.add(lowerCaseColumn);
+        }
+    }
+
+    /**
+     * Проверяет что количество колонок на новой строке совпадает с начально заданным количеством колонок
+     *
+     * @param lineColumnsCount количество колонок
+     * @throws Exception количество в строке не соответствует количеству колонок в файле
+     */
+    private void checkLineColumnsCount(int lineColumnsCount) throws Exception {
+        if (lineColumnsCount < fileColumns.length) {
+            throw new Exception(String.format(
+                    "Слишком мало столбцов в строке. " +
+                            "Должно быть %d, Имеется %d", fileColumns.length, lineColumnsCount
+            ));
+        }
+        if (lineColumnsCount > fileColumns.length) {
+            throw new Exception(String.format(
+                    "Слишком много столбцов в строке. " +
+                            "Должно быть %d, Имеется %d", fileColumns.length, lineColumnsCount
+            ));
+        }
+    }
+
+    /**
+     * Установить желаемые для извлечения из файла колонки.
+     * Строится пересечение с колонками из файла.
+     * Возвращает пересечение.
+     * Если до этого ни разу не были получены имена колок файла, то они будут считаны.
+     *
+     * @param desiredColumns требуемые для получения из файла колонки
+     * @return Пересечение колонок
+     * @throws IOException ошибка чтения имён колонок файла
+     * @throws Exception   повторение имён колонок в файле
+     */
+    public ColumnsIntersection setDesiredColumns(Set<String> desiredColumns) throws IOException, Exception {
+        // не брали ещё колонки из файла, возьмём
+        if (fileColumns == null) {
+            getFileColumns();
+        }
+
+        // пересечение и пропущенные колонки файла и требуемых
+        // пересечение в порядке колонок файла, этот же порядок будет у колонок для вставки
+        List<String> columnsIntersect = new ArrayList<>();
+        int[] fileColumnsIndexes = new int[fileColumns.length];
+        Set<String> intersectSet = new HashSet<>();
+        Set<String> missingFileColumns = new LinkedHashSet<>();
+        Set<String> missingDesiredColumns = new LinkedHashSet<>();
+
+        // проходим по колонкам файла и строим пересечение
+        for (int i = 0; i < fileColumns.length; i++) {
+            var fileColumnLowerCase = fileColumns[i].toLowerCase();
+
+            // нет такой колонки в нужных для выбора, отметим
+            if (!desiredColumns.contains(fileColumnLowerCase)) {
+                missingFileColumns.add(fileColumns[i]);
+            } else {
+                // добавим в пересечение
+                fileColumnsIndexes[columnsIntersect.size()] = i;
+                columnsIntersect.add(fileColumnLowerCase);
+                intersectSet.add(fileColumnLowerCase);
+            }
+        }
+
+        // возьмём все нужные колонки, но которых нет в файле
+        for (var column : desiredColumns) {
+            if (!intersectSet.contains(column.toLowerCase())) {
+                missingDesiredColumns.add(column);
+            }
+        }
+
+        setColumnsIntersection(new ColumnsIntersection(columnsIntersect,
+                Arrays.copyOf(fileColumnsIndexes, columnsIntersect.size()), missingFileColumns, missingDesiredColumns));
+        return this.columnsIntersection;
+    }
+
+    /**
+     * Установить желаемые колонки и дополнить пересечение по именам правилами сопоставления колонок.
+     * Правила собираются в преобразования один раз для заголовка этого файла.
+     *
+     * @param desiredColumns требуемые для получения из файла колонки
+     * @param columnMapping  сопоставление колонок, null - только пересечение по именам
+     * @return Пересечение колонок с преобразованиями
+     * @throws IOException ошибка чтения имён колонок файла
+     * @throws Exception   повторение имён колонок в файле или правило сопоставления не подходит к файлу и таблице
+     * @see ColumnMapping#compile(ColumnsIntersection, String[], Set) собрать преобразования
+     */
+    public ColumnsIntersection setDesiredColumns(Set<String> desiredColumns, ColumnMapping columnMapping)
+            throws IOException, Exception {
+        ColumnsIntersection byName = setDesiredColumns(desiredColumns);
+        if (columnMapping == null) {
+            return byName;
+        }
+        try {
+            setColumnsIntersection(columnMapping.compile(byName, fileColumns, desiredColumns));
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+        return this.columnsIntersection;
+    }
+}
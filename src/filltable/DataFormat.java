@@ -0,0 +1,21 @@
+package filltable;
+
+/**
+ * Формат файла с данными
+ */
+public enum DataFormat {
+    /**
+     * Значения разделены табуляцией без экранирования, NULL в любом регистре - пустое значение (по умолчанию)
+     */
+    TSV,
+
+    /**
+     * Текстовый формат COPY PostgreSQL: экранирование обратной косой чертой (\t, \n, \\, \N и т.д.)
+     */
+    TEXT,
+
+    /**
+     * CSV по RFC 4180: значения в двойных кавычках могут содержать разделитель, кавычки и переводы строк
+     */
+    CSV
+}
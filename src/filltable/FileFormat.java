@@ -0,0 +1,171 @@
+package filltable;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Настройки формата файла с данными: формат, разделитель значений, обозначение NULL, наличие строки заголовка.
+ * Разбор по этим настройкам выполняет DataFile за один проход по байтам окна.
+ * Разделитель - один символ ASCII, поэтому его байт не встречается внутри многобайтовых символов UTF-8.
+ */
+public class FileFormat {
+
+    /**
+     * Формат по умолчанию: значения через табуляцию без экранирования, строка заголовка есть
+     */
+    public static final FileFormat DEFAULT = new FileFormat(DataFormat.TSV, null, null, true, null);
+
+    private final DataFormat type;
+
+    private final byte delimiter;
+
+    /**
+     * Обозначение NULL в байтах UTF-8, null - слово NULL в любом регистре
+     */
+    private final byte[] nullToken;
+
+    private final boolean hasHeader;
+
+    /**
+     * Имена колонок файла без строки заголовка, null - имена берутся из первой строки
+     */
+    private final String[] columns;
+
+    /**
+     * Создаёт настройки формата файла
+     *
+     * @param type      формат файла
+     * @param delimiter разделитель значений, null - по умолчанию для формата: табуляция или запятая для CSV
+     * @param nullToken обозначение NULL, null - по умолчанию для формата: NULL в любом регистре, \N или
+     *                  пустое значение без кавычек для CSV
+     * @param hasHeader первая строка файла содержит имена колонок
+     * @param columns   имена колонок файла без строки заголовка, null - если заголовок есть
+     * @see #isValidDelimiter(DataFormat, char) проверить разделитель
+     */
+    public FileFormat(DataFormat type, Character delimiter, String nullToken, boolean hasHeader, String[] columns) {
+        this.type = type;
+        this.delimiter = (byte) (delimiter != null ? (char) delimiter : type == DataFormat.CSV ? ',' : '\t');
+
+        if (nullToken == null && type == DataFormat.TEXT) {
+            nullToken = "\\N";
+        } else if (nullToken == null && type == DataFormat.CSV) {
+            nullToken = "";
+        }
+        this.nullToken = nullToken == null ? null : nullToken.getBytes(StandardCharsets.UTF_8);
+
+        this.hasHeader = hasHeader;
+        this.columns = hasHeader || columns == null ? null : columns.clone();
+    }
+
+    /**
+     * Узнать, можно ли использовать символ как разделитель значений в формате.
+     * Разделитель должен быть символом ASCII, не переводом строки и не символом экранирования формата.
+     *
+     * @param type      формат файла
+     * @param delimiter символ
+     * @return true - символ подходит
+     */
+    public static boolean isValidDelimiter(DataFormat type, char delimiter) {
+        return delimiter < 128 && delimiter != '\n' && delimiter != '\r'
+                && !(type == DataFormat.CSV && delimiter == '"')
+                && !(type == DataFormat.TEXT && delimiter == '\\');
+    }
+
+    /**
+     * Возвращает формат файла.
+     *
+     * @return формат файла
+     */
+    public DataFormat getType() {
+        return type;
+    }
+
+    /**
+     * Возвращает разделитель значений.
+     *
+     * @return байт разделителя
+     */
+    public byte getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Возвращает обозначение NULL.
+     *
+     * @return байты UTF-8, null - слово NULL в любом регистре
+     */
+    public byte[] getNullToken() {
+        return nullToken;
+    }
+
+    /**
+     * Узнать, есть ли в файле строка заголовка с именами колонок.
+     *
+     * @return true - первая строка содержит имена колонок
+     */
+    public boolean hasHeader() {
+        return hasHeader;
+    }
+
+    /**
+     * Возвращает имена колонок файла без строки заголовка.
+     *
+     * @return имена колонок, null - имена берутся из строки заголовка
+     */
+    public String[] getColumns() {
+        return columns == null ? null : columns.clone();
+    }
+
+    /**
+     * Узнать, можно ли делить файл на части по переводам строк.
+     * В CSV перевод строки может быть внутри значения в кавычках, поэтому граница части может попасть в середину строки.
+     * В текстовом формате COPY экранированный перевод строки узнаётся по обратным косым чертам перед ним,
+     * такой файл делится с их учётом.
+     *
+     * @return true - каждый перевод строки заканчивает строку файла
+     */
+    public boolean isSplittable() {
+        return type != DataFormat.CSV;
+    }
+
+    /**
+     * Записать значение в формате файла, например для дополнительных колонок файла отклонённых строк.
+     * В формате TSV разделители и переводы строк заменяются пробелом, так как экранирования в нём нет.
+     *
+     * @param value значение
+     * @return значение в формате файла
+     */
+    public String formatValue(String value) {
+        String delimiterString = String.valueOf((char) delimiter);
+        switch (type) {
+            case TEXT:
+                return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r")
+                        .replace("\t", "\\t").replace(delimiterString, "\\" + delimiterString);
+            case CSV:
+                if (value.isEmpty() || value.contains(delimiterString) || value.contains("\"")
+                        || value.contains("\n") || value.contains("\r")) {
+                    return '"' + value.replace("\"", "\"\"") + '"';
+                }
+                return value;
+            default:
+                return value.replaceAll("[" + (delimiter == '\t' ? "\\t" : "\\Q" + delimiterString + "\\E")
+                        + "\\r\\n]+", " ");
+        }
+    }
+
+    /**
+     * Собрать строку файла из значений в формате файла
+     *
+     * @param values значения
+     * @return строка без перевода строки в конце
+     */
+    public String formatLine(String... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append((char) delimiter);
+            }
+            line.append(formatValue(values[i]));
+        }
+        return line.toString();
+    }
+}
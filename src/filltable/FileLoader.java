@@ -0,0 +1,199 @@
+package filltable;
+
+import java.sql.Connection;
+import java.util.List;
+
+/**
+ * Загрузка одного файла в таблицу одним соединением: с контрольными точками, в режиме upsert,
+ * с обработкой ошибочных строк и фиксацией или откатом изменений в конце.
+ * Используется для загрузки одного файла и для каждого файла при загрузке нескольких файлов.
+ * Сообщения о ходе загрузки не выводит, итог можно получить после загрузки.
+ */
+public class FileLoader {
+
+    private final Arguments arguments;
+
+    private final Connection connection;
+
+    /**
+     * Показатели загрузки этого файла, учитываются также в общих показателях
+     */
+    private final LoadMetrics metrics;
+
+    /**
+     * Количество пропущенных ошибочных строк
+     */
+    private int errorsCount = 0;
+
+    /**
+     * Количество вставленных и обновлённых строк в режиме upsert, -1 - обычная вставка
+     */
+    private long upsertRowsCount = -1;
+
+    /**
+     * Номер последней зафиксированной контрольной точкой строки, 0 - контрольных точек не было
+     */
+    private int committedLineNumber = 0;
+
+    /**
+     * Создаёт загрузку файла
+     *
+     * @param arguments  аргументы командной строки
+     * @param connection соединение с БД без автоматической фиксации
+     * @param metrics    общие показатели загрузки
+     */
+    public FileLoader(Arguments arguments, Connection connection, LoadMetrics metrics) {
+        this.arguments = arguments;
+        this.connection = connection;
+        this.metrics = new LoadMetrics(metrics);
+    }
+
+    /**
+     * Загрузить файл и зафиксировать изменения при успехе или откатить их.
+     * Файл закрывается в любом случае.
+     *
+     * @param filePath       путь к файлу, по нему ищется ход загрузки для контрольных точек
+     * @param dataFile       файл с построенным пересечением колонок
+     * @param table          таблица
+     * @param insertColumns  колонки для вставки - пересечение колонок файла и таблицы
+     * @param rejectFilePath путь к файлу отклонённых строк
+     * @return true - файл загружен и изменения зафиксированы, false - изменения отменены
+     * @throws Exception ошибка загрузки, изменения после последней контрольной точки не зафиксированы
+     */
+    public boolean load(String filePath, DataFile dataFile, Table table, List<String> insertColumns,
+                        String rejectFilePath) throws Exception {
+        RowSource rows = null;
+        try {
+            table.setInsertColumns(insertColumns);
+
+            // в режиме upsert строки загружаются в промежуточную таблицу и переносятся в основную одним запросом
+            Upsert upsert = null;
+            Table loadTable = table;
+            if (arguments.getUpsertColumns() != null) {
+                upsert = new Upsert(connection, table, arguments.getUpsertColumns(), arguments.getOnConflict(),
+                        arguments.isMerge());
+                loadTable = upsert.createStagingTable(insertColumns);
+            }
+
+            Checkpoint checkpoint = null;
+            if (arguments.getCheckpointRows() > 0 && InputFiles.isStream(filePath)) {
+                System.out.println("Загрузку из потока нельзя продолжить с контрольной точки, " +
+                        "загрузка идёт одной транзакцией");
+            } else if (arguments.getCheckpointRows() > 0) {
+                checkpoint = new Checkpoint(connection, arguments.getCheckpointTable(), filePath,
+                        arguments.getTableName(), arguments.getCheckpointRows());
+                if (checkpoint.isResumed()) {
+                    dataFile = resumeDataFile(dataFile, checkpoint, filePath, arguments.getFileFormat());
+                }
+                checkpoint.setUpsert(upsert);
+            }
+            boolean isResumed = checkpoint != null && checkpoint.isResumed();
+
+            try (RowErrorHandler errorHandler = new RowErrorHandler(arguments.getOnError(), arguments.getMaxErrors(),
+                    rejectFilePath, dataFile.getFileColumns(), arguments.getFileFormat())) {
+                if (checkpoint != null) {
+                    checkpoint.setErrorHandler(errorHandler);
+                }
+                rows = Main.createRowSource(dataFile, errorHandler, loadTable.getRowConverter(), arguments,
+                        isResumed ? checkpoint.getLineNumber() : 0, metrics);
+
+                boolean isSuccess;
+                try {
+                    isSuccess = arguments.getLoadMode() == LoadMode.COPY
+                            ? Main.tryCopy(rows, loadTable, metrics, checkpoint)
+                            : Main.tryInsert(rows, loadTable, connection, errorHandler, arguments.getLoadMode(),
+                            metrics, checkpoint);
+                } finally {
+                    if (checkpoint != null) {
+                        committedLineNumber = checkpoint.getLineNumber();
+                    }
+                }
+                errorsCount = errorHandler.getErrorsCount();
+
+                if (!isSuccess) {
+                    connection.rollback();
+                    return false;
+                }
+                if (upsert != null) {
+                    upsert.merge();
+                    upsert.dropStagingTable();
+                    upsertRowsCount = upsert.getRowsCount();
+                }
+                if (checkpoint != null) {
+                    checkpoint.finish();
+                }
+                connection.commit();
+                return true;
+            }
+        } finally {
+            if (rows != null) {
+                rows.close();
+            } else {
+                dataFile.close();
+            }
+        }
+    }
+
+    /**
+     * Открыть файл для продолжения прерванной загрузки с позиции контрольной точки.
+     * Начало файла до контрольной точки не читается и не разбирается,
+     * у сжатого файла начало распаковывается, но не разбирается.
+     *
+     * @param dataFile   файл, из которого уже прочитаны имена колонок, закрывается
+     * @param checkpoint контрольная точка прерванной загрузки
+     * @param filePath   путь к файлу
+     * @param format     формат файла
+     * @return файл, читающий строки после контрольной точки, с тем же пересечением колонок
+     * @throws Exception ошибка открытия файла
+     */
+    private static DataFile resumeDataFile(DataFile dataFile, Checkpoint checkpoint, String filePath,
+                                           FileFormat format) throws Exception {
+        String[] fileColumns = dataFile.getFileColumns();
+        ColumnsIntersection columnsIntersection = dataFile.getColumnsIntersection();
+        dataFile.close();
+
+        System.out.printf("Продолжение прерванной загрузки файла %s после строки %d (байт %d)\n",
+                filePath, checkpoint.getLineNumber(), checkpoint.getPosition());
+        DataFile resumedFile = new DataFile(filePath, new FileRange(checkpoint.getPosition(), -1), fileColumns,
+                format);
+        resumedFile.setColumnsIntersection(columnsIntersection);
+        return resumedFile;
+    }
+
+    /**
+     * Возвращает показатели загрузки этого файла.
+     *
+     * @return показатели загрузки
+     */
+    public LoadMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Возвращает количество пропущенных ошибочных строк.
+     *
+     * @return количество строк
+     */
+    public int getErrorsCount() {
+        return errorsCount;
+    }
+
+    /**
+     * Возвращает количество вставленных и обновлённых строк в режиме upsert.
+     *
+     * @return количество строк, -1 - обычная вставка
+     */
+    public long getUpsertRowsCount() {
+        return upsertRowsCount;
+    }
+
+    /**
+     * Возвращает номер последней строки, зафиксированной контрольной точкой.
+     * Изменения до этой строки сохраняются, даже если загрузка не удалась.
+     *
+     * @return номер строки, 0 - контрольных точек не было
+     */
+    public int getCommittedLineNumber() {
+        return committedLineNumber;
+    }
+}
@@ -0,0 +1,131 @@
+package filltable;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Диапазон байтов файла, состоящий из целых строк
+ */
+public class FileRange {
+    /**
+     * Начало диапазона, первый байт строки
+     */
+    private final long start;
+
+    /**
+     * Конец диапазона, не включая, сразу после перевода строки или конец файла, -1 - до конца файла
+     */
+    private final long end;
+
+    /**
+     * Создаёт диапазон байтов
+     *
+     * @param start начало диапазона
+     * @param end   конец диапазона, не включая, -1 - до конца файла
+     */
+    public FileRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Делит строки данных файла (все, кроме первой строки с именами колонок, если она есть) на диапазоны
+     * примерно равного размера.
+     * Границы диапазонов сдвигаются на начало следующей строки, поэтому каждая строка попадает ровно в один диапазон.
+     * В текстовом формате COPY перевод строки после обратной косой черты входит в значение и строку не заканчивает.
+     * Диапазонов может получиться меньше, чем запрошено, если файл маленький или строки длинные.
+     *
+     * @param filePath путь к файлу
+     * @param parts    желаемое количество диапазонов
+     * @param format   формат файла, должен допускать деление на части
+     * @return непустые диапазоны в порядке следования в файле
+     * @throws IOException ошибка чтения файла
+     * @see FileFormat#isSplittable() можно ли делить файл на части
+     */
+    public static List<FileRange> split(String filePath, int parts, FileFormat format) throws IOException {
+        List<FileRange> ranges = new ArrayList<>();
+        boolean isEscaped = format.getType() == DataFormat.TEXT;
+
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            long size = file.length();
+            long dataStart = format.hasHeader() ? nextLineStart(file, 0, isEscaped) : 0;
+            long partSize = Math.max(1, (size - dataStart) / parts);
+
+            long start = dataStart;
+            for (int i = 1; i < parts && start < size; i++) {
+                long end = nextLineStart(file, Math.max(start, dataStart + partSize * i - 1), isEscaped);
+                if (end > start) {
+                    ranges.add(new FileRange(start, end));
+                    start = end;
+                }
+            }
+            if (start < size) {
+                ranges.add(new FileRange(start, size));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Находит начало строки, следующей за байтом position.
+     * Поиск идёт по байтам: в UTF-8 байт перевода строки не встречается внутри многобайтовых символов.
+     * С экранированием перевод строки экранирован, если перед ним нечётное число обратных косых черт подряд:
+     * они разбиваются на пары с начала, а перед первой из них стоит другой байт, поэтому чётность не зависит
+     * от того, где начинается строка.
+     *
+     * @param file      файл
+     * @param position  позиция, с которой начинается поиск перевода строки
+     * @param isEscaped обратная косая черта экранирует следующий байт, в том числе перевод строки
+     * @return позиция сразу после перевода строки или размер файла, если его нет
+     * @throws IOException ошибка чтения файла
+     */
+    private static long nextLineStart(RandomAccessFile file, long position, boolean isEscaped) throws IOException {
+        // обратные косые черты подряд непосредственно перед текущим байтом
+        int backslashesCount = 0;
+        if (isEscaped) {
+            for (long i = position - 1; i >= 0; i--) {
+                file.seek(i);
+                if (file.read() != '\\') {
+                    break;
+                }
+                backslashesCount++;
+            }
+        }
+
+        byte[] buffer = new byte[8192];
+        file.seek(position);
+        while (true) {
+            int read = file.read(buffer);
+            if (read < 0) {
+                return file.length();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n' && backslashesCount % 2 == 0) {
+                    return position + i + 1;
+                }
+                backslashesCount = isEscaped && buffer[i] == '\\' ? backslashesCount + 1 : 0;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Возвращает начало диапазона.
+     *
+     * @return позиция первого байта
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Возвращает конец диапазона.
+     *
+     * @return позиция сразу после последнего байта, -1 - до конца файла
+     */
+    public long getEnd() {
+        return end;
+    }
+}
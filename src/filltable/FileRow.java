@@ -0,0 +1,158 @@
+package filltable;
+
+import java.util.List;
+
+/**
+ * Строка файла, считанная для вставки.
+ * Хранит номер строки в файле, чтобы при ошибке вставки сообщить, какая строка не прошла.
+ */
+public class FileRow {
+    /**
+     * Номер секции для строки, не распределённой по секциям
+     */
+    public static final int NO_PARTITION = -1;
+
+    /**
+     * Номер строки в файле
+     */
+    private final int lineNumber;
+
+    /**
+     * Позиция в файле сразу за строкой, с неё продолжается загрузка после контрольной точки
+     */
+    private final long endPosition;
+
+    /**
+     * Строка файла в исходном виде
+     */
+    private final String line;
+
+    /**
+     * Значения колонок для вставки, переведённые в типы колонок
+     */
+    private final List<Object> values;
+
+    /**
+     * Значения колонок для вставки в текстовом формате COPY, null - строка хранится в виде списка значений
+     */
+    private final byte[] copyLine;
+
+    /**
+     * Номер секции таблицы, в которую загружается строка, NO_PARTITION - строка вставляется в саму таблицу
+     */
+    private final int partition;
+
+    /**
+     * Создаёт строку файла
+     *
+     * @param lineNumber  номер строки в файле
+     * @param endPosition позиция в файле сразу за строкой
+     * @param line        строка файла в исходном виде
+     * @param values      значения колонок для вставки
+     */
+    public FileRow(int lineNumber, long endPosition, String line, List<Object> values) {
+        this(lineNumber, endPosition, line, values, NO_PARTITION);
+    }
+
+    /**
+     * Создаёт строку файла, распределённую в секцию таблицы
+     *
+     * @param lineNumber  номер строки в файле
+     * @param endPosition позиция в файле сразу за строкой
+     * @param line        строка файла в исходном виде
+     * @param values      значения колонок для вставки
+     * @param partition   номер секции, NO_PARTITION - строка вставляется в саму таблицу
+     */
+    public FileRow(int lineNumber, long endPosition, String line, List<Object> values, int partition) {
+        this.lineNumber = lineNumber;
+        this.endPosition = endPosition;
+        this.line = line;
+        this.values = values;
+        this.copyLine = null;
+        this.partition = partition;
+    }
+
+    /**
+     * Создаёт строку файла, значения которой уже переведены в текстовый формат COPY
+     *
+     * @param lineNumber  номер строки в файле
+     * @param endPosition позиция в файле сразу за строкой
+     * @param line        строка файла в исходном виде
+     * @param copyLine    значения колонок для вставки в формате COPY
+     */
+    public FileRow(int lineNumber, long endPosition, String line, byte[] copyLine) {
+        this(lineNumber, endPosition, line, copyLine, NO_PARTITION);
+    }
+
+    /**
+     * Создаёт строку файла в текстовом формате COPY, распределённую в секцию таблицы
+     *
+     * @param lineNumber  номер строки в файле
+     * @param endPosition позиция в файле сразу за строкой
+     * @param line        строка файла в исходном виде
+     * @param copyLine    значения колонок для вставки в формате COPY
+     * @param partition   номер секции, NO_PARTITION - строка вставляется в саму таблицу
+     */
+    public FileRow(int lineNumber, long endPosition, String line, byte[] copyLine, int partition) {
+        this.lineNumber = lineNumber;
+        this.endPosition = endPosition;
+        this.line = line;
+        this.values = null;
+        this.copyLine = copyLine;
+        this.partition = partition;
+    }
+
+    /**
+     * Возвращает номер строки в файле.
+     *
+     * @return номер строки в файле
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Возвращает позицию в файле сразу за строкой.
+     *
+     * @return смещение в байтах от начала файла
+     */
+    public long getEndPosition() {
+        return endPosition;
+    }
+
+    /**
+     * Возвращает строку файла в исходном виде.
+     *
+     * @return строка файла
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Возвращает значения колонок для вставки.
+     *
+     * @return значения колонок, null - строка хранится в формате COPY
+     */
+    public List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Возвращает значения колонок для вставки в текстовом формате COPY.
+     *
+     * @return строка COPY, null - строка хранится в виде списка значений
+     */
+    public byte[] getCopyLine() {
+        return copyLine;
+    }
+
+    /**
+     * Возвращает номер секции таблицы, в которую загружается строка.
+     *
+     * @return номер секции, NO_PARTITION - строка вставляется в саму таблицу
+     */
+    public int getPartition() {
+        return partition;
+    }
+}
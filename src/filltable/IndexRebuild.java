@@ -0,0 +1,243 @@
+package filltable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Пересоздание индексов таблицы при массовой загрузке.
+ * Перед загрузкой индексы таблицы, не связанные с ограничениями, удаляются, чтобы не обновлять их на каждую строку,
+ * после загрузки создаются заново одним проходом по таблице, затем для таблицы выполняется analyze.
+ * Уникальные индексы не удаляются: без них загрузка пропустила бы повторы ключей, а в режиме upsert
+ * они нужны для on conflict.
+ * Определения индексов записываются в таблицу определений в той же транзакции, что и удаление индексов,
+ * поэтому после падения программы индексы можно восстановить: повторный запуск с тем же флагом создаёт
+ * все индексы таблицы из таблицы определений, а запись об индексе удаляется вместе с его созданием.
+ */
+public class IndexRebuild {
+
+    private final String connectionUrl;
+
+    /**
+     * Таблица определений удалённых индексов
+     */
+    private final String indexTable;
+
+    private final String tableName;
+
+    /**
+     * Создавать индексы без блокировки записи в таблицу
+     */
+    private final boolean isConcurrently;
+
+    /**
+     * Значение maintenance_work_mem при создании индексов, null - настройка сервера
+     */
+    private final String maintenanceWorkMem;
+
+    /**
+     * Создаёт пересоздание индексов таблицы
+     *
+     * @param arguments аргументы командной строки
+     */
+    public IndexRebuild(Arguments arguments) {
+        this.connectionUrl = arguments.getConnectionUrl();
+        this.indexTable = arguments.getIndexTable();
+        this.tableName = arguments.getTableName();
+        this.isConcurrently = arguments.isConcurrently();
+        this.maintenanceWorkMem = arguments.getMaintenanceWorkMem();
+    }
+
+    /**
+     * Записать определения индексов таблицы в таблицу определений и удалить индексы одной транзакцией.
+     * Если таблицы определений нет, она создаётся.
+     *
+     * @throws SQLException ошибка чтения метаданных, записи определений или удаления индексов
+     */
+    public void dropIndexes() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(connectionUrl)) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(String.format("create table if not exists %s (" +
+                        "table_name text not null, " +
+                        "index_name text not null, " +
+                        "definition text not null, " +
+                        "dropped_at timestamptz not null default now(), " +
+                        "primary key (table_name, index_name))", indexTable));
+            }
+            connection.commit();
+
+            List<String[]> indexes = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select quote_ident(n.nspname) || '.' || quote_ident(c.relname), " +
+                            "pg_get_indexdef(i.indexrelid) " +
+                            "from pg_index i " +
+                            "join pg_class c on c.oid = i.indexrelid " +
+                            "join pg_namespace n on n.oid = c.relnamespace " +
+                            "where i.indrelid = ?::regclass and i.indisvalid and not i.indisunique " +
+                            "and not exists (select 1 from pg_constraint k where k.conindid = i.indexrelid) " +
+                            "order by c.relname")) {
+                statement.setString(1, tableName);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        indexes.add(new String[]{resultSet.getString(1), resultSet.getString(2)});
+                    }
+                }
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(String.format(
+                    "insert into %s (table_name, index_name, definition) values (?, ?, ?) " +
+                            "on conflict (table_name, index_name) do update set definition = excluded.definition",
+                    indexTable));
+                 Statement statement = connection.createStatement()) {
+                for (var index : indexes) {
+                    insert.setString(1, tableName);
+                    insert.setString(2, index[0]);
+                    insert.setString(3, index[1]);
+                    insert.executeUpdate();
+                    statement.execute("drop index " + index[0]);
+                }
+            }
+            connection.commit();
+
+            int savedCount = readSaved(connection).size();
+            connection.commit();
+            System.out.printf("Удалено индексов: %d, определения сохранены в таблице %s\n", indexes.size(), indexTable);
+            if (savedCount > indexes.size()) {
+                System.out.printf("Индексов, удалённых прошлой загрузкой и ещё не созданных: %d\n",
+                        savedCount - indexes.size());
+            }
+        }
+    }
+
+    /**
+     * Создать заново все индексы таблицы из таблицы определений и выполнить analyze.
+     * Каждый индекс создаётся и удаляется из таблицы определений отдельно, поэтому при ошибке
+     * остаются записи только о несозданных индексах. Индекс, который уже существует, не создаётся.
+     *
+     * @throws SQLException ошибка создания индекса или analyze, определения несозданных индексов сохранены
+     */
+    public void restoreIndexes() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(connectionUrl)) {
+            // create index concurrently нельзя выполнять внутри транзакции
+            connection.setAutoCommit(isConcurrently);
+            if (maintenanceWorkMem != null) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "select set_config('maintenance_work_mem', ?, false)")) {
+                    statement.setString(1, maintenanceWorkMem);
+                    statement.execute();
+                }
+            }
+
+            List<String[]> indexes = readSaved(connection);
+            for (var index : indexes) {
+                long startNanos = System.nanoTime();
+                if (!isExists(connection, index[0])) {
+                    createIndex(connection, index[0], index[1]);
+                }
+                try (PreparedStatement statement = connection.prepareStatement(String.format(
+                        "delete from %s where table_name = ? and index_name = ?", indexTable))) {
+                    statement.setString(1, tableName);
+                    statement.setString(2, index[0]);
+                    statement.executeUpdate();
+                }
+                if (!isConcurrently) {
+                    connection.commit();
+                }
+                System.out.printf(Locale.ROOT, "Создан индекс %s за %.1f с\n", index[0],
+                        (System.nanoTime() - startNanos) / 1e9);
+            }
+
+            long startNanos = System.nanoTime();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("analyze " + tableName);
+            }
+            if (!isConcurrently) {
+                connection.commit();
+            }
+            System.out.printf(Locale.ROOT, "Выполнен analyze таблицы %s за %.1f с\n", tableName,
+                    (System.nanoTime() - startNanos) / 1e9);
+        }
+    }
+
+    /**
+     * Создать индекс по определению. Если индекс создавался без блокировки записи и не был создан,
+     * недействительный индекс удаляется, чтобы его можно было создать повторным запуском.
+     *
+     * @param connection соединение с БД
+     * @param indexName  имя индекса со схемой
+     * @param definition определение индекса, полученное pg_get_indexdef
+     * @throws SQLException ошибка создания индекса
+     */
+    private void createIndex(Connection connection, String indexName, String definition) throws SQLException {
+        String sql = isConcurrently ? definition.replaceFirst("^CREATE (UNIQUE )?INDEX ", "$0CONCURRENTLY ")
+                : definition;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            if (isConcurrently) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("drop index if exists " + indexName);
+                } catch (SQLException ignored) {
+                    // определение сохранено, индекс можно удалить и создать вручную
+                }
+            } else {
+                connection.rollback();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Узнать, существует ли индекс
+     *
+     * @param connection соединение с БД
+     * @param indexName  имя индекса со схемой
+     * @return true - индекс существует
+     * @throws SQLException ошибка запроса
+     */
+    private static boolean isExists(Connection connection, String indexName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select to_regclass(?) is not null")) {
+            statement.setString(1, indexName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Прочитать сохранённые определения индексов таблицы
+     *
+     * @param connection соединение с БД
+     * @return пары из имени индекса со схемой и определения индекса
+     * @throws SQLException ошибка чтения таблицы определений
+     */
+    private List<String[]> readSaved(Connection connection) throws SQLException {
+        List<String[]> indexes = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "select index_name, definition from %s where table_name = ? order by index_name", indexTable))) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    indexes.add(new String[]{resultSet.getString(1), resultSet.getString(2)});
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Возвращает таблицу определений удалённых индексов.
+     *
+     * @return название таблицы
+     */
+    public String getIndexTable() {
+        return indexTable;
+    }
+}
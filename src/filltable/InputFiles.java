@@ -0,0 +1,221 @@
+package filltable;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Список загружаемых файлов по пути из командной строки. Путь может указывать:
+ * на папку - загружаются все файлы папки, кроме скрытых, файлов отклонённых строк и отчётов о проверке;
+ * на шаблон glob (например, data/2024-*.tsv.gz или data/**.tsv) - загружаются подходящие файлы;
+ * на список файлов - путь начинается с @, в файле по одному пути на строке, пустые строки
+ * и строки с # в начале пропускаются, относительные пути считаются от папки списка.
+ * Файлы папки и шаблона упорядочиваются по пути.
+ * Путь - означает стандартный ввод, путь к именованному каналу или другому не обычному файлу - поток,
+ * который читается один раз с начала до конца.
+ */
+public class InputFiles {
+
+    /**
+     * Символы шаблона glob
+     */
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * Признак списка файлов в начале пути
+     */
+    private static final String MANIFEST_PREFIX = "@";
+
+    /**
+     * Расширение файла отклонённых строк, такие файлы в папке не загружаются
+     */
+    private static final String REJECT_EXTENSION = ".reject";
+
+    /**
+     * Путь, означающий стандартный ввод
+     */
+    public static final String STDIN = "-";
+
+    /**
+     * Основа имён файлов отклонённых строк и отчётов при чтении стандартного ввода
+     */
+    private static final String STDIN_BASE_NAME = "stdin";
+
+    private InputFiles() {
+    }
+
+    /**
+     * Узнать, указывает ли путь на несколько файлов: папку, шаблон или список файлов
+     *
+     * @param path путь из командной строки
+     * @return true - несколько файлов, false - один файл
+     */
+    public static boolean isMultiple(String path) {
+        if (Files.isRegularFile(Paths.get(path))) {
+            return false;
+        }
+        return path.startsWith(MANIFEST_PREFIX) || isGlob(path) || Files.isDirectory(Paths.get(path));
+    }
+
+    /**
+     * Узнать, указывает ли путь на поток: стандартный ввод или именованный канал.
+     * Поток нельзя перечитать, разделить на части и продолжить с середины.
+     *
+     * @param path путь из командной строки
+     * @return true - поток, false - обычный файл
+     */
+    public static boolean isStream(String path) {
+        if (STDIN.equals(path)) {
+            return true;
+        }
+        Path file = Paths.get(path);
+        return Files.exists(file) && !Files.isRegularFile(file) && !Files.isDirectory(file);
+    }
+
+    /**
+     * Открыть стандартный ввод или именованный канал
+     *
+     * @param path путь к каналу или - для стандартного ввода
+     * @return поток байтов
+     * @throws IOException канал не может быть открыт
+     */
+    public static InputStream openStream(String path) throws IOException {
+        return STDIN.equals(path) ? System.in : new FileInputStream(path);
+    }
+
+    /**
+     * Получить путь, к которому добавляются расширения файла отклонённых строк и отчёта о проверке
+     *
+     * @param path путь к файлу или потоку
+     * @return путь к файлу или stdin для стандартного ввода
+     */
+    public static String getOutputBasePath(String path) {
+        return STDIN.equals(path) ? STDIN_BASE_NAME : path;
+    }
+
+    /**
+     * Получить список файлов по пути
+     *
+     * @param path путь к файлу, папке, шаблон glob или @путь к списку файлов
+     * @return пути к файлам
+     * @throws IOException ошибка чтения папки или списка файлов
+     * @throws Exception   по пути не найдено ни одного файла или файл из списка не существует
+     */
+    public static List<String> resolve(String path) throws IOException, Exception {
+        List<String> files;
+        if (!isMultiple(path)) {
+            files = List.of(path);
+        } else if (path.startsWith(MANIFEST_PREFIX)) {
+            files = readManifest(Paths.get(path.substring(MANIFEST_PREFIX.length())));
+        } else if (isGlob(path)) {
+            files = findByGlob(path);
+        } else {
+            try (Stream<Path> paths = Files.list(Paths.get(path))) {
+                files = paths.filter(InputFiles::isDataFile)
+                        .map(Path::toString)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        if (files.isEmpty()) {
+            throw new Exception(String.format("По пути %s не найдено файлов", path));
+        }
+        return files;
+    }
+
+    /**
+     * Прочитать список файлов
+     *
+     * @param manifest путь к списку файлов
+     * @return пути к файлам в порядке списка
+     * @throws IOException ошибка чтения списка
+     * @throws Exception   файл из списка не существует
+     */
+    private static List<String> readManifest(Path manifest) throws IOException, Exception {
+        Path directory = manifest.toAbsolutePath().getParent();
+        List<String> files = new ArrayList<>();
+        for (var line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Path file = directory.resolve(line);
+            if (!Files.isRegularFile(file)) {
+                throw new Exception(String.format("Файл %s из списка %s не найден", line, manifest));
+            }
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    /**
+     * Найти файлы по шаблону glob. Поиск идёт от папки, предшествующей первой части пути с символами шаблона,
+     * вглубь на столько уровней, сколько частей в шаблоне, а с ** - на любую глубину.
+     *
+     * @param pattern шаблон glob
+     * @return пути к подходящим файлам
+     * @throws IOException ошибка чтения папки
+     */
+    private static List<String> findByGlob(String pattern) throws IOException {
+        int firstGlobIndex = 0;
+        while (GLOB_CHARS.indexOf(pattern.charAt(firstGlobIndex)) < 0) {
+            firstGlobIndex++;
+        }
+        int separatorIndex = Math.max(pattern.lastIndexOf('/', firstGlobIndex),
+                pattern.lastIndexOf('\\', firstGlobIndex));
+        Path base = Paths.get(separatorIndex < 0 ? "" : pattern.substring(0, Math.max(separatorIndex, 1)));
+        String relativePattern = pattern.substring(separatorIndex + 1);
+
+        Path directory = separatorIndex < 0 ? Paths.get(".") : base;
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        int depth = relativePattern.contains("**") ? Integer.MAX_VALUE : relativePattern.split("[/\\\\]").length;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relativePattern);
+        try (Stream<Path> paths = Files.walk(directory, depth)) {
+            return paths.filter(file -> matcher.matches(directory.relativize(file)) && isDataFile(file))
+                    .map(file -> base.resolve(directory.relativize(file)).toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Узнать, содержит ли путь символы шаблона glob
+     *
+     * @param path путь
+     * @return true - путь является шаблоном
+     */
+    private static boolean isGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARS.indexOf(path.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Узнать, является ли путь загружаемым файлом: обычный, не скрытый файл, не файл отклонённых строк
+     * и не отчёт о проверке
+     *
+     * @param file путь
+     * @return true - файл загружается
+     */
+    private static boolean isDataFile(Path file) {
+        String name = file.getFileName() == null ? "" : file.getFileName().toString();
+        return Files.isRegularFile(file) && !name.startsWith(".") && !name.endsWith(REJECT_EXTENSION)
+                && !name.endsWith(Validator.REPORT_EXTENSION);
+    }
+}
@@ -0,0 +1,109 @@
+package filltable;
+
+/**
+ * Гистограмма задержек с логарифмическими корзинами.
+ * Каждая степень двойки микросекунд делится на SUB_BUCKETS равных корзин,
+ * поэтому погрешность процентилей не больше 1/SUB_BUCKETS при постоянной памяти.
+ * Безопасна для вызова из нескольких потоков.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Степень двойки количества корзин внутри одной степени двойки значений
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Количество значений в каждой корзине.
+     * Значения меньше SUB_BUCKETS лежат каждое в своей корзине, дальше по SUB_BUCKETS корзин на степень двойки
+     */
+    private final long[] counts = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+
+    private long totalCount = 0;
+
+    private long maxValue = 0;
+
+    /**
+     * Добавить задержку
+     *
+     * @param nanos задержка в наносекундах
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[getBucket(micros)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, micros);
+    }
+
+    /**
+     * Получить процентиль задержки
+     *
+     * @param percentile процентиль от 0 до 100
+     * @return задержка в микросекундах, середина корзины, 0 - нет значений
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(maxValue, getBucketMiddle(i));
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Количество добавленных задержек
+     *
+     * @return количество
+     */
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Наибольшая добавленная задержка
+     *
+     * @return задержка в микросекундах
+     */
+    public synchronized long getMax() {
+        return maxValue;
+    }
+
+    /**
+     * Номер корзины для значения
+     *
+     * @param micros значение в микросекундах
+     * @return номер корзины
+     */
+    private static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Середина диапазона значений корзины
+     *
+     * @param bucket номер корзины
+     * @return значение в микросекундах
+     */
+    private static long getBucketMiddle(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) / 2;
+    }
+}
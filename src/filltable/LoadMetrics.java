@@ -0,0 +1,311 @@
+package filltable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Показатели хода загрузки: прочитанные строки и байты, вставленные и пропущенные строки,
+ * скорость, доля времени разбора файла и работы с БД, гистограмма задержек запросов к БД.
+ * Может выводить строку хода загрузки раз в заданное количество секунд, доступна через JMX,
+ * итог можно записать в файл JSON.
+ * Счётчики безопасны для вызова из нескольких потоков: потока чтения файла и потоков параллельной загрузки.
+ */
+public class LoadMetrics implements LoadMetricsMBean, Closeable {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder rowsRead = new LongAdder();
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder rowsInserted = new LongAdder();
+
+    private final LongAdder rowsRejected = new LongAdder();
+
+    /**
+     * Время чтения и разбора файла, включая перевод значений в типы колонок
+     */
+    private final LongAdder parseNanos = new LongAdder();
+
+    /**
+     * Время запросов к БД
+     */
+    private final LongAdder databaseNanos = new LongAdder();
+
+    /**
+     * Задержки запросов к БД: вставка порции или отправка порции строк COPY
+     */
+    private final LatencyHistogram databaseLatency = new LatencyHistogram();
+
+    /**
+     * Скорость вставки за последний период вывода хода загрузки
+     */
+    private volatile double currentRowsPerSecond = 0;
+
+    private long lastTickNanos = startNanos;
+
+    private long lastTickRowsInserted = 0;
+
+    private ScheduledExecutorService progressExecutor = null;
+
+    private ObjectName objectName = null;
+
+    /**
+     * Общие показатели, в которые дополнительно учитывается всё учтённое здесь, null - нет общих
+     */
+    private final LoadMetrics parent;
+
+    /**
+     * Создаёт показатели загрузки
+     */
+    public LoadMetrics() {
+        this(null);
+    }
+
+    /**
+     * Создаёт показатели загрузки одного файла, которые также учитываются в общих показателях
+     *
+     * @param parent общие показатели, null - нет общих
+     */
+    public LoadMetrics(LoadMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Начать вывод хода загрузки и зарегистрировать показатели в JMX
+     *
+     * @param tableName       название таблицы, входит в имя MBean
+     * @param progressSeconds период вывода хода загрузки в секундах, 0 - не выводить
+     */
+    public void start(String tableName, int progressSeconds) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("FillTableFromFile:type=LoadMetrics,table=" + ObjectName.quote(tableName));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            // без JMX загрузка продолжается, показатели остаются в выводе и файле
+            System.out.printf("Показатели загрузки недоступны через JMX: %s\n", e.getMessage());
+        }
+
+        if (progressSeconds > 0) {
+            progressExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "load-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            progressExecutor.scheduleAtFixedRate(() -> System.out.println(tick()),
+                    progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Остановить вывод хода загрузки и убрать показатели из JMX
+     */
+    @Override
+    public void close() {
+        if (progressExecutor != null) {
+            progressExecutor.shutdownNow();
+            progressExecutor = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // MBean уже убран
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Учесть прочитанную порцию строк файла
+     *
+     * @param rows  количество прочитанных строк, включая ошибочные
+     * @param bytes количество прочитанных байтов
+     * @param nanos время чтения и разбора
+     */
+    public void addRead(int rows, long bytes, long nanos) {
+        rowsRead.add(rows);
+        bytesRead.add(bytes);
+        parseNanos.add(nanos);
+        if (parent != null) {
+            parent.addRead(rows, bytes, nanos);
+        }
+    }
+
+    /**
+     * Учесть запрос к БД, успешный или нет
+     *
+     * @param nanos время запроса
+     */
+    public void addDatabaseCall(long nanos) {
+        databaseNanos.add(nanos);
+        databaseLatency.record(nanos);
+        if (parent != null) {
+            parent.addDatabaseCall(nanos);
+        }
+    }
+
+    /**
+     * Учесть вставленные строки
+     *
+     * @param rows количество строк
+     */
+    public void addInserted(int rows) {
+        rowsInserted.add(rows);
+        if (parent != null) {
+            parent.addInserted(rows);
+        }
+    }
+
+    /**
+     * Учесть пропущенную ошибочную строку
+     */
+    public void addRejected() {
+        rowsRejected.increment();
+        if (parent != null) {
+            parent.addRejected();
+        }
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getRowsInserted() {
+        return rowsInserted.sum();
+    }
+
+    @Override
+    public long getRowsRejected() {
+        return rowsRejected.sum();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return getRowsInserted() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getCurrentRowsPerSecond() {
+        return currentRowsPerSecond;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return getBytesRead() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getParseSeconds() {
+        return parseNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getDatabaseSeconds() {
+        return databaseNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getDatabaseLatencyP50Millis() {
+        return databaseLatency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getDatabaseLatencyP99Millis() {
+        return databaseLatency.getPercentile(99) / 1000.0;
+    }
+
+    /**
+     * Время с начала загрузки
+     *
+     * @return время в секундах
+     */
+    public double getElapsedSeconds() {
+        return Math.max(1, System.nanoTime() - startNanos) / 1e9;
+    }
+
+    /**
+     * Обновить текущую скорость и получить строку хода загрузки
+     *
+     * @return строка хода загрузки
+     */
+    public synchronized String tick() {
+        long now = System.nanoTime();
+        long inserted = getRowsInserted();
+        if (now > lastTickNanos) {
+            currentRowsPerSecond = (inserted - lastTickRowsInserted) / ((now - lastTickNanos) / 1e9);
+        }
+        lastTickNanos = now;
+        lastTickRowsInserted = inserted;
+        return format();
+    }
+
+    /**
+     * Строка с текущими показателями загрузки
+     *
+     * @return строка показателей
+     */
+    public String format() {
+        double parseSeconds = getParseSeconds();
+        double databaseSeconds = getDatabaseSeconds();
+        double totalSeconds = Math.max(parseSeconds + databaseSeconds, 1e-9);
+        return String.format(Locale.ROOT,
+                "Прочитано строк: %d (%.1f МБ), вставлено: %d, пропущено: %d, " +
+                        "скорость: %.0f строк/с (средняя %.0f строк/с, %.1f МБ/с), " +
+                        "разбор файла %.0f%%, БД %.0f%%, задержка БД p50 %.2f мс, p99 %.2f мс",
+                getRowsRead(), getBytesRead() / 1048576.0, getRowsInserted(), getRowsRejected(),
+                currentRowsPerSecond, getRowsPerSecond(), getBytesPerSecond() / 1048576.0,
+                parseSeconds * 100 / totalSeconds, databaseSeconds * 100 / totalSeconds,
+                getDatabaseLatencyP50Millis(), getDatabaseLatencyP99Millis());
+    }
+
+    /**
+     * Записать итоговые показатели в файл JSON
+     *
+     * @param filePath путь к файлу
+     * @throws IOException ошибка записи файла
+     */
+    public void writeJson(String filePath) throws IOException {
+        try (PrintWriter writer = new PrintWriter(filePath, StandardCharsets.UTF_8)) {
+            writer.print(String.format(Locale.ROOT, "{\n" +
+                            "  \"rowsRead\": %d,\n" +
+                            "  \"bytesRead\": %d,\n" +
+                            "  \"rowsInserted\": %d,\n" +
+                            "  \"rowsRejected\": %d,\n" +
+                            "  \"elapsedSeconds\": %.3f,\n" +
+                            "  \"rowsPerSecond\": %.1f,\n" +
+                            "  \"bytesPerSecond\": %.1f,\n" +
+                            "  \"parseSeconds\": %.3f,\n" +
+                            "  \"databaseSeconds\": %.3f,\n" +
+                            "  \"databaseLatencyMillis\": {\"count\": %d, \"p50\": %.3f, \"p99\": %.3f, \"max\": %.3f}\n" +
+                            "}\n",
+                    getRowsRead(), getBytesRead(), getRowsInserted(), getRowsRejected(),
+                    getElapsedSeconds(), getRowsPerSecond(), getBytesPerSecond(),
+                    getParseSeconds(), getDatabaseSeconds(),
+                    databaseLatency.getCount(), getDatabaseLatencyP50Millis(), getDatabaseLatencyP99Millis(),
+                    databaseLatency.getMax() / 1000.0));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package filltable;
+
+/**
+ * Показатели загрузки, доступные через JMX
+ */
+public interface LoadMetricsMBean {
+    long getRowsRead();
+
+    long getBytesRead();
+
+    long getRowsInserted();
+
+    long getRowsRejected();
+
+    double getRowsPerSecond();
+
+    double getCurrentRowsPerSecond();
+
+    double getBytesPerSecond();
+
+    double getParseSeconds();
+
+    double getDatabaseSeconds();
+
+    double getDatabaseLatencyP50Millis();
+
+    double getDatabaseLatencyP99Millis();
+}
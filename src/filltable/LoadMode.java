@@ -0,0 +1,26 @@
+package filltable;
+
+/**
+ * Способ загрузки строк файла в таблицу
+ */
+public enum LoadMode {
+    /**
+     * Построчная вставка через insert
+     */
+    INSERT,
+
+    /**
+     * Вставка пачками через addBatch/executeBatch
+     */
+    BATCH,
+
+    /**
+     * Вставка пачками одним запросом insert ... values (...),(...),...
+     */
+    VALUES,
+
+    /**
+     * Потоковая загрузка через COPY ... FROM STDIN
+     */
+    COPY
+}
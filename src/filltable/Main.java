@@ -0,0 +1,490 @@
+package filltable;
+
+import java.io.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Main {
+    /**
+     * Количество прочитанных порций, которые в режиме конвейера могут ожидать вставки
+     */
+    private static final int PIPELINE_QUEUE_CAPACITY = 4;
+
+    /**
+     * Основной метод программы
+     *
+     * @param args входные аргументы: строка соединения (с пользователем), название таблицы,
+     *             путь к файлу (папке, шаблон glob, @список файлов),
+     *             далее необязательные параметры: --mode=insert|batch|values|copy, --batch-size=N,
+     *             --on-error=ask|abort|skip|reject, --max-errors=N, --reject-file=путь, --pipeline,
+     *             --parallel=N, --parallel-commit=worker|atomic, --progress=N, --metrics-file=путь,
+     *             --checkpoint=N, --checkpoint-table=таблица, --upsert=колонка,..., --on-conflict=update|nothing,
+     *             --merge, --files-parallel=N, --validate, --rebuild-indexes, --concurrently,
+     *             --maintenance-work-mem=значение, --index-table=таблица, --profile=имя, --profile-file=путь,
+     *             --format=tsv|text|csv, --delimiter=символ, --null=значение, --no-header, --columns=колонка,...,
+     *             --mapping=путь, --watch=N, --route-partitions
+     */
+    public static void main(String[] args) {
+        Arguments arguments;
+        try {
+            arguments = new Arguments(args);
+        } catch (Exception e) {
+            System.out.println("Неверно введены входные аргументы");
+            printError(e);
+            return;
+        }
+
+        if (arguments.isValidate()) {
+            try {
+                new Validator(arguments).validate();
+            } catch (Exception e) {
+                printError(e);
+            }
+            return;
+        }
+
+        if (arguments.getWatchSeconds() > 0) {
+            try {
+                new WatchLoader(arguments).watch();
+            } catch (Exception e) {
+                printError(e);
+            }
+            return;
+        }
+
+        if (!arguments.isRebuildIndexes()) {
+            load(arguments);
+            return;
+        }
+
+        // индексы создаются заново и при неудачной загрузке, чтобы вернуть таблицу в исходный вид
+        IndexRebuild indexRebuild = new IndexRebuild(arguments);
+        try {
+            indexRebuild.dropIndexes();
+        } catch (Exception e) {
+            printError(e);
+            return;
+        }
+        load(arguments);
+        try {
+            indexRebuild.restoreIndexes();
+        } catch (Exception e) {
+            System.out.printf("Не удалось создать индексы, определения остались в таблице %s. " +
+                    "Индексы будут созданы повторным запуском с флагом rebuild-indexes\n",
+                    indexRebuild.getIndexTable());
+            printError(e);
+        }
+    }
+
+    /**
+     * Загрузка файла или нескольких файлов согласно аргументам, ошибки выводятся пользователю
+     *
+     * @param arguments аргументы командной строки
+     */
+    private static void load(Arguments arguments) {
+        if (InputFiles.isMultiple(arguments.getFilePath())) {
+            try {
+                new MultiFileLoader(arguments).load();
+            } catch (Exception e) {
+                printError(e);
+            }
+            return;
+        }
+
+        if (arguments.isRoutePartitions()) {
+            try {
+                new PartitionedLoader(arguments).load();
+            } catch (Exception e) {
+                printError(e);
+            }
+            return;
+        }
+
+        if (arguments.getParallel() > 1) {
+            try {
+                if (InputFiles.isStream(arguments.getFilePath())) {
+                    System.out.println("Поток нельзя разделить на части, загрузка идёт одним соединением");
+                } else if (!arguments.getFileFormat().isSplittable()) {
+                    System.out.println("Файл CSV нельзя разделить на части по переводам строк, " +
+                            "загрузка идёт одним соединением");
+                } else if (Compression.detect(arguments.getFilePath()) == Compression.NONE) {
+                    new ParallelLoader(arguments).load();
+                    return;
+                } else {
+                    System.out.println("Сжатый файл нельзя разделить на части, загрузка идёт одним соединением");
+                }
+            } catch (Exception e) {
+                printError(e);
+                return;
+            }
+        }
+
+        try (SessionProfile.Session session = SessionProfile.open(arguments.getConnectionUrl(),
+                arguments.getSessionProfile())) {
+            Connection connection = session.getConnection();
+            connection.setAutoCommit(false);
+
+            DataFile dataFile = new DataFile(arguments.getFilePath(), arguments.getFileFormat());
+            Table table = new Table(connection, arguments.getTableName());
+            ColumnsIntersection columnsIntersection = dataFile.setDesiredColumns(table.getColumns(), arguments.getColumnMapping());
+
+            if (!isContinueProgramAfterColumnsIntersection(columnsIntersection, arguments.getOnError())) {
+                dataFile.close();
+                return;
+            }
+
+            try (LoadMetrics metrics = startMetrics(arguments)) {
+                FileLoader loader = new FileLoader(arguments, connection, metrics);
+                boolean isSuccess = loader.load(arguments.getFilePath(), dataFile, table,
+                        columnsIntersection.getColumnsIntersection(), arguments.getRejectFilePath());
+                showMetrics(metrics, arguments);
+
+                if (!isSuccess) {
+                    if (loader.getCommittedLineNumber() > 0) {
+                        System.out.printf("Изменения после строки %d отменены. " +
+                                "Загрузку можно продолжить повторным запуском\n", loader.getCommittedLineNumber());
+                    } else {
+                        System.out.println("Изменения отменены");
+                    }
+                } else {
+                    System.out.println("Успешная вставка");
+                    if (loader.getUpsertRowsCount() >= 0) {
+                        System.out.printf("Вставлено или обновлено строк: %d\n", loader.getUpsertRowsCount());
+                    }
+                    showSkippedRows(loader.getErrorsCount(), arguments.getOnError(), arguments.getRejectFilePath());
+                }
+            }
+        } catch (Exception e) {
+            printError(e);
+        }
+    }
+
+    /**
+     * Создать источник строк файла.
+     * В режиме конвейера файл читается в отдельном потоке, пока текущий поток вставляет строки.
+     *
+     * @param dataFile     файл с данными
+     * @param errorHandler обработчик ошибочных строк
+     * @param rowConverter преобразователь значений по типам колонок для вставки
+     * @param arguments    аргументы командной строки
+     * @param lineNumber   номер строки данных, после которой начинается чтение, 0 - с начала файла
+     * @param metrics      показатели загрузки
+     * @return источник строк
+     */
+    static RowSource createRowSource(DataFile dataFile, RowErrorHandler errorHandler, RowConverter rowConverter,
+                                     Arguments arguments, int lineNumber, LoadMetrics metrics) {
+        RowSource rows = new RowReader(dataFile, errorHandler, rowConverter, arguments.getBatchSize(),
+                arguments.getLoadMode() == LoadMode.COPY, lineNumber, metrics);
+        if (arguments.isPipeline()) {
+            rows = new PipelinedRowReader(rows, PIPELINE_QUEUE_CAPACITY);
+        }
+        return rows;
+    }
+
+    /**
+     * Начать сбор показателей загрузки: вывод хода загрузки и регистрация в JMX
+     *
+     * @param arguments аргументы командной строки
+     * @return показатели загрузки
+     */
+    static LoadMetrics startMetrics(Arguments arguments) {
+        LoadMetrics metrics = new LoadMetrics();
+        metrics.start(arguments.getTableName(), arguments.getProgressSeconds());
+        return metrics;
+    }
+
+    /**
+     * Вывод итоговых показателей загрузки и запись их в файл, если он задан
+     *
+     * @param metrics   показатели загрузки
+     * @param arguments аргументы командной строки
+     * @throws IOException ошибка записи файла показателей
+     */
+    static void showMetrics(LoadMetrics metrics, Arguments arguments) throws IOException {
+        System.out.println(metrics.tick());
+        if (arguments.getSessionProfile() != null) {
+            System.out.println(arguments.getSessionProfile());
+        }
+        if (arguments.getMetricsFilePath() != null) {
+            metrics.writeJson(arguments.getMetricsFilePath());
+        }
+    }
+
+    /**
+     * Попытка вставить значения в таблицу.
+     * Строки вставляются порциями, точка сохранения ставится одна на порцию, а не на каждую строку:
+     * тысячи вложенных транзакций в одной транзакции сильно замедляют работу PostgreSQL.
+     * Если порция не прошла, ошибочные строки ищутся делением порции пополам.
+     * С контрольными точками изменения фиксируются каждые N строк вместе с позицией в файле.
+     *
+     * @param rows         источник строк файла
+     * @param table        класс, отвечающий за работу с таблицей
+     * @param connection   соединение, нужно для установки точки сохранения
+     * @param errorHandler обработчик ошибочных строк
+     * @param loadMode     способ вставки: INSERT, BATCH или VALUES
+     * @param metrics      показатели загрузки
+     * @param checkpoint   контрольные точки, null - одна транзакция на весь файл
+     * @return true - успешная вставка, false - не успешная
+     * @throws Exception ошибка при вставке
+     */
+    public static boolean tryInsert(RowSource rows, Table table, Connection connection,
+                                    RowErrorHandler errorHandler, LoadMode loadMode,
+                                    LoadMetrics metrics, Checkpoint checkpoint) throws Exception {
+        List<FileRow> chunk;
+        while ((chunk = rows.nextChunk()) != null) {
+            if (!tryInsertChunk(chunk, table, connection, errorHandler, loadMode, metrics)) {
+                return false;
+            }
+            if (checkpoint != null && checkpoint.addChunk(chunk)) {
+                checkpoint.commit(chunk.get(chunk.size() - 1));
+            }
+        }
+        return !rows.isAborted();
+    }
+
+    /**
+     * Попытка вставить порцию строк под одной точкой сохранения.
+     * При ошибке порция откатывается до точки сохранения, делится пополам и каждая половина вставляется заново,
+     * пока ошибка не сузится до одной строки. Для порции из n строк с одной ошибочной строкой
+     * потребуется порядка 2 * log2(n) дополнительных точек сохранения, на корректных данных - ни одной.
+     *
+     * @param chunk        строки порции
+     * @param table        класс, отвечающий за работу с таблицей
+     * @param connection   соединение, нужно для установки точки сохранения
+     * @param errorHandler обработчик ошибочных строк
+     * @param loadMode     способ вставки: INSERT, BATCH или VALUES
+     * @param metrics      показатели загрузки
+     * @return true - порция вставлена (возможно, с пропуском строк), false - нужно всё откатить
+     * @throws Exception ошибка при откате до точки сохранения
+     */
+    private static boolean tryInsertChunk(List<FileRow> chunk, Table table, Connection connection,
+                                          RowErrorHandler errorHandler, LoadMode loadMode,
+                                          LoadMetrics metrics) throws Exception {
+        if (chunk.isEmpty()) {
+            return true;
+        }
+
+        long startNanos = System.nanoTime();
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            insertRows(chunk, table, loadMode);
+            connection.releaseSavepoint(savepoint);
+            metrics.addDatabaseCall(System.nanoTime() - startNanos);
+            metrics.addInserted(chunk.size());
+            return true;
+        } catch (SQLException e) {
+            connection.rollback(savepoint);
+            connection.releaseSavepoint(savepoint);
+            metrics.addDatabaseCall(System.nanoTime() - startNanos);
+
+            if (chunk.size() == 1) {
+                FileRow row = chunk.get(0);
+                if (!errorHandler.handle(row.getLineNumber(), row.getLine(), e)) {
+                    return false;
+                }
+                metrics.addRejected();
+                return true;
+            }
+        }
+
+        int middle = chunk.size() / 2;
+        return tryInsertChunk(chunk.subList(0, middle), table, connection, errorHandler, loadMode, metrics)
+                && tryInsertChunk(chunk.subList(middle, chunk.size()), table, connection, errorHandler, loadMode,
+                metrics);
+    }
+
+    /**
+     * Вставить строки выбранным способом без точек сохранения
+     *
+     * @param rows     строки для вставки
+     * @param table    класс, отвечающий за работу с таблицей
+     * @param loadMode способ вставки: INSERT, BATCH или VALUES
+     * @throws SQLException ошибка при вставке на стороне сервера
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     */
+    private static void insertRows(List<FileRow> rows, Table table, LoadMode loadMode) throws SQLException, Exception {
+        switch (loadMode) {
+            case BATCH:
+                table.insertBatch(rows);
+                break;
+            case VALUES:
+                table.insertValues(rows);
+                break;
+            default:
+                for (var row : rows) {
+                    setValuesToInsert(table, row.getValues());
+                    table.insert();
+                }
+        }
+    }
+
+    /**
+     * Попытка загрузить значения в таблицу через COPY.
+     * Строки с нарушением структуры файла можно пропустить, так как они отбрасываются ещё до отправки на сервер.
+     * Ошибка на стороне сервера прерывает весь COPY, пропустить отдельную строку в этом случае нельзя.
+     * С контрольными точками COPY завершается каждые N строк, изменения фиксируются вместе с позицией в файле,
+     * и начинается новый COPY.
+     *
+     * @param rows       источник строк файла
+     * @param table      класс, отвечающий за работу с таблицей
+     * @param metrics    показатели загрузки
+     * @param checkpoint контрольные точки, null - один COPY на весь файл
+     * @return true - успешная загрузка, false - не успешная
+     * @throws Exception ошибка при подготовке загрузки
+     */
+    public static boolean tryCopy(RowSource rows, Table table, LoadMetrics metrics,
+                                  Checkpoint checkpoint) throws Exception {
+        table.beginCopy();
+
+        try {
+            List<FileRow> chunk;
+            while ((chunk = rows.nextChunk()) != null) {
+                long startNanos = System.nanoTime();
+                for (var row : chunk) {
+                    if (row.getCopyLine() != null) {
+                        table.copyLine(row.getCopyLine());
+                    } else {
+                        table.copyRow(row.getValues());
+                    }
+                }
+                metrics.addDatabaseCall(System.nanoTime() - startNanos);
+                metrics.addInserted(chunk.size());
+
+                if (checkpoint != null && checkpoint.addChunk(chunk)) {
+                    table.endCopy();
+                    checkpoint.commit(chunk.get(chunk.size() - 1));
+                    table.beginCopy();
+                }
+            }
+            if (rows.isAborted()) {
+                table.cancelCopy();
+                return false;
+            }
+            long startNanos = System.nanoTime();
+            table.endCopy();
+            metrics.addDatabaseCall(System.nanoTime() - startNanos);
+            return true;
+        } catch (SQLException e) {
+            printError(e);
+            System.out.println("Ошибка при выполнении COPY, загрузка прервана");
+            table.cancelCopy();
+            return false;
+        } catch (Exception e) {
+            table.cancelCopy();
+            throw e;
+        }
+    }
+
+    /**
+     * Установить значения для вставки в таблицу
+     * Значения должны соответствовать выбранным для вставки колонкам
+     *
+     * @param table  объект, отвечающий за вставку в таблицу
+     * @param values список значений для вставки
+     * @throws Exception ошибка при задании значения
+     */
+    private static void setValuesToInsert(Table table, List<Object> values) throws Exception {
+        for (int i = 0; i < values.size(); i++) {
+            table.setValue(i, values.get(i));
+        }
+    }
+
+    /**
+     * Вывод всех не вошедших в пересечение колонок таблицы и файла
+     *
+     * @param columnsIntersection пересечение колонок таблицы и файла
+     */
+    static void showIntersectionMissingColumns(ColumnsIntersection columnsIntersection) {
+        // пересечение полностью покрывает колонки таблицы и файла, не будет предупреждений
+        if (columnsIntersection.getMissingDesiredColumns().size() == 0 &&
+                columnsIntersection.getMissingFileColumns().size() == 0) {
+            return;
+        }
+
+        for (var column : columnsIntersection.getMissingDesiredColumns()) {
+            System.out.printf("Колонка %s таблицы не содержится в файле. При вставке будет выставлен NULL\n", column);
+        }
+        for (var column : columnsIntersection.getMissingFileColumns()) {
+            System.out.printf("Колонка %s файла не содержится в таблице При вставке будет игнорироваться\n", column);
+        }
+    }
+
+    /**
+     * Вывод итога по пропущенным строкам
+     *
+     * @param errorsCount    количество пропущенных строк
+     * @param onError        действие при ошибке в строке файла
+     * @param rejectFilePath путь к файлу отклонённых строк
+     */
+    static void showSkippedRows(int errorsCount, OnError onError, String rejectFilePath) {
+        if (errorsCount == 0) {
+            return;
+        }
+        System.out.printf("Пропущено строк: %d\n", errorsCount);
+        if (onError == OnError.REJECT) {
+            System.out.printf("Пропущенные строки записаны в файл %s\n", rejectFilePath);
+        }
+    }
+
+    /**
+     * Выяснить продолжать ли выполнение программы после пересечения.
+     * Спрашивает пользователя только при действии ASK, иначе выводит предупреждения и продолжает.
+     *
+     * @param columnsIntersection результат пересечения
+     * @param onError             действие при ошибке в строке файла
+     * @return true - продолжить выполнение программы, false - закончить выполнение программы
+     */
+    static boolean isContinueProgramAfterColumnsIntersection(ColumnsIntersection columnsIntersection,
+                                                                     OnError onError) {
+        if (columnsIntersection.getColumnsIntersection().size() == 0) {
+            System.out.println("Не было найдено соответствий колонок таблицы и файла");
+            return false;
+        }
+
+        if (columnsIntersection.getMissingDesiredColumns().size() == 0 &&
+                columnsIntersection.getMissingFileColumns().size() == 0) {
+            return true;
+        }
+
+        showIntersectionMissingColumns(columnsIntersection);
+        if (onError != OnError.ASK) {
+            return true;
+        }
+        return getYesNo("У колонок таблицы и файла есть несоответствия. Продолжить выполнение?");
+    }
+
+    /**
+     * печать ошибки
+     *
+     * @param e ошибка
+     */
+    static void printError(Exception e) {
+        System.out.printf("%s\n", e.getMessage());
+    }
+
+    /**
+     * спрашиваем про откат всех данных.
+     * При загрузке нескольких файлов вопросы задаются по одному.
+     *
+     * @param message сообщение, которое будет выводиться
+     * @return true - input Yes, false - input No
+     */
+    static synchronized boolean getYesNo(String message) {
+        boolean isCorrectInput = false;
+        char answer = 'y';
+
+        System.out.printf("%s\nВведите y/n\n", message);
+
+        while (!isCorrectInput) {
+            try {
+                answer = Character.toLowerCase((char) System.in.read());
+                isCorrectInput = answer == 'y' || answer == 'n';
+            } catch (IOException e) {
+                System.out.println("Произошла ошибка при вводе");
+            }
+        }
+
+        return answer == 'y';
+    }
+}
\ No newline at end of file
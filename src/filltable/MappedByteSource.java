@@ -0,0 +1,100 @@
+package filltable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Источник байтов, отображающий файл в память окнами.
+ * Данные не копируются в кучу, а окна позволяют читать файлы больше 2 ГБ,
+ * которые нельзя отобразить одним MappedByteBuffer.
+ */
+public class MappedByteSource implements ByteSource {
+
+    /**
+     * Размер окна отображения, увеличивается, если строка в него не помещается
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    /**
+     * Конец читаемой части файла, не включая
+     */
+    private final long end;
+
+    /**
+     * Позиция начала текущего окна в файле
+     */
+    private long windowStart;
+
+    private int windowSize = WINDOW_SIZE;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Открывает часть файла для чтения.
+     *
+     * @param filePath путь к файлу
+     * @param start    начало читаемой части
+     * @param end      конец читаемой части, не включая, -1 - до конца файла
+     * @throws IOException ошибка открытия файла
+     */
+    public MappedByteSource(String filePath, long start, long end) throws IOException {
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+        try {
+            this.end = end < 0 ? channel.size() : end;
+            map(start, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public boolean refill(int keepFrom) throws IOException {
+        int kept = buffer.limit() - keepFrom;
+        long newStart = windowStart + keepFrom;
+        if (newStart + kept >= end) {
+            // новых данных нет, только сдвигаем окно, чтобы сохранённые данные оказались в начале
+            map(newStart, kept);
+            return false;
+        }
+        if (kept >= windowSize / 2) {
+            // строка занимает большую часть окна, иначе окна будут почти пустыми
+            windowSize = (int) Math.min(Integer.MAX_VALUE - 8, (long) windowSize * 2);
+        }
+        map(newStart, kept);
+        return true;
+    }
+
+    @Override
+    public long getBufferOffset() {
+        return windowStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Отображает окно файла, начиная с позиции start
+     *
+     * @param start     начало окна
+     * @param minLength минимальный размер окна
+     * @throws IOException ошибка отображения
+     */
+    private void map(long start, int minLength) throws IOException {
+        long length = Math.min(Math.max(windowSize, minLength), end - start);
+        windowStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+}
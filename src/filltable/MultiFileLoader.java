@@ -0,0 +1,251 @@
+package filltable;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Загрузка нескольких файлов (папки, шаблона glob или списка файлов) в одну таблицу за один запуск.
+ * Файлы загружаются одновременно через ограниченный пул соединений, каждый файл - одним соединением
+ * и фиксируется независимо от остальных. Метаданные таблицы запрашиваются один раз,
+ * пересечение колонок строится один раз на каждый различный заголовок файлов.
+ * В конце выводится итог по каждому файлу.
+ */
+public class MultiFileLoader {
+
+    private final Arguments arguments;
+
+    /**
+     * Пересечения колонок по заголовкам файлов.
+     * null - для файлов с таким заголовком загрузка отменена.
+     */
+    private final Map<List<String>, ColumnsIntersection> intersections = new HashMap<>();
+
+    /**
+     * Создаёт загрузку нескольких файлов
+     *
+     * @param arguments аргументы командной строки
+     */
+    public MultiFileLoader(Arguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Загрузить файлы и вывести итог по каждому файлу
+     *
+     * @throws Exception ошибка получения списка файлов или соединения с БД
+     */
+    public void load() throws Exception {
+        List<String> filePaths = InputFiles.resolve(arguments.getFilePath());
+        System.out.printf("Файлов для загрузки: %d\n", filePaths.size());
+
+        int threadsCount = Math.min(arguments.getFilesParallel(), filePaths.size());
+        try (ConnectionPool pool = new ConnectionPool(arguments.getConnectionUrl(),
+                arguments.getSessionProfile(), threadsCount);
+             LoadMetrics metrics = Main.startMetrics(arguments)) {
+            Table table;
+            Connection connection = pool.take();
+            try {
+                table = new Table(connection, arguments.getTableName());
+            } finally {
+                pool.release(connection);
+            }
+
+            List<FileResult> results = loadFiles(filePaths, table, pool, metrics, threadsCount);
+            Main.showMetrics(metrics, arguments);
+            showResults(results);
+        }
+    }
+
+    /**
+     * Загрузить файлы одновременно, не больше заданного количества сразу
+     *
+     * @param filePaths    пути к файлам
+     * @param table        таблица, образец для таблиц в соединениях пула
+     * @param pool         пул соединений
+     * @param metrics      общие показатели загрузки
+     * @param threadsCount количество одновременно загружаемых файлов
+     * @return итог по каждому файлу в порядке списка
+     * @throws InterruptedException ожидание загрузки прервано
+     */
+    private List<FileResult> loadFiles(List<String> filePaths, Table table, ConnectionPool pool,
+                                       LoadMetrics metrics, int threadsCount) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>();
+            for (var filePath : filePaths) {
+                futures.add(executor.submit(() -> loadFile(filePath, table, pool, metrics)));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new FileResult(filePaths.get(i), "ошибка: " + e.getCause().getMessage(),
+                            false, null, 0));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Загрузить один файл соединением из пула и зафиксировать его при успехе
+     *
+     * @param filePath путь к файлу
+     * @param table    таблица, образец для таблицы в соединении
+     * @param pool     пул соединений
+     * @param metrics  общие показатели загрузки
+     * @return итог загрузки файла
+     * @throws InterruptedException ожидание соединения прервано
+     */
+    private FileResult loadFile(String filePath, Table table, ConnectionPool pool, LoadMetrics metrics)
+            throws InterruptedException {
+        long startNanos = System.nanoTime();
+        Connection connection = null;
+        FileLoader loader = null;
+        try {
+            connection = pool.take();
+            DataFile dataFile = new DataFile(filePath, arguments.getFileFormat());
+            Table fileTable = new Table(connection, table);
+            ColumnsIntersection columnsIntersection;
+            try {
+                columnsIntersection = getColumnsIntersection(dataFile, fileTable);
+            } catch (Exception e) {
+                dataFile.close();
+                throw e;
+            }
+            if (columnsIntersection == null) {
+                dataFile.close();
+                return new FileResult(filePath, "пропущен, нет соответствия колонок", false, null,
+                        System.nanoTime() - startNanos);
+            }
+
+            loader = new FileLoader(arguments, connection, metrics);
+            boolean isSuccess = loader.load(filePath, dataFile, fileTable,
+                    columnsIntersection.getColumnsIntersection(), filePath + ".reject");
+            String status = isSuccess
+                    ? "загружен"
+                    : loader.getCommittedLineNumber() > 0
+                    ? String.format("изменения после строки %d отменены", loader.getCommittedLineNumber())
+                    : "изменения отменены";
+            return new FileResult(filePath, status, isSuccess, loader, System.nanoTime() - startNanos);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            return new FileResult(filePath, "ошибка: " + e.getMessage(), false, loader,
+                    System.nanoTime() - startNanos);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    /**
+     * Получить пересечение колонок для файла: построенное ранее для такого же заголовка или новое.
+     * О несоответствии колонок спрашивается один раз на каждый различный заголовок.
+     *
+     * @param dataFile файл с данными
+     * @param table    таблица
+     * @return пересечение колонок, null - файлы с таким заголовком не загружаются
+     * @throws Exception ошибка чтения имён колонок файла
+     */
+    private synchronized ColumnsIntersection getColumnsIntersection(DataFile dataFile, Table table)
+            throws Exception {
+        List<String> header = Arrays.asList(dataFile.getFileColumns());
+        if (intersections.containsKey(header)) {
+            ColumnsIntersection columnsIntersection = intersections.get(header);
+            if (columnsIntersection != null) {
+                dataFile.setColumnsIntersection(columnsIntersection);
+            }
+            return columnsIntersection;
+        }
+
+        ColumnsIntersection columnsIntersection = dataFile.setDesiredColumns(table.getColumns(), arguments.getColumnMapping());
+        if (!Main.isContinueProgramAfterColumnsIntersection(columnsIntersection, arguments.getOnError())) {
+            columnsIntersection = null;
+        }
+        intersections.put(header, columnsIntersection);
+        return columnsIntersection;
+    }
+
+    /**
+     * Вывод итога по каждому файлу и общего итога
+     *
+     * @param results итоги загрузки файлов
+     */
+    private static void showResults(List<FileResult> results) {
+        int loadedCount = 0;
+        for (var result : results) {
+            System.out.println(result);
+            if (result.isSuccess) {
+                loadedCount++;
+            }
+        }
+        System.out.printf("Загружено файлов: %d из %d\n", loadedCount, results.size());
+    }
+
+    /**
+     * Итог загрузки одного файла
+     */
+    private static class FileResult {
+
+        private final String filePath;
+
+        private final String status;
+
+        private final boolean isSuccess;
+
+        private final long rowsInserted;
+
+        private final long rowsRejected;
+
+        private final long upsertRowsCount;
+
+        private final long nanos;
+
+        /**
+         * Создаёт итог загрузки файла
+         *
+         * @param filePath  путь к файлу
+         * @param status    состояние загрузки
+         * @param isSuccess файл загружен и изменения зафиксированы
+         * @param loader    загрузка файла, null - загрузка не начиналась
+         * @param nanos     время загрузки
+         */
+        FileResult(String filePath, String status, boolean isSuccess, FileLoader loader, long nanos) {
+            this.filePath = filePath;
+            this.status = status;
+            this.isSuccess = isSuccess;
+            this.rowsInserted = loader == null ? 0 : loader.getMetrics().getRowsInserted();
+            this.rowsRejected = loader == null ? 0 : loader.getErrorsCount();
+            this.upsertRowsCount = loader == null ? -1 : loader.getUpsertRowsCount();
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format("Файл %s: %s", filePath, status));
+            if (isSuccess) {
+                builder.append(String.format(", строк загружено: %d, пропущено: %d", rowsInserted, rowsRejected));
+            }
+            if (upsertRowsCount >= 0) {
+                builder.append(String.format(", вставлено или обновлено: %d", upsertRowsCount));
+            }
+            builder.append(String.format(Locale.ROOT, ", %.1f с", nanos / 1e9));
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package filltable;
+
+/**
+ * Действие при совпадении ключа загружаемой строки со строкой таблицы в режиме upsert
+ */
+public enum OnConflict {
+    /**
+     * Обновить неключевые колонки строки таблицы значениями из файла
+     */
+    UPDATE,
+
+    /**
+     * Оставить строку таблицы как есть
+     */
+    NOTHING
+}
@@ -0,0 +1,26 @@
+package filltable;
+
+/**
+ * Действие при ошибке в строке файла
+ */
+public enum OnError {
+    /**
+     * Спросить пользователя: откатить всё или пропустить строку
+     */
+    ASK,
+
+    /**
+     * Откатить все вставки и закончить работу
+     */
+    ABORT,
+
+    /**
+     * Пропустить строку
+     */
+    SKIP,
+
+    /**
+     * Пропустить строку и записать её в файл отклонённых строк
+     */
+    REJECT
+}
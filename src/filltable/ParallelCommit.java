@@ -0,0 +1,16 @@
+package filltable;
+
+/**
+ * Способ фиксации изменений при параллельной загрузке
+ */
+public enum ParallelCommit {
+    /**
+     * Каждое соединение фиксирует свою часть файла независимо от остальных
+     */
+    WORKER,
+
+    /**
+     * Всё или ничего: части загружаются в промежуточные таблицы и переносятся в основную одной транзакцией
+     */
+    ATOMIC
+}
@@ -0,0 +1,249 @@
+package filltable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Параллельная распаковка gzip из блоков BGZF (формат bgzip: каждый блок - отдельный член gzip,
+ * размер которого записан в его заголовке). Размер известен заранее, поэтому блоки можно распаковывать
+ * одновременно, не распаковав предыдущие. Поток чтения режет файл на блоки и отдаёт их на распаковку,
+ * распакованные блоки выдаются в порядке следования в файле.
+ * Очередь распаковываемых блоков ограничена, поэтому память ограничена.
+ * Обычный многочленный gzip так распаковать нельзя: границу следующего члена не найти без распаковки.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    /**
+     * Длина заголовка блока BGZF до сжатых данных
+     */
+    private static final int HEADER_LENGTH = 18;
+
+    /**
+     * Длина окончания члена gzip: CRC32 и размер распакованных данных
+     */
+    private static final int TRAILER_LENGTH = 8;
+
+    private final DataInputStream source;
+
+    private final ExecutorService executor;
+
+    /**
+     * Распаковываемые блоки в порядке следования в файле, пустой блок - конец файла
+     */
+    private final BlockingQueue<Future<byte[]>> blocks;
+
+    private final Thread thread;
+
+    private byte[] block = null;
+
+    private int blockPosition = 0;
+
+    private boolean isEnd = false;
+
+    /**
+     * Создаёт поток и запускает разбиение файла на блоки
+     *
+     * @param source       сжатый файл в формате BGZF
+     * @param threadsCount количество потоков распаковки
+     */
+    public ParallelGzipInputStream(InputStream source, int threadsCount) {
+        this.source = new DataInputStream(source);
+        this.executor = Executors.newFixedThreadPool(threadsCount, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-inflate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.blocks = new ArrayBlockingQueue<>(threadsCount * 4);
+        this.thread = new Thread(this::splitBlocks, "gzip-split");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Узнать, записан ли файл блоками BGZF, по заголовку первого члена gzip
+     *
+     * @param header первые байты файла, не меньше HEADER_LENGTH
+     * @return true - файл в формате BGZF
+     */
+    public static boolean isBgzf(byte[] header) {
+        return header.length >= HEADER_LENGTH
+                && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b
+                && header[2] == 8 && (header[3] & 4) != 0
+                && header[10] == 6 && header[11] == 0
+                && header[12] == 'B' && header[13] == 'C'
+                && header[14] == 2 && header[15] == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (block == null || blockPosition == block.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(length, block.length - blockPosition);
+        System.arraycopy(block, blockPosition, buffer, offset, n);
+        blockPosition += n;
+        return n;
+    }
+
+    /**
+     * Останавливает распаковку и закрывает файл
+     *
+     * @throws IOException ошибка закрытия файла
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        executor.shutdownNow();
+        try {
+            source.close();
+        } finally {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Берёт следующий распакованный блок
+     *
+     * @return true - блок получен, false - файл закончился
+     * @throws IOException файл повреждён или ошибка чтения
+     */
+    private boolean nextBlock() throws IOException {
+        if (isEnd) {
+            return false;
+        }
+        try {
+            block = blocks.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Чтение прервано", e);
+        } catch (ExecutionException e) {
+            isEnd = true;
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause().getMessage(), e.getCause());
+        }
+        blockPosition = 0;
+        if (block == null) {
+            isEnd = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Режет файл на блоки по размерам из заголовков и отдаёт их на распаковку
+     */
+    private void splitBlocks() {
+        try {
+            while (true) {
+                byte[] header = new byte[HEADER_LENGTH];
+                int n = source.read(header, 0, 1);
+                if (n < 0) {
+                    break;
+                }
+                source.readFully(header, 1, HEADER_LENGTH - 1);
+                if (!isBgzf(header)) {
+                    throw new IOException("Блок сжатого файла не в формате BGZF");
+                }
+                int blockSize = ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+                byte[] compressed = new byte[blockSize - HEADER_LENGTH];
+                source.readFully(compressed);
+                blocks.put(executor.submit(() -> inflate(compressed)));
+            }
+            blocks.put(executor.submit(() -> null));
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // читающий закрыл поток
+        } catch (IOException e) {
+            IOException failure = e instanceof EOFException ? new IOException("Сжатый файл обрезан", e) : e;
+            try {
+                blocks.put(executor.submit(() -> {
+                    throw failure;
+                }));
+            } catch (InterruptedException | RuntimeException ignored) {
+                // читающий закрыл поток
+            }
+        }
+    }
+
+    /**
+     * Распаковывает сжатые данные блока и проверяет контрольную сумму
+     *
+     * @param compressed сжатые данные блока вместе с окончанием члена gzip
+     * @return распакованные данные
+     * @throws IOException блок повреждён
+     */
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        int trailer = compressed.length - TRAILER_LENGTH;
+        long expectedCrc = readInt(compressed, trailer) & 0xffffffffL;
+        int size = readInt(compressed, trailer + 4);
+
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, 0, trailer);
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int n = inflater.inflate(data, length, size - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != size) {
+                throw new IOException("Повреждён блок сжатого файла: неверный размер");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждён блок сжатого файла: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Повреждён блок сжатого файла: не совпадает контрольная сумма");
+        }
+        return data;
+    }
+
+    /**
+     * Читает 32-битное целое в порядке little-endian
+     *
+     * @param bytes  массив
+     * @param offset позиция
+     * @return целое
+     */
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,326 @@
+package filltable;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Параллельная загрузка одного файла несколькими соединениями.
+ * Строки данных файла делятся на диапазоны байтов по границам строк, каждый диапазон загружает
+ * отдельный поток со своим соединением, своим DataFile и своей Table.
+ * Имена колонок читаются один раз из первой строки файла.
+ * Номера строк в сообщениях об ошибках и в файле отклонённых строк считаются от начала фрагмента.
+ * В режиме upsert при фиксации WORKER порядок переноса фрагментов не определён, поэтому при одинаковых ключах
+ * в разных фрагментах неизвестно, какая строка останется. При фиксации ATOMIC фрагменты переносятся
+ * по порядку, и остаётся последняя строка файла.
+ */
+public class ParallelLoader {
+
+    private final Arguments arguments;
+
+    /**
+     * Загрузка остановлена: при фиксации ATOMIC фрагмент не загрузился, остальные фрагменты загружать незачем
+     */
+    private volatile boolean isStopped = false;
+
+    /**
+     * Создаёт параллельную загрузку
+     *
+     * @param arguments аргументы командной строки
+     */
+    public ParallelLoader(Arguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Загрузить файл.
+     * При фиксации WORKER каждый фрагмент фиксируется независимо, итог выводится по каждому фрагменту.
+     * При фиксации ATOMIC фрагменты загружаются в промежуточные таблицы, и только если все они загружены,
+     * данные переносятся в основную таблицу одной транзакцией. Если промежуточная таблица с таким именем
+     * уже существует, загрузка не начинается. Созданные промежуточные таблицы удаляются в любом случае,
+     * а перед загрузкой удаляются промежуточные таблицы загрузок, чей процесс сервера уже завершён.
+     * В режиме upsert данные переносятся с обновлением строк, совпавших по ключу.
+     *
+     * @throws Exception ошибка подготовки загрузки или переноса данных в основную таблицу
+     */
+    public void load() throws Exception {
+        try (SessionProfile.Session session = SessionProfile.open(arguments.getConnectionUrl(),
+                arguments.getSessionProfile())) {
+            Connection connection = session.getConnection();
+            Table table = new Table(connection, arguments.getTableName());
+
+            DataFile headerFile = new DataFile(arguments.getFilePath(), arguments.getFileFormat());
+            String[] fileColumns;
+            ColumnsIntersection columnsIntersection;
+            try {
+                fileColumns = headerFile.getFileColumns();
+                columnsIntersection = headerFile.setDesiredColumns(table.getColumns(), arguments.getColumnMapping());
+            } finally {
+                headerFile.close();
+            }
+            if (!Main.isContinueProgramAfterColumnsIntersection(columnsIntersection, arguments.getOnError())) {
+                return;
+            }
+            table.setInsertColumns(columnsIntersection.getColumnsIntersection());
+            Upsert upsert = arguments.getUpsertColumns() == null ? null : new Upsert(connection, table,
+                    arguments.getUpsertColumns(), arguments.getOnConflict(), arguments.isMerge());
+
+            List<FileRange> ranges = FileRange.split(arguments.getFilePath(), arguments.getParallel(),
+                    arguments.getFileFormat());
+            boolean isAtomic = arguments.getParallelCommit() == ParallelCommit.ATOMIC;
+
+            // промежуточные таблицы видны соединениям фрагментов, поэтому они постоянные, а не в pg_temp;
+            // номер процесса сервера в имени разделяет одновременные загрузки одной таблицы
+            List<String> targetTables = new ArrayList<>();
+            int backendPid = isAtomic ? table.getBackendPid() : 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                targetTables.add(isAtomic
+                        ? String.format("%s_fill_load_%d_%d", table.getTableName(), backendPid, i)
+                        : table.getTableName());
+            }
+            if (isAtomic) {
+                for (var orphanTable : table.getOrphanStagingTables()) {
+                    System.out.printf("Удаление промежуточной таблицы %s, оставшейся от прерванной загрузки\n",
+                            orphanTable);
+                    table.dropTable(orphanTable);
+                }
+                for (var stagingTable : targetTables) {
+                    if (table.isTableExists(stagingTable)) {
+                        throw new Exception(String.format("Промежуточная таблица %s уже существует. " +
+                                "Загрузка не начата, чтобы не удалить чужие данные", stagingTable));
+                    }
+                }
+            }
+
+            try (LoadMetrics metrics = Main.startMetrics(arguments);
+                 RowErrorHandler errorHandler = new RowErrorHandler(arguments.getOnError(), arguments.getMaxErrors(),
+                         arguments.getRejectFilePath(), fileColumns, arguments.getFileFormat())) {
+                // удаляются только таблицы, созданные этой загрузкой
+                List<String> createdTables = new ArrayList<>();
+                try {
+                    if (isAtomic) {
+                        for (var stagingTable : targetTables) {
+                            table.createStagingTable(stagingTable, false);
+                            createdTables.add(stagingTable);
+                        }
+                    }
+
+                    List<Boolean> results = loadFragments(ranges, targetTables, fileColumns, columnsIntersection,
+                            errorHandler, metrics);
+                    Main.showMetrics(metrics, arguments);
+                    if (isAtomic) {
+                        if (!moveFromStagingTables(connection, table, upsert, targetTables, results)) {
+                            return;
+                        }
+                    } else {
+                        showResults(ranges, results);
+                    }
+                    Main.showSkippedRows(errorHandler.getErrorsCount(), errorHandler.getOnError(),
+                            arguments.getRejectFilePath());
+                } finally {
+                    if (isAtomic) {
+                        connection.setAutoCommit(true);
+                        for (var stagingTable : createdTables) {
+                            table.dropTable(stagingTable);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Загрузить фрагменты файла одновременно, каждый своим соединением.
+     * При фиксации ATOMIC первый незагруженный фрагмент останавливает остальные: они перестают читать строки
+     * и откатываются, ещё не начатые фрагменты отменяются.
+     *
+     * @param ranges              диапазоны байтов фрагментов
+     * @param targetTables        таблицы, в которые загружается каждый фрагмент
+     * @param fileColumns         имена колонок файла
+     * @param columnsIntersection пересечение колонок файла и таблицы, общее для всех фрагментов
+     * @param errorHandler        общий для всех фрагментов обработчик ошибочных строк
+     * @param metrics             общие для всех фрагментов показатели загрузки
+     * @return для каждого фрагмента: true - загружен и зафиксирован, false - откачен
+     * @throws InterruptedException ожидание загрузки прервано
+     */
+    private List<Boolean> loadFragments(List<FileRange> ranges, List<String> targetTables, String[] fileColumns,
+                                        ColumnsIntersection columnsIntersection, RowErrorHandler errorHandler,
+                                        LoadMetrics metrics)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                FileRange range = ranges.get(i);
+                String targetTable = targetTables.get(i);
+                futures.add(executor.submit(() -> loadFragment(range, targetTable, fileColumns,
+                        columnsIntersection, errorHandler, metrics)));
+            }
+
+            List<Boolean> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    System.out.printf("Фрагмент %d: %s\n", i + 1, e.getCause().getMessage());
+                    results.add(false);
+                } catch (CancellationException e) {
+                    results.add(false);
+                }
+                if (isStopped) {
+                    for (var future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Загрузить один фрагмент файла в отдельном соединении и зафиксировать его при успехе
+     *
+     * @param range               диапазон байтов фрагмента
+     * @param targetTable         таблица, в которую загружается фрагмент
+     * @param fileColumns         имена колонок файла
+     * @param columnsIntersection пересечение колонок файла и таблицы
+     * @param errorHandler        обработчик ошибочных строк
+     * @param metrics             показатели загрузки
+     * @return true - фрагмент загружен и зафиксирован, false - откачен
+     * @throws Exception ошибка загрузки
+     */
+    private boolean loadFragment(FileRange range, String targetTable, String[] fileColumns,
+                                 ColumnsIntersection columnsIntersection, RowErrorHandler errorHandler,
+                                 LoadMetrics metrics) throws Exception {
+        try (SessionProfile.Session session = SessionProfile.open(arguments.getConnectionUrl(),
+                arguments.getSessionProfile())) {
+            Connection connection = session.getConnection();
+            connection.setAutoCommit(false);
+
+            DataFile dataFile = new DataFile(arguments.getFilePath(), range, fileColumns, arguments.getFileFormat());
+            Table table = new Table(connection, targetTable);
+            dataFile.setColumnsIntersection(columnsIntersection);
+            table.setInsertColumns(columnsIntersection.getColumnsIntersection());
+
+            // при фиксации ATOMIC upsert выполняется при переносе из промежуточных таблиц
+            Upsert upsert = null;
+            Table loadTable = table;
+            if (arguments.getUpsertColumns() != null && arguments.getParallelCommit() == ParallelCommit.WORKER) {
+                upsert = new Upsert(connection, table, arguments.getUpsertColumns(), arguments.getOnConflict(),
+                        arguments.isMerge());
+                loadTable = upsert.createStagingTable(columnsIntersection.getColumnsIntersection());
+            }
+
+            boolean isAtomic = arguments.getParallelCommit() == ParallelCommit.ATOMIC;
+            try (RowSource rows = new StoppableRowSource(Main.createRowSource(dataFile, errorHandler,
+                    loadTable.getRowConverter(), arguments, 0, metrics))) {
+                boolean isSuccess;
+                try {
+                    isSuccess = arguments.getLoadMode() == LoadMode.COPY
+                            ? Main.tryCopy(rows, loadTable, metrics, null)
+                            : Main.tryInsert(rows, loadTable, connection, errorHandler, arguments.getLoadMode(),
+                            metrics, null);
+                } catch (Exception e) {
+                    isStopped = isStopped || isAtomic;
+                    throw e;
+                }
+                isStopped = isStopped || isAtomic && !isSuccess;
+
+                if (isSuccess) {
+                    if (upsert != null) {
+                        upsert.merge();
+                        upsert.dropStagingTable();
+                    }
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+                return isSuccess;
+            }
+        }
+    }
+
+    /**
+     * Перенести данные из промежуточных таблиц в основную одной транзакцией, если все фрагменты загружены
+     *
+     * @param connection    соединение с БД
+     * @param table         основная таблица с заданными колонками для вставки
+     * @param upsert        загрузка с обновлением, null - обычная вставка
+     * @param stagingTables промежуточные таблицы
+     * @param results       результаты загрузки фрагментов
+     * @return true - данные перенесены, false - не все фрагменты загружены, изменения отменены
+     * @throws Exception ошибка переноса данных
+     */
+    private static boolean moveFromStagingTables(Connection connection, Table table, Upsert upsert,
+                                                 List<String> stagingTables, List<Boolean> results)
+            throws Exception {
+        if (results.contains(false)) {
+            System.out.println("Не все фрагменты загружены. Изменения отменены");
+            return false;
+        }
+
+        connection.setAutoCommit(false);
+        try {
+            long rowsCount = 0;
+            for (var stagingTable : stagingTables) {
+                rowsCount += upsert != null ? upsert.moveFrom(stagingTable) : table.insertFrom(stagingTable);
+            }
+            connection.commit();
+            System.out.printf("Успешная вставка, строк: %d\n", rowsCount);
+            return true;
+        } catch (Exception e) {
+            connection.rollback();
+            System.out.println("Изменения отменены");
+            throw e;
+        }
+    }
+
+    /**
+     * Вывод итога по каждому фрагменту при независимой фиксации
+     *
+     * @param ranges  диапазоны байтов фрагментов
+     * @param results результаты загрузки фрагментов
+     */
+    private static void showResults(List<FileRange> ranges, List<Boolean> results) {
+        for (int i = 0; i < ranges.size(); i++) {
+            System.out.printf("Фрагмент %d (байты %d-%d): %s\n", i + 1,
+                    ranges.get(i).getStart(), ranges.get(i).getEnd(),
+                    results.get(i) ? "успешная вставка" : "изменения отменены");
+        }
+    }
+
+    /**
+     * Источник строк фрагмента, который прерывается, когда загрузка остановлена
+     */
+    private class StoppableRowSource implements RowSource {
+
+        private final RowSource rows;
+
+        StoppableRowSource(RowSource rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public List<FileRow> nextChunk() throws Exception {
+            return isStopped ? null : rows.nextChunk();
+        }
+
+        @Override
+        public boolean isAborted() {
+            return isStopped || rows.isAborted();
+        }
+
+        @Override
+        public void close() throws IOException {
+            rows.close();
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package filltable;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Распределение строк файла по секциям секционированной таблицы на клиенте.
+ * Схема секционирования читается из каталога один раз: ключ секционирования и границы каждой секции.
+ * Поддерживается секционирование по диапазону и по списку значений одной колонки таблицы,
+ * эта колонка должна загружаться из файла. Секция может быть сама секционирована,
+ * тогда внутри неё строки распределяет сервер.
+ * Секции по диапазону упорядочены по нижней границе, секция строки ищется двоичным поиском.
+ * Границы сравниваются на клиенте, поэтому ключ по диапазону должен быть числом, датой или временем:
+ * порядок текста на сервере зависит от правила сортировки.
+ * Строка, не подходящая ни к одной секции и без секции по умолчанию, считается ошибочной.
+ * Если на клиенте строка попала не в ту секцию, сервер отвергнет её по ограничению секции.
+ * Не изменяется после создания, поэтому может использоваться из потока чтения файла.
+ */
+public class PartitionRouter {
+
+    /**
+     * Границы секции по диапазону: FOR VALUES FROM (нижняя) TO (верхняя)
+     */
+    private static final Pattern RANGE_BOUND = Pattern.compile("FOR VALUES FROM \\((.*)\\) TO \\((.*)\\)");
+
+    /**
+     * Значения секции по списку: FOR VALUES IN (значение, ...)
+     */
+    private static final Pattern LIST_BOUND = Pattern.compile("FOR VALUES IN \\((.*)\\)");
+
+    /**
+     * Границы секции по умолчанию
+     */
+    private static final String DEFAULT_BOUND = "DEFAULT";
+
+    private final String tableName;
+
+    /**
+     * Ключ секционирования - колонка таблицы
+     */
+    private final String keyColumn;
+
+    private final ColumnType keyType;
+
+    /**
+     * Индекс ключа секционирования среди колонок для вставки
+     */
+    private final int keyIndex;
+
+    /**
+     * Секционирование по диапазону, иначе по списку значений
+     */
+    private final boolean isRange;
+
+    /**
+     * Названия секций, номер секции строки - индекс в этом массиве
+     */
+    private final String[] partitions;
+
+    /**
+     * Номер секции по умолчанию, -1 - её нет
+     */
+    private final int defaultPartition;
+
+    /**
+     * Нижние границы секций по диапазону по возрастанию, null - без нижней границы (MINVALUE)
+     */
+    private final Object[] lowerBounds;
+
+    /**
+     * Верхние границы секций по диапазону в порядке нижних, не включаются в секцию, null - без верхней границы
+     */
+    private final Object[] upperBounds;
+
+    /**
+     * Номера секций по диапазону в порядке нижних границ
+     */
+    private final int[] rangePartitions;
+
+    /**
+     * Номера секций по списку по значению ключа
+     */
+    private final Map<Object, Integer> listPartitions;
+
+    /**
+     * Номер секции по списку для NULL, -1 - NULL не входит ни в один список
+     */
+    private final int nullPartition;
+
+    /**
+     * Класс значений ключа после перевода в тип колонки, значения другого класса сравнить с границами нельзя
+     */
+    private final Class<?> keyClass;
+
+    private PartitionRouter(String tableName, String keyColumn, ColumnType keyType, int keyIndex, boolean isRange,
+                            List<String> partitionNames, List<String> bounds) throws Exception {
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.keyType = keyType;
+        this.keyIndex = keyIndex;
+        this.isRange = isRange;
+        this.partitions = partitionNames.toArray(new String[0]);
+
+        int defaultIndex = -1;
+        int nullIndex = -1;
+        Class<?> valuesClass = null;
+        List<Object[]> ranges = new ArrayList<>();
+        Map<Object, Integer> values = new HashMap<>();
+        for (int i = 0; i < partitions.length; i++) {
+            String bound = bounds.get(i);
+            Matcher range = RANGE_BOUND.matcher(bound);
+            Matcher list = LIST_BOUND.matcher(bound);
+            if (DEFAULT_BOUND.equals(bound)) {
+                defaultIndex = i;
+            } else if (isRange && range.matches()) {
+                Object lower = parseBound(partitions[i], range.group(1));
+                Object upper = parseBound(partitions[i], range.group(2));
+                valuesClass = checkClass(partitions[i], valuesClass, lower);
+                valuesClass = checkClass(partitions[i], valuesClass, upper);
+                ranges.add(new Object[]{lower, upper, i});
+            } else if (!isRange && list.matches()) {
+                for (var literal : splitLiterals(list.group(1))) {
+                    if (literal == null) {
+                        nullIndex = i;
+                        continue;
+                    }
+                    Object value = normalize(keyType.convert(keyColumn, literal));
+                    valuesClass = checkClass(partitions[i], valuesClass, value);
+                    values.put(value, i);
+                }
+            } else {
+                throw new Exception(String.format("Границы секции %s не поддерживаются: %s", partitions[i], bound));
+            }
+        }
+
+        // секции по диапазону не пересекаются, поэтому порядок по нижним границам - порядок на оси значений
+        ranges.sort((first, second) -> first[0] == null ? -1 : second[0] == null ? 1 : compare(first[0], second[0]));
+        this.lowerBounds = new Object[ranges.size()];
+        this.upperBounds = new Object[ranges.size()];
+        this.rangePartitions = new int[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            lowerBounds[i] = ranges.get(i)[0];
+            upperBounds[i] = ranges.get(i)[1];
+            rangePartitions[i] = (Integer) ranges.get(i)[2];
+        }
+        this.listPartitions = values;
+        this.defaultPartition = defaultIndex;
+        this.nullPartition = nullIndex;
+        this.keyClass = valuesClass;
+    }
+
+    /**
+     * Прочитать схему секционирования таблицы из каталога
+     *
+     * @param connection    соединение с БД
+     * @param table         секционированная таблица
+     * @param insertColumns колонки для вставки, среди них должен быть ключ секционирования
+     * @return распределение строк по секциям
+     * @throws SQLException ошибка запроса к каталогу
+     * @throws Exception    таблица не секционирована, у неё нет секций, или секционирование не поддерживается
+     */
+    public static PartitionRouter read(Connection connection, Table table, List<String> insertColumns)
+            throws SQLException, Exception {
+        String tableName = table.getTableName();
+        String strategy;
+        String keyColumn;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select pt.partstrat, pt.partnatts, a.attname from pg_partitioned_table pt " +
+                        "left join pg_attribute a on a.attrelid = pt.partrelid and a.attnum = pt.partattrs[0] " +
+                        "where pt.partrelid = ?::regclass")) {
+            statement.setString(1, tableName);
+            try (var resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new Exception(String.format("Таблица %s не секционирована", tableName));
+                }
+                strategy = resultSet.getString(1);
+                keyColumn = resultSet.getString(3);
+                if (resultSet.getInt(2) != 1 || keyColumn == null) {
+                    throw new Exception(String.format("Таблица %s секционирована по нескольким колонкам " +
+                            "или по выражению, распределение по секциям не поддерживается", tableName));
+                }
+            }
+        }
+        if (!"r".equals(strategy) && !"l".equals(strategy)) {
+            throw new Exception(String.format("Таблица %s секционирована по хешу, распределение по секциям " +
+                    "поддерживается только для секционирования по диапазону и по списку", tableName));
+        }
+        boolean isRange = "r".equals(strategy);
+
+        int keyIndex = -1;
+        for (int i = 0; i < insertColumns.size(); i++) {
+            if (insertColumns.get(i).equalsIgnoreCase(keyColumn)) {
+                keyIndex = i;
+            }
+        }
+        if (keyIndex < 0) {
+            throw new Exception(String.format("Ключ секционирования %s таблицы %s не загружается из файла",
+                    keyColumn, tableName));
+        }
+        ColumnType keyType = table.getColumnType(keyColumn);
+        if (isRange && !keyType.isChecked()) {
+            throw new Exception(String.format("Ключ секционирования %s таблицы %s имеет тип %s, границы диапазонов " +
+                    "сравниваются на клиенте только для чисел, дат и времени", keyColumn, tableName,
+                    keyType.name().toLowerCase()));
+        }
+
+        List<String> partitionNames = new ArrayList<>();
+        List<String> bounds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select c.oid::regclass::text, pg_get_expr(c.relpartbound, c.oid) " +
+                        "from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                        "where i.inhparent = ?::regclass order by 1")) {
+            statement.setString(1, tableName);
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    partitionNames.add(resultSet.getString(1));
+                    bounds.add(resultSet.getString(2));
+                }
+            }
+        }
+        if (partitionNames.isEmpty()) {
+            throw new Exception(String.format("У таблицы %s нет секций", tableName));
+        }
+        return new PartitionRouter(tableName, keyColumn, keyType, keyIndex, isRange, partitionNames, bounds);
+    }
+
+    /**
+     * Определить секцию текущей строки файла по значению ключа секционирования
+     *
+     * @param dataFile файл, текущая строка которого распределяется
+     * @return номер секции
+     * @throws Exception значение ключа не соответствует типу колонки, его нельзя сравнить с границами секций
+     *                   или строка не подходит ни к одной секции
+     */
+    public int route(DataFile dataFile) throws Exception {
+        String text = dataFile.getValue(keyIndex);
+        Object value = normalize(keyType.convert(keyColumn, text));
+        int partition;
+        if (value == null) {
+            // NULL не входит ни в один диапазон
+            partition = isRange ? -1 : nullPartition;
+        } else if (keyClass != null && value.getClass() != keyClass) {
+            throw new Exception(String.format("Значение '%s' колонки %s нельзя сравнить с границами секций " +
+                    "таблицы %s", text, keyColumn, tableName));
+        } else {
+            partition = isRange ? findRange(value) : listPartitions.getOrDefault(value, -1);
+        }
+
+        if (partition < 0) {
+            partition = defaultPartition;
+        }
+        if (partition < 0) {
+            throw new Exception(String.format("Нет секции таблицы %s для значения %s колонки %s",
+                    tableName, text == null ? "NULL" : "'" + text + "'", keyColumn));
+        }
+        return partition;
+    }
+
+    /**
+     * Возвращает название секции.
+     *
+     * @param partition номер секции
+     * @return название секции, пригодное для запроса
+     */
+    public String getPartition(int partition) {
+        return partitions[partition];
+    }
+
+    /**
+     * Возвращает количество секций таблицы.
+     *
+     * @return количество секций
+     */
+    public int getPartitionsCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Возвращает ключ секционирования.
+     *
+     * @return имя колонки таблицы
+     */
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Узнать, секционирована ли таблица по диапазону.
+     *
+     * @return true - по диапазону, false - по списку значений
+     */
+    public boolean isRange() {
+        return isRange;
+    }
+
+    /**
+     * Найти секцию по диапазону, в которую попадает значение
+     *
+     * @param value значение ключа, не null
+     * @return номер секции, -1 - значение не попадает ни в один диапазон
+     */
+    private int findRange(Object value) {
+        // последняя секция с нижней границей не больше значения
+        int low = 0;
+        int high = lowerBounds.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lowerBounds[middle] == null || compare(lowerBounds[middle], value) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found < 0 || upperBounds[found] != null && compare(value, upperBounds[found]) >= 0) {
+            return -1;
+        }
+        return rangePartitions[found];
+    }
+
+    /**
+     * Перевести границу диапазона в тип ключа
+     *
+     * @param partition название секции, используется в сообщении об ошибке
+     * @param literal   граница в виде, выданном pg_get_expr
+     * @return значение границы, null - MINVALUE или MAXVALUE
+     * @throws Exception граница не соответствует типу ключа
+     */
+    private Object parseBound(String partition, String literal) throws Exception {
+        List<String> values = splitLiterals(literal);
+        if (values.size() != 1) {
+            throw new Exception(String.format("Границы секции %s заданы по нескольким колонкам", partition));
+        }
+        return values.get(0) == null ? null : normalize(keyType.convert(keyColumn, values.get(0)));
+    }
+
+    /**
+     * Проверить, что все значения границ одного класса и их можно сравнивать на клиенте.
+     * Значение, которое не удалось разобрать на клиенте, остаётся текстом.
+     *
+     * @param partition  название секции, используется в сообщении об ошибке
+     * @param valueClass класс значений предыдущих границ, null - границ ещё не было
+     * @param value      значение границы, null - без границы
+     * @return класс значений границ
+     * @throws Exception значение границы нельзя сравнивать на клиенте
+     */
+    private Class<?> checkClass(String partition, Class<?> valueClass, Object value) throws Exception {
+        if (value == null) {
+            return valueClass;
+        }
+        if (value instanceof String && keyType.isChecked() || valueClass != null && value.getClass() != valueClass) {
+            throw new Exception(String.format("Граница '%s' секции %s не сравнивается на клиенте, " +
+                    "распределение по секциям невозможно", value, partition));
+        }
+        return value.getClass();
+    }
+
+    /**
+     * Разделить список значений из границ секции: строки в одинарных кавычках, числа и слова
+     *
+     * @param literals значения через запятую
+     * @return значения без кавычек, null - NULL, MINVALUE или MAXVALUE
+     * @throws Exception незакрытая кавычка
+     */
+    private static List<String> splitLiterals(String literals) throws Exception {
+        List<String> values = new ArrayList<>();
+        int i = 0;
+        while (i < literals.length()) {
+            char symbol = literals.charAt(i);
+            if (symbol == ' ' || symbol == ',') {
+                i++;
+            } else if (symbol == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= literals.length()) {
+                        throw new Exception(String.format("Незакрытая кавычка в границах секции: %s", literals));
+                    }
+                    if (literals.charAt(i) == '\'' && i + 1 < literals.length() && literals.charAt(i + 1) == '\'') {
+                        value.append('\'');
+                        i += 2;
+                    } else if (literals.charAt(i) == '\'') {
+                        i++;
+                        break;
+                    } else {
+                        value.append(literals.charAt(i++));
+                    }
+                }
+                values.add(value.toString());
+            } else {
+                int end = literals.indexOf(',', i);
+                end = end < 0 ? literals.length() : end;
+                String word = literals.substring(i, end).trim();
+                values.add(Arrays.asList("NULL", "MINVALUE", "MAXVALUE").contains(word.toUpperCase()) ? null : word);
+                i = end;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Привести значение к виду, в котором равные на сервере значения равны и на клиенте:
+     * число без незначащих нулей, время с часовым поясом - момент времени
+     *
+     * @param value значение в типе колонки
+     * @return значение для сравнения
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        return value;
+    }
+
+    /**
+     * Сравнить значения ключа одного класса
+     *
+     * @param first  первое значение
+     * @param second второе значение
+     * @return отрицательное число, ноль или положительное число, как у Comparable
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object first, Object second) {
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+}
@@ -0,0 +1,425 @@
+package filltable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загрузка файла в секционированную таблицу сразу в секции (флаг route-partitions).
+ * При вставке через родительскую таблицу сервер ищет секцию для каждой строки, а параллельные загрузки
+ * одной таблицы пишут в одни и те же секции. Здесь файл читается одним потоком, каждая строка распределяется
+ * в секцию на клиенте, и строки каждой секции вставляются своим соединением и своими пачками в отдельном потоке.
+ * Соединение секции открывается при первой строке для неё, поэтому соединений столько, сколько секций
+ * встретилось в файле.
+ * Строка, не подходящая ни к одной секции, обрабатывается как ошибочная и при политике REJECT
+ * попадает в файл отклонённых строк, загрузка остальных строк продолжается.
+ * Изменения всех секций фиксируются только после того, как загружены все строки файла, иначе откатываются.
+ */
+public class PartitionedLoader {
+
+    /**
+     * Количество порций секции, которые могут ожидать вставки.
+     * Когда очередь секции заполнена, чтение файла ждёт вставку в эту секцию.
+     */
+    private static final int PARTITION_QUEUE_CAPACITY = 4;
+
+    /**
+     * Как часто поток чтения, ожидая место в очереди секции, проверяет, не остановлена ли загрузка, в мс
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final Arguments arguments;
+
+    /**
+     * Загрузка остановлена: секция не загрузилась, остальные строки читать и вставлять незачем
+     */
+    private volatile boolean isStopped = false;
+
+    /**
+     * Создаёт загрузку в секции
+     *
+     * @param arguments аргументы командной строки
+     */
+    public PartitionedLoader(Arguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Загрузить файл, распределяя строки по секциям, и вывести итог по каждой секции
+     *
+     * @throws Exception ошибка чтения схемы секционирования, соединения с БД или чтения файла
+     */
+    public void load() throws Exception {
+        try (SessionProfile.Session session = SessionProfile.open(arguments.getConnectionUrl(),
+                arguments.getSessionProfile())) {
+            Connection connection = session.getConnection();
+            Table table = new Table(connection, arguments.getTableName());
+            DataFile dataFile = new DataFile(arguments.getFilePath(), arguments.getFileFormat());
+
+            ColumnsIntersection columnsIntersection;
+            PartitionRouter router;
+            try {
+                columnsIntersection = dataFile.setDesiredColumns(table.getColumns(),
+                        arguments.getColumnMapping());
+                if (!Main.isContinueProgramAfterColumnsIntersection(columnsIntersection, arguments.getOnError())) {
+                    dataFile.close();
+                    return;
+                }
+                table.setInsertColumns(columnsIntersection.getColumnsIntersection());
+                router = PartitionRouter.read(connection, table, columnsIntersection.getColumnsIntersection());
+            } catch (Exception e) {
+                dataFile.close();
+                throw e;
+            }
+            System.out.printf("Таблица %s секционирована по %s колонки %s, секций: %d\n", table.getTableName(),
+                    router.isRange() ? "диапазонам" : "спискам значений", router.getKeyColumn(),
+                    router.getPartitionsCount());
+
+            try (LoadMetrics metrics = Main.startMetrics(arguments);
+                 RowErrorHandler errorHandler = new RowErrorHandler(arguments.getOnError(), arguments.getMaxErrors(),
+                         arguments.getRejectFilePath(), dataFile.getFileColumns(), arguments.getFileFormat())) {
+                RowReader rows = new RowReader(dataFile, errorHandler, table.getRowConverter(),
+                        arguments.getBatchSize(), arguments.getLoadMode() == LoadMode.COPY, 0, metrics, router);
+                PartitionWorker[] workers = new PartitionWorker[router.getPartitionsCount()];
+                ExecutorService executor = Executors.newCachedThreadPool();
+                try {
+                    boolean isRead = false;
+                    boolean isLoaded;
+                    try {
+                        isRead = readRows(rows, table, columnsIntersection.getColumnsIntersection(), router,
+                                workers, errorHandler, metrics, executor);
+                    } finally {
+                        // соединения секций закрываются только после окончания их потоков
+                        finishWorkers(workers, isRead);
+                        isLoaded = waitWorkers(workers);
+                        rows.close();
+                    }
+
+                    boolean isSuccess = isLoaded && isRead;
+                    finishTransactions(workers, isSuccess);
+                    Main.showMetrics(metrics, arguments);
+                    showResults(workers, isSuccess);
+                    if (isSuccess) {
+                        Main.showSkippedRows(errorHandler.getErrorsCount(), errorHandler.getOnError(),
+                                arguments.getRejectFilePath());
+                    }
+                } finally {
+                    executor.shutdownNow();
+                    closeWorkers(workers);
+                }
+            }
+        }
+    }
+
+    /**
+     * Прочитать строки файла и разложить их по очередям секций пачками.
+     * Соединение и поток секции создаются при первой строке для неё.
+     *
+     * @param rows          читатель строк файла с распределением по секциям
+     * @param table         родительская таблица
+     * @param insertColumns колонки для вставки
+     * @param router        распределение строк по секциям
+     * @param workers       загрузки секций по номерам секций, заполняются по мере надобности
+     * @param errorHandler  общий обработчик ошибочных строк
+     * @param metrics       общие показатели загрузки
+     * @param executor      потоки загрузки секций
+     * @return true - все строки прочитаны, false - чтение прервано ошибочной строкой или загрузка остановлена
+     * @throws Exception ошибка чтения файла или открытия соединения
+     */
+    private boolean readRows(RowSource rows, Table table, List<String> insertColumns, PartitionRouter router,
+                             PartitionWorker[] workers, RowErrorHandler errorHandler, LoadMetrics metrics,
+                             ExecutorService executor) throws Exception {
+        List<FileRow> chunk;
+        while (!isStopped && (chunk = rows.nextChunk()) != null) {
+            for (var row : chunk) {
+                PartitionWorker worker = workers[row.getPartition()];
+                if (worker == null) {
+                    worker = new PartitionWorker(router.getPartition(row.getPartition()), metrics);
+                    workers[row.getPartition()] = worker;
+                    worker.start(table, insertColumns, errorHandler, executor);
+                }
+                worker.buffer.add(row);
+                if (worker.buffer.size() >= arguments.getBatchSize() && !worker.send()) {
+                    return false;
+                }
+            }
+        }
+        if (isStopped || rows.isAborted()) {
+            return false;
+        }
+        for (var worker : workers) {
+            if (worker != null && !worker.buffer.isEmpty() && !worker.send()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Сообщить загрузкам секций, что строк больше не будет
+     *
+     * @param workers загрузки секций, null - в секцию не попало ни одной строки
+     * @param isRead  все строки прочитаны, иначе загрузки секций прерываются
+     */
+    private void finishWorkers(PartitionWorker[] workers, boolean isRead) {
+        for (var worker : workers) {
+            if (worker != null) {
+                worker.queue.finish(!isRead);
+            }
+        }
+    }
+
+    /**
+     * Дождаться окончания загрузки всех секций
+     *
+     * @param workers загрузки секций
+     * @return true - все секции загружены, false - хотя бы одна не загружена
+     * @throws InterruptedException ожидание прервано
+     */
+    private static boolean waitWorkers(PartitionWorker[] workers) throws InterruptedException {
+        boolean isSuccess = true;
+        for (var worker : workers) {
+            // поток секции не запущен, если не удалось открыть её соединение
+            if (worker == null || worker.result == null) {
+                continue;
+            }
+            try {
+                worker.isLoaded = worker.result.get();
+            } catch (ExecutionException e) {
+                System.out.printf("Секция %s: %s\n", worker.partition, e.getCause().getMessage());
+                worker.isLoaded = false;
+            }
+            isSuccess &= worker.isLoaded;
+        }
+        return isSuccess;
+    }
+
+    /**
+     * Зафиксировать изменения всех секций, если загрузка удалась, иначе откатить их
+     *
+     * @param workers   загрузки секций
+     * @param isSuccess все строки прочитаны и все секции загружены
+     * @throws SQLException ошибка фиксации, изменения секций, не успевших зафиксироваться, откатываются
+     */
+    private static void finishTransactions(PartitionWorker[] workers, boolean isSuccess) throws SQLException {
+        for (var worker : workers) {
+            if (worker == null) {
+                continue;
+            }
+            if (isSuccess) {
+                worker.session.getConnection().commit();
+            } else {
+                worker.session.getConnection().rollback();
+            }
+        }
+    }
+
+    /**
+     * Закрыть соединения секций, незафиксированные изменения откатываются
+     *
+     * @param workers загрузки секций
+     */
+    private static void closeWorkers(PartitionWorker[] workers) {
+        for (var worker : workers) {
+            if (worker == null || worker.session == null) {
+                continue;
+            }
+            try {
+                worker.session.close();
+            } catch (SQLException ignored) {
+                // соединение уже недоступно, изменения не зафиксированы
+            }
+        }
+    }
+
+    /**
+     * Вывод итога по каждой секции, в которую попали строки
+     *
+     * @param workers   загрузки секций
+     * @param isSuccess изменения зафиксированы
+     */
+    private static void showResults(PartitionWorker[] workers, boolean isSuccess) {
+        for (var worker : workers) {
+            if (worker != null) {
+                System.out.printf("Секция %s: строк вставлено %d\n", worker.partition,
+                        worker.metrics.getRowsInserted());
+            }
+        }
+        System.out.println(isSuccess ? "Успешная вставка" : "Изменения отменены");
+    }
+
+    /**
+     * Загрузка строк одной секции своим соединением в отдельном потоке
+     */
+    private class PartitionWorker {
+
+        /**
+         * Название секции
+         */
+        private final String partition;
+
+        /**
+         * Показатели загрузки секции, учитываются также в общих показателях
+         */
+        private final LoadMetrics metrics;
+
+        /**
+         * Строки секции, ещё не переданные в очередь
+         */
+        private List<FileRow> buffer;
+
+        private final PartitionQueue queue = new PartitionQueue();
+
+        private SessionProfile.Session session = null;
+
+        private Future<Boolean> result = null;
+
+        /**
+         * Секция загружена без ошибок, изменения ещё не зафиксированы
+         */
+        private boolean isLoaded = false;
+
+        PartitionWorker(String partition, LoadMetrics metrics) {
+            this.partition = partition;
+            this.metrics = new LoadMetrics(metrics);
+            this.buffer = new ArrayList<>(arguments.getBatchSize());
+        }
+
+        /**
+         * Открыть соединение секции и запустить поток вставки её строк
+         *
+         * @param parent        родительская таблица
+         * @param insertColumns колонки для вставки
+         * @param errorHandler  общий обработчик ошибочных строк
+         * @param executor      потоки загрузки секций
+         * @throws Exception невозможно открыть соединение или подготовить запрос на вставку
+         */
+        void start(Table parent, List<String> insertColumns, RowErrorHandler errorHandler, ExecutorService executor)
+                throws Exception {
+            session = SessionProfile.open(arguments.getConnectionUrl(), arguments.getSessionProfile());
+            Connection connection = session.getConnection();
+            connection.setAutoCommit(false);
+            Table table = new Table(connection, parent, partition);
+            table.setInsertColumns(insertColumns);
+
+            result = executor.submit(() -> {
+                try {
+                    boolean isSuccess = arguments.getLoadMode() == LoadMode.COPY
+                            ? Main.tryCopy(queue, table, metrics, null)
+                            : Main.tryInsert(queue, table, connection, errorHandler, arguments.getLoadMode(),
+                            metrics, null);
+                    if (!isSuccess) {
+                        isStopped = true;
+                    }
+                    return isSuccess;
+                } catch (Exception e) {
+                    isStopped = true;
+                    throw e;
+                }
+            });
+        }
+
+        /**
+         * Передать накопленные строки в очередь секции
+         *
+         * @return true - строки переданы, false - загрузка остановлена
+         * @throws InterruptedException ожидание места в очереди прервано
+         */
+        boolean send() throws InterruptedException {
+            while (!queue.chunks.offer(buffer, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (isStopped) {
+                    return false;
+                }
+            }
+            buffer = new ArrayList<>(arguments.getBatchSize());
+            return true;
+        }
+    }
+
+    /**
+     * Очередь порций строк секции, которую поток чтения заполняет, а поток секции вставляет
+     */
+    private class PartitionQueue implements RowSource {
+
+        /**
+         * Признак конца строк в очереди, сравнивается по ссылке
+         */
+        private final List<FileRow> end = new ArrayList<>();
+
+        private final BlockingQueue<List<FileRow>> chunks = new ArrayBlockingQueue<>(PARTITION_QUEUE_CAPACITY);
+
+        private volatile boolean isAborted = false;
+
+        /**
+         * Получен ли признак конца строк
+         */
+        private boolean isFinished = false;
+
+        @Override
+        public List<FileRow> nextChunk() throws Exception {
+            if (isFinished) {
+                return null;
+            }
+            List<FileRow> chunk = chunks.take();
+            if (chunk != end) {
+                return chunk;
+            }
+            isFinished = true;
+            return null;
+        }
+
+        @Override
+        public boolean isAborted() {
+            return isAborted;
+        }
+
+        /**
+         * Закончить очередь. Если загрузка прервана, ожидающие порции выбрасываются:
+         * изменения секции всё равно будут откачены.
+         *
+         * @param isAborted загрузка прервана
+         */
+        void finish(boolean isAborted) {
+            if (isAborted) {
+                abort();
+            }
+            // место в очереди освобождает поток секции, если он ещё работает
+            while (true) {
+                try {
+                    if (chunks.offer(end, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    abort();
+                }
+                if (isStopped) {
+                    abort();
+                }
+            }
+        }
+
+        /**
+         * Прервать загрузку секции, выбросив ожидающие порции
+         */
+        private void abort() {
+            isAborted = true;
+            chunks.clear();
+        }
+
+        /**
+         * Файл закрывает поток чтения, очереди закрывать нечего.
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package filltable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Читает строки из файла в отдельном потоке, пока вызывающий поток вставляет предыдущие порции в таблицу.
+ * Между потоками ограниченная очередь порций: когда она заполнена, чтение ждёт вставку,
+ * поэтому в памяти одновременно находится не больше заданного количества порций.
+ * Ошибка чтения, в том числе Error (например, нехватка памяти на очень длинной строке), передаётся
+ * вызывающему потоку, при закрытии поток чтения останавливается.
+ */
+public class PipelinedRowReader implements RowSource {
+
+    /**
+     * Признак конца строк в очереди, сравнивается по ссылке
+     */
+    private static final List<FileRow> END = new ArrayList<>();
+
+    private final RowSource source;
+
+    private final BlockingQueue<List<FileRow>> queue;
+
+    private final Thread readerThread;
+
+    /**
+     * Ошибка чтения в потоке чтения
+     */
+    private volatile Throwable failure = null;
+
+    private volatile boolean isAborted = false;
+
+    /**
+     * Получен ли признак конца строк
+     */
+    private boolean isFinished = false;
+
+    /**
+     * Создаёт читателя и запускает поток чтения.
+     *
+     * @param source        источник строк, из которого читает поток чтения
+     * @param queueCapacity количество порций, которые могут ожидать вставки
+     */
+    public PipelinedRowReader(RowSource source, int queueCapacity) {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.readerThread = new Thread(this::readChunks, "row-reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    @Override
+    public List<FileRow> nextChunk() throws Exception {
+        if (isFinished) {
+            return null;
+        }
+
+        List<FileRow> chunk = queue.take();
+        if (chunk != END) {
+            return chunk;
+        }
+
+        isFinished = true;
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (Exception) failure;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isAborted() {
+        return isAborted;
+    }
+
+    /**
+     * Останавливает поток чтения, если он ещё работает, и закрывает файл.
+     *
+     * @throws IOException ошибка закрытия файла
+     */
+    @Override
+    public void close() throws IOException {
+        readerThread.interrupt();
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * Тело потока чтения: складывает порции в очередь, пока они не закончатся или поток не прервут.
+     * Признак конца ставится после любой ошибки, иначе вызывающий поток ждал бы следующую порцию вечно.
+     */
+    private void readChunks() {
+        try {
+            List<FileRow> chunk;
+            while ((chunk = source.nextChunk()) != null) {
+                queue.put(chunk);
+            }
+            isAborted = source.isAborted();
+        } catch (InterruptedException e) {
+            // вставка закончилась раньше чтения, остановлены при закрытии, признак конца никто не ждёт
+            return;
+        } catch (Throwable e) {
+            failure = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {
+            // вставка уже закончилась, признак конца никто не ждёт
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package filltable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Поток, который читает исходный поток заранее в отдельном потоке выполнения.
+ * Для сжатого файла распаковка идёт в потоке чтения, одновременно с разбором строк и вставкой.
+ * Прочитанные блоки передаются через ограниченную очередь, поэтому память ограничена.
+ * Для потока из канала (стандартный ввод, именованный канал) блок можно отдавать, не дожидаясь заполнения,
+ * как только в канале нет данных, чтобы разбор начинался сразу с приходом первых байтов.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Размер блока, читаемого за раз
+     */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Признак конца потока в очереди, сравнивается по ссылке
+     */
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+
+    private final BlockingQueue<byte[]> queue;
+
+    private final Thread thread;
+
+    /**
+     * Отдавать неполный блок, если исходный поток не может дать данных без ожидания
+     */
+    private final boolean isPartialBlocks;
+
+    /**
+     * Ошибка чтения исходного потока, передаётся читающему после уже прочитанных блоков
+     */
+    private volatile IOException failure = null;
+
+    /**
+     * Текущий блок и позиция в нём
+     */
+    private byte[] block = null;
+
+    private int blockPosition = 0;
+
+    private boolean isEnd = false;
+
+    /**
+     * Создаёт поток и запускает чтение исходного потока
+     *
+     * @param source      исходный поток
+     * @param blocksCount наибольшее количество прочитанных заранее блоков
+     * @param threadName  имя потока выполнения
+     */
+    public ReadAheadInputStream(InputStream source, int blocksCount, String threadName) {
+        this(source, blocksCount, threadName, false);
+    }
+
+    /**
+     * Создаёт поток и запускает чтение исходного потока
+     *
+     * @param source          исходный поток
+     * @param blocksCount     наибольшее количество прочитанных заранее блоков
+     * @param threadName      имя потока выполнения
+     * @param isPartialBlocks отдавать неполный блок, если исходный поток не может дать данных без ожидания
+     */
+    public ReadAheadInputStream(InputStream source, int blocksCount, String threadName, boolean isPartialBlocks) {
+        this.source = source;
+        this.isPartialBlocks = isPartialBlocks;
+        this.queue = new ArrayBlockingQueue<>(blocksCount);
+        this.thread = new Thread(this::readAhead, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (block == null || blockPosition == block.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(length, block.length - blockPosition);
+        System.arraycopy(block, blockPosition, buffer, offset, n);
+        blockPosition += n;
+        return n;
+    }
+
+    /**
+     * Количество байтов, которые можно прочитать без ожидания: остаток текущего блока или следующий блок очереди
+     *
+     * @return количество байтов
+     */
+    @Override
+    public int available() {
+        if (block != null && blockPosition < block.length) {
+            return block.length - blockPosition;
+        }
+        byte[] next = queue.peek();
+        return next == null || next == END ? 0 : next.length;
+    }
+
+    /**
+     * Останавливает чтение и закрывает исходный поток.
+     * Исходный поток закрывается до ожидания потока чтения, чтобы прервать чтение, ожидающее данных.
+     *
+     * @throws IOException ошибка закрытия исходного потока
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            source.close();
+        } finally {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Берёт следующий блок из очереди
+     *
+     * @return true - блок получен, false - поток закончился
+     * @throws IOException ошибка чтения исходного потока
+     */
+    private boolean nextBlock() throws IOException {
+        if (isEnd) {
+            return false;
+        }
+        try {
+            block = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Чтение прервано", e);
+        }
+        blockPosition = 0;
+        if (block == END) {
+            isEnd = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Читает исходный поток блоками и кладёт их в очередь, пока поток не закончится или чтение не остановят
+     */
+    private void readAhead() {
+        try {
+            while (true) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int length = 0;
+                int n = 0;
+                while (length < buffer.length && (n = source.read(buffer, length, buffer.length - length)) >= 0) {
+                    length += n;
+                    if (isPartialBlocks && source.available() == 0) {
+                        break;
+                    }
+                }
+                if (length > 0) {
+                    queue.put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                }
+                if (n < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // читающий закрыл поток, признак конца уже не нужен
+            return;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // читающий закрыл поток
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package filltable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Переводит значения строки файла в значения для вставки по типам колонок для вставки.
+ * Создаётся таблицей один раз на набор колонок для вставки, не изменяется,
+ * поэтому может использоваться из потока чтения файла.
+ *
+ * @see Table#getRowConverter() получить преобразователь для колонок вставки
+ */
+public class RowConverter {
+
+    private final String[] columns;
+
+    private final ColumnType[] types;
+
+    /**
+     * Создаёт преобразователь
+     *
+     * @param columns имена колонок для вставки
+     * @param types   типы колонок для вставки
+     */
+    public RowConverter(String[] columns, ColumnType[] types) {
+        this.columns = columns;
+        this.types = types;
+    }
+
+    /**
+     * Переводит значения строки файла в значения для вставки.
+     *
+     * @param dataFile файл, текущая строка которого переводится
+     * @return значения для вставки
+     * @throws Exception значение не соответствует типу колонки
+     */
+    public List<Object> convert(DataFile dataFile) throws Exception {
+        List<Object> values = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            values.add(types[i].convert(columns[i], dataFile.getValue(i)));
+        }
+        return values;
+    }
+
+    /**
+     * Проверяет, что значения строки файла соответствуют типам колонок, не сохраняя результат.
+     * Декодируются только значения колонок, тип которых проверяется на клиенте.
+     *
+     * @param dataFile файл, текущая строка которого проверяется
+     * @throws Exception значение не соответствует типу колонки
+     */
+    public void check(DataFile dataFile) throws Exception {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].isChecked()) {
+                types[i].convert(columns[i], dataFile.getValue(i));
+            }
+        }
+    }
+
+    /**
+     * Узнать, проверяется ли на клиенте хотя бы одна колонка.
+     *
+     * @return true - есть колонки, тип которых проверяется на клиенте
+     */
+    public boolean hasCheckedColumns() {
+        for (var type : types) {
+            if (type.isChecked()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,261 @@
+package filltable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Класс, решающий, что делать со строкой файла, которую не удалось прочитать или вставить.
+ * Только при политике ASK обращается к консоли, остальные политики работают без участия пользователя.
+ * Отклонённые строки записываются в файл того же формата, что и исходный, чтобы после исправления
+ * их можно было загрузить повторно. К колонкам файла добавляются номер строки и причина ошибки,
+ * при повторной загрузке они не попадут в пересечение с колонками таблицы.
+ * Файл отклонённых строк всегда начинается со строки заголовка, даже если в исходном файле её нет.
+ * Ошибки чтения и вставки могут обрабатываться из разных потоков, поэтому методы синхронизированы.
+ * При загрузке с контрольными точками отклонённые строки записываются в файл только вместе с контрольной точкой,
+ * которая их покрывает: тогда файл соответствует зафиксированным строкам и при продолжении загрузки
+ * обрезается до сохранённого размера без повторов.
+ */
+public class RowErrorHandler implements Closeable {
+
+    /**
+     * Имя колонки файла отклонённых строк с номером строки в исходном файле
+     */
+    public static final String REJECT_LINE_COLUMN = "reject_line";
+
+    /**
+     * Имя колонки файла отклонённых строк с причиной ошибки
+     */
+    public static final String REJECT_REASON_COLUMN = "reject_reason";
+
+    private final OnError onError;
+
+    /**
+     * Допустимое количество ошибок, -1 - без ограничения
+     */
+    private final int maxErrors;
+
+    private final String rejectFilePath;
+
+    /**
+     * Колонки исходного файла, нужны для заголовка файла отклонённых строк
+     */
+    private final String[] fileColumns;
+
+    /**
+     * Формат исходного файла, в нём же записывается файл отклонённых строк
+     */
+    private final FileFormat format;
+
+    /**
+     * Дописывать в существующий файл отклонённых строк, а не создавать его заново
+     */
+    private boolean isAppend = false;
+
+    /**
+     * Отклонённые строки, ещё не покрытые контрольной точкой, по номерам строк.
+     * null - загрузка без контрольных точек, строки записываются сразу.
+     */
+    private NavigableMap<Integer, String> pendingRejects = null;
+
+    /**
+     * Файл отклонённых строк, открывается при первой отклонённой строке
+     */
+    private BufferedWriter rejectFile = null;
+
+    /**
+     * Количество обработанных ошибок
+     */
+    private int errorsCount = 0;
+
+    /**
+     * Создаёт обработчик ошибок строк
+     *
+     * @param onError        действие при ошибке
+     * @param maxErrors      допустимое количество ошибок, -1 - без ограничения
+     * @param rejectFilePath путь к файлу отклонённых строк, используется при политике REJECT
+     * @param fileColumns    колонки исходного файла
+     * @param format         формат исходного файла
+     */
+    public RowErrorHandler(OnError onError, int maxErrors, String rejectFilePath, String[] fileColumns,
+                           FileFormat format) {
+        this.onError = onError;
+        this.maxErrors = maxErrors;
+        this.rejectFilePath = rejectFilePath;
+        this.fileColumns = fileColumns;
+        this.format = format;
+    }
+
+    /**
+     * Записывать отклонённые строки вместе с контрольными точками.
+     * При продолжении прерванной загрузки файл отклонённых строк обрезается до размера, сохранённого
+     * в контрольной точке: строки после неё были записаны до прерывания и будут отклонены снова.
+     *
+     * @param keepSize сколько байтов существующего файла оставить и дописывать после них,
+     *                 -1 - загрузка с начала, файл создаётся заново
+     * @throws IOException ошибка обрезки файла
+     * @see RowErrorHandler#flushRejects(int) записать строки, покрытые контрольной точкой
+     */
+    public synchronized void startCheckpoints(long keepSize) throws IOException {
+        pendingRejects = new TreeMap<>();
+        if (keepSize < 0) {
+            return;
+        }
+        isAppend = true;
+        Path path = Paths.get(rejectFilePath);
+        if (Files.exists(path) && Files.size(path) > keepSize) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(keepSize);
+            }
+        }
+    }
+
+    /**
+     * Записать в файл отклонённые строки с номерами не больше заданного, перед сохранением контрольной точки
+     *
+     * @param lineNumber номер последней строки, покрытой контрольной точкой
+     * @return размер файла отклонённых строк в байтах, 0 - файла нет
+     * @throws IOException ошибка записи файла
+     */
+    public synchronized long flushRejects(int lineNumber) throws IOException {
+        Map<Integer, String> covered = pendingRejects.headMap(lineNumber, true);
+        for (var record : covered.values()) {
+            writeRecord(record);
+        }
+        covered.clear();
+        if (rejectFile != null) {
+            rejectFile.flush();
+        }
+        Path path = Paths.get(rejectFilePath);
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * Обработать ошибку в строке файла
+     *
+     * @param lineNumber номер строки данных
+     * @param line       строка файла в исходном виде
+     * @param e          ошибка
+     * @return true - строку пропустить и продолжить загрузку, false - откатить все вставки и закончить работу
+     * @throws IOException ошибка записи в файл отклонённых строк
+     */
+    public synchronized boolean handle(int lineNumber, String line, Exception e) throws IOException {
+        errorsCount++;
+
+        switch (onError) {
+            case ASK:
+                System.out.printf("%s\n", e.getMessage());
+                return !Main.getYesNo(String.format("Произошла ошибка в строке %d\n" +
+                        "Откатить все вставки и закончить работу (y)\n" +
+                        "Пропустить строку (n)", lineNumber));
+            case ABORT:
+                System.out.printf("Ошибка в строке %d: %s\n", lineNumber, e.getMessage());
+                return false;
+            case REJECT:
+                writeReject(lineNumber, line, e);
+                break;
+            case SKIP:
+                // строка просто пропускается, итог выводится по окончании загрузки
+                break;
+        }
+
+        if (maxErrors >= 0 && errorsCount > maxErrors) {
+            System.out.printf("Превышено допустимое количество ошибок (%d), последняя в строке %d: %s\n",
+                    maxErrors, lineNumber, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает количество обработанных ошибок.
+     *
+     * @return количество ошибок
+     */
+    public synchronized int getErrorsCount() {
+        return errorsCount;
+    }
+
+    /**
+     * Возвращает действие при ошибке.
+     *
+     * @return действие при ошибке
+     */
+    public OnError getOnError() {
+        return onError;
+    }
+
+    /**
+     * Записывает отклонённые строки, не покрытые контрольной точкой, и закрывает файл отклонённых строк,
+     * если он был открыт.
+     *
+     * @throws IOException ошибка записи или закрытия файла
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (pendingRejects != null) {
+            for (var record : pendingRejects.values()) {
+                writeRecord(record);
+            }
+            pendingRejects.clear();
+        }
+        if (rejectFile != null) {
+            rejectFile.close();
+            rejectFile = null;
+        }
+    }
+
+    /**
+     * Записать строку в файл отклонённых строк или отложить её до контрольной точки
+     *
+     * @param lineNumber номер строки данных
+     * @param line       строка файла в исходном виде
+     * @param e          ошибка
+     * @throws IOException ошибка записи
+     */
+    private void writeReject(int lineNumber, String line, Exception e) throws IOException {
+        // сообщение ошибки записывается по правилам формата файла, чтобы не нарушить его структуру
+        String record = line + (char) format.getDelimiter()
+                + format.formatLine(String.valueOf(lineNumber), String.valueOf(e.getMessage())) + '\n';
+        if (pendingRejects != null) {
+            pendingRejects.put(lineNumber, record);
+        } else {
+            writeRecord(record);
+        }
+    }
+
+    /**
+     * Записать запись в файл отклонённых строк, при первой записи файл создаётся вместе с заголовком.
+     * При дописывании в существующий непустой файл заголовок уже есть.
+     *
+     * @param record строка файла отклонённых строк с переводом строки
+     * @throws IOException ошибка записи
+     */
+    private void writeRecord(String record) throws IOException {
+        if (rejectFile == null) {
+            Path path = Paths.get(rejectFilePath);
+            boolean isExisting = isAppend && Files.exists(path) && Files.size(path) > 0;
+            rejectFile = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(rejectFilePath, isExisting), StandardCharsets.UTF_8));
+            if (!isExisting) {
+                rejectFile.write(format.formatLine(fileColumns));
+                rejectFile.write(format.getDelimiter());
+                rejectFile.write(format.formatLine(REJECT_LINE_COLUMN, REJECT_REASON_COLUMN));
+                rejectFile.write('\n');
+            }
+        }
+
+        rejectFile.write(record);
+    }
+}
@@ -0,0 +1,202 @@
+package filltable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Читает строки из файла порциями в том же потоке, в котором их запрашивают.
+ */
+public class RowReader implements RowSource {
+
+    private final DataFile dataFile;
+
+    private final RowErrorHandler errorHandler;
+
+    /**
+     * Переводит значения в типы колонок для вставки, ошибка перевода обрабатывается как ошибочная строка
+     */
+    private final RowConverter rowConverter;
+
+    /**
+     * Показатели загрузки: прочитанные строки и байты, время разбора, пропущенные строки
+     */
+    private final LoadMetrics metrics;
+
+    /**
+     * Проверять ли типы значений строк COPY, которые передаются без декодирования
+     */
+    private final boolean isCheckCopyLines;
+
+    /**
+     * Количество строк в порции
+     */
+    private final int chunkSize;
+
+    /**
+     * Нужно ли сохранять строки в исходном виде.
+     * Нужны только для записи в файл отклонённых строк, иначе лишняя строка на каждую строку файла.
+     */
+    private final boolean isKeepLines;
+
+    /**
+     * Выдавать строки сразу в формате COPY, не декодируя значения
+     */
+    private final boolean isCopyLines;
+
+    /**
+     * Распределение строк по секциям таблицы, null - строки не распределяются
+     */
+    private final PartitionRouter router;
+
+    /**
+     * Номер строки данных, без учёта строки с именами колонок
+     */
+    private int lineNumber;
+
+    /**
+     * Позиция в файле после последней учтённой в показателях строки
+     */
+    private long position;
+
+    private boolean isFinished = false;
+
+    private boolean isAborted = false;
+
+    /**
+     * Создаёт читателя строк.
+     * У файла уже должно быть построено пересечение колонок.
+     *
+     * @param dataFile     файл с данными
+     * @param errorHandler обработчик строк с нарушением структуры файла или значениями не того типа
+     * @param rowConverter преобразователь значений по типам колонок для вставки
+     * @param chunkSize    количество строк в порции
+     * @param isCopyLines  выдавать строки в формате COPY вместо списка значений
+     * @param lineNumber   номер строки данных, после которой начинается чтение, 0 - с начала файла
+     * @param metrics      показатели загрузки
+     */
+    public RowReader(DataFile dataFile, RowErrorHandler errorHandler, RowConverter rowConverter, int chunkSize,
+                     boolean isCopyLines, int lineNumber, LoadMetrics metrics) {
+        this(dataFile, errorHandler, rowConverter, chunkSize, isCopyLines, lineNumber, metrics, null);
+    }
+
+    /**
+     * Создаёт читателя строк, распределяющего строки по секциям таблицы.
+     * Строка, не подходящая ни к одной секции, обрабатывается как ошибочная.
+     * У файла уже должно быть построено пересечение колонок.
+     *
+     * @param dataFile     файл с данными
+     * @param errorHandler обработчик строк с нарушением структуры файла или значениями не того типа
+     * @param rowConverter преобразователь значений по типам колонок для вставки
+     * @param chunkSize    количество строк в порции
+     * @param isCopyLines  выдавать строки в формате COPY вместо списка значений
+     * @param lineNumber   номер строки данных, после которой начинается чтение, 0 - с начала файла
+     * @param metrics      показатели загрузки
+     * @param router       распределение строк по секциям, null - строки не распределяются
+     */
+    public RowReader(DataFile dataFile, RowErrorHandler errorHandler, RowConverter rowConverter, int chunkSize,
+                     boolean isCopyLines, int lineNumber, LoadMetrics metrics, PartitionRouter router) {
+        this.dataFile = dataFile;
+        this.errorHandler = errorHandler;
+        this.rowConverter = rowConverter;
+        this.lineNumber = lineNumber;
+        this.metrics = metrics;
+        this.position = dataFile.getPosition();
+        this.chunkSize = chunkSize;
+        this.isCheckCopyLines = isCopyLines && rowConverter.hasCheckedColumns();
+        this.isKeepLines = errorHandler.getOnError() == OnError.REJECT;
+        this.isCopyLines = isCopyLines;
+        this.router = router;
+    }
+
+    @Override
+    public List<FileRow> nextChunk() throws Exception {
+        if (isFinished) {
+            return null;
+        }
+
+        long startNanos = System.nanoTime();
+        int startLineNumber = lineNumber;
+        try {
+            return readChunk();
+        } finally {
+            long newPosition = dataFile.getPosition();
+            // последнее увеличение номера строки приходится на конец файла, если он достигнут
+            metrics.addRead(lineNumber - startLineNumber - (isFinished && !isAborted ? 1 : 0),
+                    newPosition - position, System.nanoTime() - startNanos);
+            position = newPosition;
+        }
+    }
+
+    /**
+     * Прочитать порцию строк
+     *
+     * @return порция строк, null - строки закончились или загрузка прервана
+     * @throws Exception ошибка чтения файла
+     */
+    private List<FileRow> readChunk() throws Exception {
+        List<FileRow> chunk = new ArrayList<>(chunkSize);
+        while (chunk.size() < chunkSize) {
+            lineNumber++;
+            FileRow row;
+            try {
+                // может возникнуть исключение, сообщающее о нарушении структуры файла
+                // или о несоответствии значения типу колонки
+                // тогда решаем, пропустить строку и продолжить или закончить работу
+                if (!dataFile.next()) {
+                    isFinished = true;
+                    break;
+                }
+                row = readRow();
+            } catch (IOException e) {
+                isFinished = true;
+                throw e;
+            } catch (Exception e) {
+                if (!errorHandler.handle(lineNumber, dataFile.getLastLine(), e)) {
+                    isFinished = true;
+                    isAborted = true;
+                    return null;
+                }
+                metrics.addRejected();
+                continue;
+            }
+
+            chunk.add(row);
+        }
+        return chunk.isEmpty() ? null : chunk;
+    }
+
+    @Override
+    public boolean isAborted() {
+        return isAborted;
+    }
+
+    /**
+     * Закрывает файл.
+     *
+     * @throws IOException ошибка закрытия файла
+     */
+    @Override
+    public void close() throws IOException {
+        dataFile.close();
+    }
+
+    /**
+     * Получить текущую строку файла со значениями, переведёнными в типы колонок, или в формате COPY,
+     * с номером секции таблицы, если строки распределяются по секциям
+     *
+     * @return строка файла
+     * @throws Exception значение не соответствует типу колонки или строка не подходит ни к одной секции
+     */
+    private FileRow readRow() throws Exception {
+        int partition = router != null ? router.route(dataFile) : FileRow.NO_PARTITION;
+        String line = isKeepLines ? dataFile.getLastLine() : null;
+        if (!isCopyLines) {
+            return new FileRow(lineNumber, dataFile.getPosition(), line, rowConverter.convert(dataFile), partition);
+        }
+        if (isCheckCopyLines) {
+            rowConverter.check(dataFile);
+        }
+        return new FileRow(lineNumber, dataFile.getPosition(), line, dataFile.getCopyLine(), partition);
+    }
+}
@@ -0,0 +1,26 @@
+package filltable;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Источник строк файла для вставки, выдаёт строки порциями
+ */
+public interface RowSource extends Closeable {
+    /**
+     * Получить следующую порцию строк.
+     * Строки с нарушением структуры файла в порцию не попадают, их обрабатывает обработчик ошибочных строк.
+     *
+     * @return порция строк, null - строки закончились или чтение прервано
+     * @throws Exception ошибка чтения файла
+     * @see RowSource#isAborted() узнать, было ли прервано чтение
+     */
+    List<FileRow> nextChunk() throws Exception;
+
+    /**
+     * Узнать, было ли чтение прервано из-за ошибочной строки.
+     *
+     * @return true - нужно откатить все вставки и закончить работу
+     */
+    boolean isAborted();
+}
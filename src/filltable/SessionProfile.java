@@ -0,0 +1,222 @@
+package filltable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Профиль сеанса загрузки - именованный набор параметров сеанса PostgreSQL (synchronous_commit, work_mem,
+ * session_replication_role, statement_timeout и т.д.), которые выставляются каждому соединению загрузки
+ * сразу после открытия и сбрасываются перед закрытием.
+ * Профили описываются в файле properties строками вида имя_профиля.параметр=значение.
+ * Параметры выставляются в отдельной транзакции, поэтому откат загрузки их не отменяет.
+ */
+public class SessionProfile {
+
+    /**
+     * Допустимое имя параметра сеанса, в том числе параметра расширения вида расширение.параметр
+     */
+    private static final String SETTING_NAME_PATTERN = "[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?";
+
+    private final String name;
+
+    /**
+     * Параметры профиля в порядке имён
+     */
+    private final Map<String, String> settings;
+
+    /**
+     * Значения параметров, выставленные сервером при последнем применении профиля
+     */
+    private volatile Map<String, String> appliedSettings = null;
+
+    private SessionProfile(String name, Map<String, String> settings) {
+        this.name = name;
+        this.settings = settings;
+    }
+
+    /**
+     * Прочитать профиль из файла
+     *
+     * @param filePath путь к файлу профилей
+     * @param name     имя профиля
+     * @return профиль сеанса
+     * @throws IOException ошибка чтения файла
+     * @throws Exception   профиль не найден или имя параметра недопустимо
+     */
+    public static SessionProfile load(String filePath, String name) throws IOException, Exception {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        String prefix = name + ".";
+        Map<String, String> settings = new TreeMap<>();
+        for (var key : properties.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            String setting = key.substring(prefix.length());
+            if (!setting.matches(SETTING_NAME_PATTERN)) {
+                throw new Exception(String.format("Недопустимое имя параметра сеанса %s в профиле %s", setting, name));
+            }
+            settings.put(setting, properties.getProperty(key).trim());
+        }
+        if (settings.isEmpty()) {
+            throw new Exception(String.format("Профиль %s не найден в файле %s", name, filePath));
+        }
+        return new SessionProfile(name, settings);
+    }
+
+    /**
+     * Открыть соединение с БД и выставить ему параметры профиля.
+     * При закрытии сеанса параметры сбрасываются, затем соединение закрывается.
+     *
+     * @param connectionUrl строка соединения с БД
+     * @param profile       профиль сеанса, null - параметры не выставляются
+     * @return сеанс с открытым соединением
+     * @throws SQLException невозможно открыть соединение или сервер не принял параметр
+     */
+    public static Session open(String connectionUrl, SessionProfile profile) throws SQLException {
+        Connection connection = DriverManager.getConnection(connectionUrl);
+        try {
+            if (profile != null) {
+                profile.apply(connection);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return new Session(profile, connection);
+    }
+
+    /**
+     * Выставить параметры профиля соединению и зафиксировать их
+     *
+     * @param connection соединение с БД
+     * @throws SQLException сервер не принял параметр
+     */
+    public void apply(Connection connection) throws SQLException {
+        Map<String, String> applied = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("select set_config(?, ?, false)")) {
+            for (var setting : settings.entrySet()) {
+                statement.setString(1, setting.getKey());
+                statement.setString(2, setting.getValue());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    applied.put(setting.getKey(), resultSet.getString(1));
+                }
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+        appliedSettings = applied;
+    }
+
+    /**
+     * Сбросить параметры профиля соединения к значениям по умолчанию.
+     * Незафиксированные изменения соединения откатываются.
+     *
+     * @param connection соединение с БД
+     * @throws SQLException ошибка сброса параметра
+     */
+    public void reset(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (var setting : settings.keySet()) {
+                statement.execute("reset " + setting);
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Возвращает имя профиля.
+     *
+     * @return имя профиля
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Возвращает значения параметров, выставленные сервером, а если профиль ещё не применялся - значения из файла.
+     *
+     * @return параметры по именам
+     */
+    public Map<String, String> getAppliedSettings() {
+        Map<String, String> applied = appliedSettings;
+        return applied == null ? settings : applied;
+    }
+
+    @Override
+    public String toString() {
+        List<String> values = new ArrayList<>();
+        for (var setting : getAppliedSettings().entrySet()) {
+            values.add(setting.getKey() + "=" + setting.getValue());
+        }
+        return String.format("Профиль сеанса %s: %s", name, String.join(", ", values));
+    }
+
+    /**
+     * Соединение с выставленным профилем сеанса.
+     * При закрытии сбрасывает параметры профиля и закрывает соединение.
+     */
+    public static class Session implements AutoCloseable {
+
+        private final SessionProfile profile;
+
+        private final Connection connection;
+
+        private Session(SessionProfile profile, Connection connection) {
+            this.profile = profile;
+            this.connection = connection;
+        }
+
+        /**
+         * Возвращает соединение с БД.
+         *
+         * @return соединение
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Сбросить параметры профиля и закрыть соединение.
+         * Если параметры сбросить не удалось, они сбросятся вместе с сеансом при закрытии соединения.
+         *
+         * @throws SQLException ошибка закрытия соединения
+         */
+        @Override
+        public void close() throws SQLException {
+            if (profile != null && !connection.isClosed()) {
+                try {
+                    profile.reset(connection);
+                } catch (SQLException ignored) {
+                    // соединение недоступно
+                }
+            }
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package filltable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Источник байтов из потока, например распакованного сжатого файла.
+ * Данные читаются в буфер в памяти, при сдвиге окна сохраняемые данные переносятся в начало буфера.
+ * Смещения считаются в байтах потока, для сжатого файла - в распакованных байтах.
+ */
+public class StreamByteSource implements ByteSource {
+
+    /**
+     * Начальный размер буфера
+     */
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final InputStream in;
+
+    private byte[] array = new byte[BUFFER_SIZE];
+
+    private ByteBuffer buffer = ByteBuffer.wrap(array, 0, 0);
+
+    /**
+     * Позиция начала буфера в потоке
+     */
+    private long bufferOffset;
+
+    /**
+     * Создаёт источник байтов, пропуская начало потока
+     *
+     * @param in    поток
+     * @param start количество байтов, пропускаемых с начала потока
+     * @throws IOException ошибка чтения потока или поток короче пропускаемой части
+     */
+    public StreamByteSource(InputStream in, long start) throws IOException {
+        this.in = in;
+        this.bufferOffset = start;
+
+        // начало потока приходится прочитать, но не разбирать
+        long skipped = 0;
+        while (skipped < start) {
+            int n = in.read(array, 0, (int) Math.min(array.length, start - skipped));
+            if (n < 0) {
+                throw new IOException(String.format("Поток короче %d байт", start));
+            }
+            skipped += n;
+        }
+        fill(0);
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public boolean refill(int keepFrom) throws IOException {
+        int kept = buffer.limit() - keepFrom;
+        bufferOffset += keepFrom;
+        if (kept >= array.length / 2) {
+            // строка занимает большую часть буфера, иначе буфер будет почти пустым
+            byte[] newArray = new byte[(int) Math.min(Integer.MAX_VALUE - 8, (long) array.length * 2)];
+            System.arraycopy(array, keepFrom, newArray, 0, kept);
+            array = newArray;
+        } else {
+            System.arraycopy(array, keepFrom, array, 0, kept);
+        }
+        return fill(kept);
+    }
+
+    @Override
+    public long getBufferOffset() {
+        return bufferOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Дочитывает поток в буфер после сохранённых данных, пока буфер не заполнится, поток не закончится
+     * или в потоке не кончатся данные, доступные без ожидания
+     *
+     * @param kept количество сохранённых данных в начале буфера
+     * @return true - добавлены новые данные, false - поток закончился
+     * @throws IOException ошибка чтения потока
+     */
+    private boolean fill(int kept) throws IOException {
+        int length = kept;
+        while (length < array.length) {
+            int n = in.read(array, length, array.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+            // данные из канала приходят по мере записи, разбор начинается, не дожидаясь заполнения буфера
+            if (in.available() == 0) {
+                break;
+            }
+        }
+        buffer = ByteBuffer.wrap(array, 0, length);
+        return length > kept;
+    }
+}
@@ -0,0 +1,880 @@
+package filltable;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Класс таблицы базы данных.
+ * Позволяет вставлять значения в таблицу.
+ */
+public class Table {
+
+    private final Connection connection;
+    private final String tableName;
+
+    /**
+     * Имена колонок таблицы
+     */
+    private final Set<String> columns = new HashSet<>();
+
+    /**
+     * Типы колонок таблицы по именам колонок в нижнем регистре
+     */
+    private final Map<String, ColumnType> columnTypes = new HashMap<>();
+
+    /**
+     * Типы колонок для вставки, в порядке параметров запроса
+     */
+    private ColumnType[] insertColumnTypes = null;
+
+    /**
+     * Имена колонок для вставки, в порядке параметров запроса
+     */
+    private String[] insertColumnNames = null;
+
+    /**
+     * запрос для вставки значений
+     */
+    private PreparedStatement insertStatement = null;
+
+    /**
+     * Наибольшее количество запросов на вставку, подготовленных для разных наборов колонок
+     */
+    private static final int STATEMENT_CACHE_SIZE = 16;
+
+    /**
+     * Подготовленные запросы на вставку по тексту запроса, от давно использованных к недавним.
+     * При повторной загрузке тех же колонок в этом соединении запрос не подготавливается заново.
+     */
+    private final Map<String, PreparedStatement> insertStatements = new LinkedHashMap<>();
+
+    private int insertColumnsCount = -1;
+
+    /**
+     * Список колонок для вставки через запятую, в порядке задания
+     */
+    private String insertColumnsList = null;
+
+    /**
+     * Начало запроса на вставку до списка значений: insert into таблица (колонки) values
+     */
+    private String insertQueryPrefix = null;
+
+    /**
+     * Параметры одной строки в запросе на вставку: (?,?,...)
+     */
+    private String rowPlaceholders = null;
+
+    /**
+     * Колонка промежуточной таблицы с порядковым номером загруженной строки.
+     * При совпадении ключей в файле по ней выбирается последняя строка.
+     */
+    private static final String LOAD_ROW_COLUMN = "fill_load_row";
+
+    /**
+     * Максимальное количество параметров в одном запросе, ограничение протокола PostgreSQL
+     */
+    private static final int MAX_STATEMENT_PARAMETERS = 65535;
+
+    /**
+     * Запрос на вставку нескольких строк одним insert ... values (...),(...),...
+     */
+    private PreparedStatement valuesStatement = null;
+
+    /**
+     * Количество строк, на которое подготовлен valuesStatement
+     */
+    private int valuesStatementRowsCount = 0;
+
+    /**
+     * Размер буфера строк COPY в байтах, по достижении которого он отправляется на сервер
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Текущая операция COPY, null - не выполняется
+     */
+    private CopyIn copyIn = null;
+
+    /**
+     * Накопленные, но ещё не отправленные строки COPY в текстовом формате
+     */
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+    /**
+     * Количество байтов в буфере строк COPY
+     */
+    private int copyBufferLength = 0;
+
+    /**
+     * Собираемая строка COPY до перевода в байты
+     */
+    private final StringBuilder copyRowBuilder = new StringBuilder();
+
+    /**
+     * Создаёт экземпляр таблицы.
+     * Собирает информацию о колонках таблицы.
+     *
+     * @param connection соединение с БД
+     * @param tableName  название таблицы
+     * @throws SQLException невозможно получить доступ к таблице
+     */
+    public Table(Connection connection, String tableName) throws SQLException {
+
+        this.connection = connection;
+        this.tableName = tableName;
+
+        ResultSetMetaData metaData = getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String column = metaData.getColumnName(i).toLowerCase();
+            columns.add(column);
+            columnTypes.put(column, ColumnType.of(metaData.getColumnType(i), metaData.getColumnTypeName(i)));
+        }
+    }
+
+    /**
+     * Создаёт экземпляр той же таблицы в другом соединении.
+     * Колонки и их типы берутся у образца, запрос метаданных к БД не выполняется.
+     * Колонки для вставки не копируются, их нужно задать заново.
+     *
+     * @param connection соединение с БД
+     * @param table      образец таблицы
+     */
+    public Table(Connection connection, Table table) {
+        this(connection, table, table.tableName);
+    }
+
+    /**
+     * Создаёт экземпляр таблицы с такими же колонками, как у образца, но с другим названием,
+     * например секции секционированной таблицы: колонки секции совпадают с колонками родительской таблицы.
+     * Запрос метаданных к БД не выполняется, колонки для вставки нужно задать заново.
+     *
+     * @param connection соединение с БД
+     * @param table      образец таблицы
+     * @param tableName  название таблицы
+     */
+    public Table(Connection connection, Table table, String tableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.columns.addAll(table.columns);
+        this.columnTypes.putAll(table.columnTypes);
+    }
+
+    /**
+     * получить колонки таблицы
+     *
+     * @return Уникальное множество колонок таблицы
+     */
+    public Set<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Получить тип колонки таблицы
+     *
+     * @param column имя колонки
+     * @return тип колонки, null - в таблице нет такой колонки
+     */
+    public ColumnType getColumnType(String column) {
+        return columnTypes.get(column.toLowerCase());
+    }
+
+    /**
+     * получить название таблицы
+     *
+     * @return название таблицы
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Создать нежурналируемую промежуточную таблицу с такими же колонками и значениями по умолчанию.
+     * В неё можно загрузить данные отдельно от основной таблицы, а затем перенести их одним запросом.
+     * Дополнительная колонка нумерует строки в порядке загрузки.
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @param isTemporary      временная таблица, видимая только в этом соединении
+     * @throws SQLException невозможно создать таблицу
+     * @see Table#insertFrom(String) перенести данные из промежуточной таблицы
+     * @see Table#upsertFrom(String, List, boolean) перенести данные с обновлением совпавших по ключу строк
+     */
+    public void createStagingTable(String stagingTableName, boolean isTemporary) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(String.format("create %s table %s (like %s including defaults)",
+                    isTemporary ? "temporary" : "unlogged", stagingTableName, tableName));
+            statement.execute(String.format("alter table %s add column %s bigserial",
+                    stagingTableName, LOAD_ROW_COLUMN));
+        }
+    }
+
+    /**
+     * Перенести строки из промежуточной таблицы в заранее заданные колонки одним запросом на сервере.
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @return количество перенесённых строк
+     * @throws SQLException ошибка вставки
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public int insertFrom(String stagingTableName) throws SQLException, Exception {
+        if (insertColumnsList == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        try (var statement = connection.createStatement()) {
+            return statement.executeUpdate(String.format("insert into %s (%s) select %s from %s",
+                    tableName, insertColumnsList, insertColumnsList, stagingTableName));
+        }
+    }
+
+    /**
+     * Перенести строки из промежуточной таблицы одним запросом insert ... select ... on conflict.
+     * Если в промежуточной таблице несколько строк с одним ключом, переносится загруженная последней.
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @param keyColumns       ключевые колонки, на них должен быть уникальный индекс или ограничение
+     * @param isUpdate         true - обновить совпавшие по ключу строки, false - оставить как есть
+     * @return количество вставленных и обновлённых строк
+     * @throws SQLException ошибка переноса
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public int upsertFrom(String stagingTableName, List<String> keyColumns, boolean isUpdate)
+            throws SQLException, Exception {
+        if (insertColumnsList == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        String keys = String.join(",", keyColumns);
+        List<String> updateColumns = getNonKeyInsertColumns(keyColumns);
+
+        String action = "do nothing";
+        if (isUpdate && !updateColumns.isEmpty()) {
+            List<String> assignments = new ArrayList<>();
+            for (var column : updateColumns) {
+                assignments.add(String.format("%s = excluded.%s", column, column));
+            }
+            action = "do update set " + String.join(",", assignments);
+        }
+
+        try (var statement = connection.createStatement()) {
+            return statement.executeUpdate(String.format("insert into %s (%s) %s on conflict (%s) %s",
+                    tableName, insertColumnsList, selectLastByKey(stagingTableName, keys), keys, action));
+        }
+    }
+
+    /**
+     * Перенести строки из промежуточной таблицы одним запросом merge (PostgreSQL 15 и новее).
+     * В отличие от on conflict, не требует уникального индекса по ключевым колонкам.
+     * Если в промежуточной таблице несколько строк с одним ключом, переносится загруженная последней.
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @param keyColumns       ключевые колонки
+     * @param isUpdate         true - обновить совпавшие по ключу строки, false - оставить как есть
+     * @return количество вставленных и обновлённых строк
+     * @throws SQLException ошибка переноса
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public int mergeFrom(String stagingTableName, List<String> keyColumns, boolean isUpdate)
+            throws SQLException, Exception {
+        if (insertColumnsList == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        List<String> conditions = new ArrayList<>();
+        for (var column : keyColumns) {
+            conditions.add(String.format("t.%s = s.%s", column, column));
+        }
+        List<String> updateColumns = getNonKeyInsertColumns(keyColumns);
+
+        String matched = "";
+        if (isUpdate && !updateColumns.isEmpty()) {
+            List<String> assignments = new ArrayList<>();
+            for (var column : updateColumns) {
+                assignments.add(String.format("%s = s.%s", column, column));
+            }
+            matched = " when matched then update set " + String.join(",", assignments);
+        }
+        List<String> values = new ArrayList<>();
+        for (var column : insertColumnNames) {
+            values.add("s." + column);
+        }
+
+        try (var statement = connection.createStatement()) {
+            return statement.executeUpdate(String.format(
+                    "merge into %s t using (%s) s on %s%s when not matched then insert (%s) values (%s)",
+                    tableName, selectLastByKey(stagingTableName, String.join(",", keyColumns)),
+                    String.join(" and ", conditions), matched, insertColumnsList, String.join(",", values)));
+        }
+    }
+
+    /**
+     * Очистить таблицу
+     *
+     * @param tableName название таблицы
+     * @throws SQLException невозможно очистить таблицу
+     */
+    public void truncateTable(String tableName) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(String.format("truncate %s", tableName));
+        }
+    }
+
+    /**
+     * Узнать, существует ли таблица
+     *
+     * @param tableName название таблицы, может включать схему
+     * @return true - таблица существует
+     * @throws SQLException ошибка запроса
+     */
+    public boolean isTableExists(String tableName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select to_regclass(?) is not null")) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Получить номер процесса сервера, обслуживающего соединение
+     *
+     * @return номер процесса
+     * @throws SQLException ошибка запроса
+     */
+    public int getBackendPid() throws SQLException {
+        try (var statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select pg_backend_pid()")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Найти промежуточные таблицы параллельной загрузки с фиксацией ATOMIC, оставшиеся от загрузок,
+     * чей процесс сервера уже завершён, например, после аварийного завершения программы.
+     * Промежуточные таблицы называются {@code <таблица>_fill_load_<номер процесса сервера>_<номер части>}
+     * и лежат в схеме таблицы.
+     *
+     * @return названия таблиц со схемой
+     * @throws SQLException ошибка запроса
+     */
+    public List<String> getOrphanStagingTables() throws SQLException {
+        // substring с регулярным выражением возвращает номер процесса или NULL, если имя не подходит
+        String query = "select format('%I.%I', n.nspname, c.relname) " +
+                "from pg_class t " +
+                "join pg_class c on c.relnamespace = t.relnamespace and c.relkind = 'r' " +
+                "and left(c.relname, length(t.relname)) = t.relname " +
+                "join pg_namespace n on n.oid = c.relnamespace " +
+                "cross join lateral (select substring(substring(c.relname from length(t.relname) + 1) " +
+                "from '^_fill_load_([0-9]{1,9})_[0-9]+$')::int as pid) staging " +
+                "where t.oid = to_regclass(?) and staging.pid is not null " +
+                "and staging.pid not in (select pid from pg_stat_activity where pid is not null)";
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Удалить таблицу, если она существует
+     *
+     * @param tableName название таблицы
+     * @throws SQLException невозможно удалить таблицу
+     */
+    public void dropTable(String tableName) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(String.format("drop table if exists %s", tableName));
+        }
+    }
+
+    /**
+     * Установить колонки для вставки.
+     *
+     * @param insertColumns имена колонок для вставки
+     * @throws SQLException невозможно подготовить запрос на вставку для данных колонок
+     * @throws Exception    таблица не содержит заданных колонок
+     */
+    public void setInsertColumns(List<String> insertColumns) throws SQLException, Exception {
+        for (var column : insertColumns) {
+            if (!columns.contains(column.toLowerCase())) {
+                throw new Exception(String.format("Таблица %s не содержит колонки %s", tableName, column));
+            }
+        }
+
+        insertColumnsCount = insertColumns.size();
+        insertColumnsList = String.join(",", insertColumns);
+        insertColumnNames = insertColumns.toArray(new String[0]);
+        insertColumnTypes = new ColumnType[insertColumnsCount];
+        for (int i = 0; i < insertColumnsCount; i++) {
+            insertColumnTypes[i] = columnTypes.get(insertColumnNames[i].toLowerCase());
+        }
+        insertQueryPrefix = String.format("insert into %s (%s) values", tableName, insertColumnsList);
+        rowPlaceholders = "(" + "?,".repeat(insertColumnsCount - 1) + "?)";
+
+        insertStatement = prepareInsert(insertQueryPrefix + rowPlaceholders);
+        if (valuesStatement != null) {
+            valuesStatement.close();
+        }
+        valuesStatement = null;
+        valuesStatementRowsCount = 0;
+    }
+
+    /**
+     * Подготовить запрос на вставку или взять подготовленный ранее в этом соединении для тех же колонок.
+     * Если подготовленных запросов больше STATEMENT_CACHE_SIZE, давно не использованный закрывается.
+     *
+     * @param sql текст запроса
+     * @return подготовленный запрос без параметров и пачек
+     * @throws SQLException невозможно подготовить запрос
+     */
+    private PreparedStatement prepareInsert(String sql) throws SQLException {
+        PreparedStatement statement = insertStatements.remove(sql);
+        if (statement != null && !statement.isClosed()) {
+            // после неудачной загрузки в запросе могли остаться параметры и неотправленная пачка
+            statement.clearBatch();
+            statement.clearParameters();
+        } else {
+            statement = connection.prepareStatement(sql);
+        }
+        insertStatements.put(sql, statement);
+
+        if (insertStatements.size() > STATEMENT_CACHE_SIZE) {
+            Iterator<PreparedStatement> eldest = insertStatements.values().iterator();
+            PreparedStatement evicted = eldest.next();
+            eldest.remove();
+            evicted.close();
+        }
+        return statement;
+    }
+
+    /**
+     * Закрыть подготовленные запросы на вставку, например перед заменой таблицы после изменения её структуры.
+     * Соединение не закрывается.
+     *
+     * @throws SQLException ошибка закрытия запроса
+     */
+    public void closeStatements() throws SQLException {
+        SQLException failure = null;
+        for (var statement : insertStatements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        insertStatements.clear();
+        insertStatement = null;
+        if (valuesStatement != null) {
+            valuesStatement.close();
+            valuesStatement = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Прочитать версию структуры таблицы: имена, типы и модификаторы типов колонок из каталога.
+     * Версия меняется при добавлении, удалении, переименовании колонки и смене её типа,
+     * поэтому по ней можно узнать, что сохранённые метаданные таблицы устарели.
+     *
+     * @param connection соединение с БД
+     * @param tableName  название таблицы
+     * @return версия структуры
+     * @throws SQLException таблица не найдена или ошибка запроса к каталогу
+     */
+    public static String readSchemaVersion(Connection connection, String tableName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select string_agg(attname || ':' || atttypid || ':' || atttypmod, ',' order by attnum) " +
+                        "from pg_attribute where attrelid = ?::regclass and attnum > 0 and not attisdropped")) {
+            statement.setString(1, tableName);
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Получить преобразователь значений строки файла по типам колонок для вставки
+     *
+     * @return преобразователь значений
+     * @throws Exception не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public RowConverter getRowConverter() throws Exception {
+        if (insertColumnTypes == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        return new RowConverter(insertColumnNames, insertColumnTypes);
+    }
+
+    /**
+     * Установить значение для вставки по индексу колонки
+     * Значения устанавливаются для заранее заданных колонок.
+     * Строка переводится в тип колонки, значение, уже переведённое RowConverter, передаётся как есть.
+     *
+     * @param index индекс колонки
+     * @param value вставляемое значение
+     * @throws IndexOutOfBoundsException индекс выходит за допустимые границы
+     * @throws Exception                 не были предварительно указаны колонки для вставки
+     *                                   или значение не соответствует типу колонки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     * @see Table#getRowConverter() перевести значения заранее
+     */
+    public void setValue(int index, Object value) throws IndexOutOfBoundsException, Exception {
+        if (insertStatement == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        if (index < 0 || index >= insertColumnsCount) {
+            throw new IndexOutOfBoundsException("Индекс выходит за допустимые границы");
+        }
+        bindValue(insertStatement, index, value);
+    }
+
+    /**
+     * Передаёт значение параметром запроса по типу колонки для вставки.
+     * В запросе на несколько строк параметры строк идут подряд, колонка определяется остатком от деления.
+     *
+     * @param statement      запрос
+     * @param parameterIndex индекс параметра запроса, начиная с 0
+     * @param value          значение из файла или уже переведённое значение
+     * @throws Exception значение не соответствует типу колонки или ошибка передачи параметра
+     */
+    private void bindValue(PreparedStatement statement, int parameterIndex, Object value) throws Exception {
+        int column = parameterIndex % insertColumnsCount;
+        if (value instanceof String && insertColumnTypes[column].isChecked()) {
+            value = insertColumnTypes[column].convert(insertColumnNames[column], (String) value);
+        }
+        insertColumnTypes[column].bind(statement, parameterIndex + 1, value);
+    }
+
+    /**
+     * Осуществляет вставку предварительно заданных значений для заданных колонок
+     *
+     * @throws SQLException ошибка вставки
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     * @see Table#setValue(int, Object) задать вставляемое значение для колонки
+     */
+    public void insert() throws SQLException, Exception {
+        if (insertStatement == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        insertStatement.execute();
+    }
+
+    /**
+     * Вставляет строки пачкой через addBatch/executeBatch.
+     * При ошибке неизвестно, какая именно строка не прошла, пачку нужно откатить и разбирать по строкам.
+     *
+     * @param rows строки для вставки, значения должны соответствовать колонкам для вставки
+     * @throws SQLException ошибка вставки пачки
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public void insertBatch(List<FileRow> rows) throws SQLException, Exception {
+        if (insertStatement == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        try {
+            for (var row : rows) {
+                for (int i = 0; i < insertColumnsCount; i++) {
+                    setValue(i, row.getValues().get(i));
+                }
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+        } finally {
+            insertStatement.clearBatch();
+        }
+    }
+
+    /**
+     * Вставляет строки одним запросом insert ... values (...),(...),...
+     * Если строк больше, чем допускает ограничение на количество параметров запроса, выполняется несколько запросов.
+     * Запрос на полную пачку подготавливается один раз и переиспользуется, пока совпадает количество строк.
+     *
+     * @param rows строки для вставки, значения должны соответствовать колонкам для вставки
+     * @throws SQLException ошибка вставки
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public void insertValues(List<FileRow> rows) throws SQLException, Exception {
+        if (insertStatement == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+
+        int maxRowsInStatement = Math.max(1, MAX_STATEMENT_PARAMETERS / insertColumnsCount);
+        for (int from = 0; from < rows.size(); from += maxRowsInStatement) {
+            List<FileRow> part = rows.subList(from, Math.min(rows.size(), from + maxRowsInStatement));
+
+            if (valuesStatement == null || valuesStatementRowsCount != part.size()) {
+                if (valuesStatement != null) {
+                    valuesStatement.close();
+                }
+                valuesStatement = connection.prepareStatement(insertQueryPrefix +
+                        (rowPlaceholders + ",").repeat(part.size() - 1) + rowPlaceholders);
+                valuesStatementRowsCount = part.size();
+            }
+
+            int parameterIndex = 0;
+            for (var row : part) {
+                for (var value : row.getValues()) {
+                    bindValue(valuesStatement, parameterIndex++, value);
+                }
+            }
+            valuesStatement.execute();
+        }
+    }
+
+    /**
+     * Начинает потоковую загрузку строк через COPY ... FROM STDIN в заранее заданные колонки.
+     * Пока загрузка не завершена, соединение нельзя использовать для других запросов.
+     *
+     * @throws SQLException невозможно начать COPY
+     * @throws Exception    не были предварительно указаны колонки для вставки или COPY уже начат
+     * @see Table#setInsertColumns(List) задать колонки для вставки
+     */
+    public void beginCopy() throws SQLException, Exception {
+        if (insertColumnsList == null) {
+            throw new Exception("Не указаны колонки для вставки");
+        }
+        if (copyIn != null) {
+            throw new Exception("COPY уже начат");
+        }
+        copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn(String.format("copy %s (%s) from stdin", tableName, insertColumnsList));
+    }
+
+    /**
+     * Добавляет строку в текущий COPY.
+     * Значения должны соответствовать колонкам для вставки, null передаётся как NULL.
+     * Строки накапливаются в буфере и отправляются на сервер пачками.
+     *
+     * @param values значения колонок строки
+     * @throws SQLException ошибка отправки данных на сервер
+     * @throws Exception    COPY не начат или количество значений не совпадает с количеством колонок
+     * @see Table#beginCopy() начать COPY
+     */
+    public void copyRow(List<?> values) throws SQLException, Exception {
+        if (copyIn == null) {
+            throw new Exception("COPY не начат");
+        }
+        if (values.size() != insertColumnsCount) {
+            throw new IndexOutOfBoundsException("Количество значений не совпадает с количеством колонок для вставки");
+        }
+
+        copyRowBuilder.setLength(0);
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                copyRowBuilder.append('\t');
+            }
+            Object value = values.get(i);
+            appendCopyValue(value == null ? null : value.toString());
+        }
+        copyRowBuilder.append('\n');
+
+        appendCopyBytes(copyRowBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Добавляет в текущий COPY готовую строку в текстовом формате COPY, без разбора и перекодирования.
+     *
+     * @param line строка COPY в UTF-8, заканчивающаяся переводом строки
+     * @throws SQLException ошибка отправки данных на сервер
+     * @throws Exception    COPY не начат
+     * @see DataFile#getCopyLine() получить строку файла в формате COPY
+     */
+    public void copyLine(byte[] line) throws SQLException, Exception {
+        if (copyIn == null) {
+            throw new Exception("COPY не начат");
+        }
+        appendCopyBytes(line);
+    }
+
+    /**
+     * Завершает COPY, отправив оставшиеся строки.
+     *
+     * @return количество загруженных строк
+     * @throws SQLException сервер отклонил данные
+     * @throws Exception    COPY не начат
+     */
+    public long endCopy() throws SQLException, Exception {
+        if (copyIn == null) {
+            throw new Exception("COPY не начат");
+        }
+        try {
+            flushCopyBuffer();
+            return copyIn.endCopy();
+        } finally {
+            copyIn = null;
+        }
+    }
+
+    /**
+     * Отменяет текущий COPY, если он выполняется.
+     * Ошибки отмены игнорируются, так как после неё транзакция всё равно откатывается.
+     */
+    public void cancelCopy() {
+        copyBufferLength = 0;
+        if (copyIn == null) {
+            return;
+        }
+        try {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        } catch (SQLException ignored) {
+            // соединение уже в ошибке, откат транзакции всё равно последует
+        } finally {
+            copyIn = null;
+        }
+    }
+
+    /**
+     * Дописывает значение в собираемую строку COPY, экранируя спецсимволы текстового формата COPY.
+     * Обратная косая черта экранируется, чтобы значение попало в таблицу так же, как при insert.
+     *
+     * @param value значение, null - NULL
+     */
+    private void appendCopyValue(String value) {
+        if (value == null) {
+            copyRowBuilder.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    copyRowBuilder.append("\\\\");
+                    break;
+                case '\t':
+                    copyRowBuilder.append("\\t");
+                    break;
+                case '\n':
+                    copyRowBuilder.append("\\n");
+                    break;
+                case '\r':
+                    copyRowBuilder.append("\\r");
+                    break;
+                default:
+                    copyRowBuilder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Отправляет накопленные строки COPY на сервер.
+     *
+     * @throws SQLException ошибка отправки данных
+     */
+    private void flushCopyBuffer() throws SQLException {
+        if (copyBufferLength == 0) {
+            return;
+        }
+        copyIn.writeToCopy(copyBuffer, 0, copyBufferLength);
+        copyBufferLength = 0;
+    }
+
+    /**
+     * Дописывает байты строки COPY в буфер, заполненный буфер отправляется на сервер.
+     *
+     * @param bytes байты строки COPY
+     * @throws SQLException ошибка отправки данных
+     */
+    private void appendCopyBytes(byte[] bytes) throws SQLException {
+        if (copyBufferLength + bytes.length > copyBuffer.length) {
+            flushCopyBuffer();
+            if (bytes.length > copyBuffer.length) {
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, copyBuffer, copyBufferLength, bytes.length);
+        copyBufferLength += bytes.length;
+    }
+
+    /**
+     * Запрос колонок для вставки из промежуточной таблицы, по одной последней загруженной строке на ключ
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @param keys             ключевые колонки через запятую
+     * @return запрос select
+     */
+    private String selectLastByKey(String stagingTableName, String keys) {
+        return String.format("select distinct on (%s) %s from %s order by %s, %s desc",
+                keys, insertColumnsList, stagingTableName, keys, LOAD_ROW_COLUMN);
+    }
+
+    /**
+     * Колонки для вставки, не входящие в ключ, - их значения обновляются при совпадении ключа
+     *
+     * @param keyColumns ключевые колонки
+     * @return неключевые колонки для вставки
+     */
+    private List<String> getNonKeyInsertColumns(List<String> keyColumns) {
+        Set<String> keys = new HashSet<>();
+        for (var column : keyColumns) {
+            keys.add(column.toLowerCase());
+        }
+        List<String> result = new ArrayList<>();
+        for (var column : insertColumnNames) {
+            if (!keys.contains(column.toLowerCase())) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Узнать, входит ли колонка в колонки для вставки
+     *
+     * @param column имя колонки
+     * @return true - колонка входит в колонки для вставки
+     */
+    public boolean isInsertColumn(String column) {
+        if (insertColumnNames == null) {
+            return false;
+        }
+        for (var insertColumn : insertColumnNames) {
+            if (insertColumn.equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Получить метаданные таблицы
+     *
+     * @return метаданные
+     * @throws SQLException невозможно получить метаданные таблицы
+     */
+    private ResultSetMetaData getMetaData() throws SQLException {
+        return connection
+                .createStatement()
+                .executeQuery("select * from " + tableName + " where 1 = 0")
+                .getMetaData();
+    }
+}
@@ -0,0 +1,142 @@
+package filltable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Загрузка с обновлением строк, совпавших по ключевым колонкам (режим upsert).
+ * Строки файла сначала загружаются во временную промежуточную таблицу обычными способами,
+ * затем переносятся в основную таблицу одним запросом insert ... on conflict или merge (PostgreSQL 15 и новее).
+ * Совпадения ключей разбирает сервер за один запрос, а не построчно с точками сохранения.
+ * Если в файле несколько строк с одним ключом, в таблицу попадает последняя из них.
+ */
+public class Upsert {
+
+    /**
+     * Первая версия PostgreSQL с запросом merge
+     */
+    private static final int MERGE_MIN_VERSION = 15;
+
+    private final Connection connection;
+
+    private final Table table;
+
+    private final List<String> keyColumns;
+
+    private final boolean isUpdate;
+
+    private final boolean isMerge;
+
+    /**
+     * Временная промежуточная таблица, null - ещё не создана
+     */
+    private Table stagingTable = null;
+
+    /**
+     * Количество вставленных и обновлённых строк основной таблицы
+     */
+    private long rowsCount = 0;
+
+    /**
+     * Создаёт загрузку с обновлением и проверяет ключевые колонки
+     *
+     * @param connection соединение с БД
+     * @param table      основная таблица с заданными колонками для вставки
+     * @param keyColumns ключевые колонки
+     * @param onConflict действие при совпадении ключа
+     * @param isMerge    переносить строки запросом merge вместо insert ... on conflict
+     * @throws SQLException ошибка получения версии сервера
+     * @throws Exception    ключевой колонки нет среди колонок для вставки или сервер не поддерживает merge
+     */
+    public Upsert(Connection connection, Table table, List<String> keyColumns, OnConflict onConflict,
+                  boolean isMerge) throws SQLException, Exception {
+        for (var column : keyColumns) {
+            if (!table.isInsertColumn(column)) {
+                throw new Exception(String.format("Ключевая колонка %s отсутствует в файле", column));
+            }
+        }
+        if (isMerge) {
+            int version = connection.getMetaData().getDatabaseMajorVersion();
+            if (version < MERGE_MIN_VERSION) {
+                throw new Exception(String.format(
+                        "Запрос merge поддерживается начиная с PostgreSQL %d, версия сервера %d",
+                        MERGE_MIN_VERSION, version));
+            }
+        }
+
+        this.connection = connection;
+        this.table = table;
+        this.keyColumns = keyColumns;
+        this.isUpdate = onConflict == OnConflict.UPDATE;
+        this.isMerge = isMerge;
+    }
+
+    /**
+     * Создать временную промежуточную таблицу, в которую загружаются строки файла.
+     * Временная таблица видна только в своём соединении и удаляется при его закрытии.
+     *
+     * @param insertColumns колонки для вставки, те же, что у основной таблицы
+     * @return промежуточная таблица с заданными колонками для вставки
+     * @throws SQLException невозможно создать таблицу
+     * @throws Exception    ошибка задания колонок для вставки
+     */
+    public Table createStagingTable(List<String> insertColumns) throws SQLException, Exception {
+        // схема pg_temp не даёт задеть постоянную таблицу с таким же именем
+        String stagingTableName = "pg_temp.fill_upsert_" + table.getTableName().replaceAll("\\W", "_").toLowerCase();
+        table.dropTable(stagingTableName);
+        table.createStagingTable(stagingTableName, true);
+
+        stagingTable = new Table(connection, stagingTableName);
+        stagingTable.setInsertColumns(insertColumns);
+        return stagingTable;
+    }
+
+    /**
+     * Перенести строки из промежуточной таблицы в основную и очистить промежуточную таблицу.
+     * Вызывается перед каждой фиксацией изменений.
+     *
+     * @throws SQLException ошибка переноса
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     * @see Upsert#createStagingTable(List) создать промежуточную таблицу
+     */
+    public void merge() throws SQLException, Exception {
+        rowsCount += moveFrom(stagingTable.getTableName());
+        table.truncateTable(stagingTable.getTableName());
+    }
+
+    /**
+     * Перенести строки из промежуточной таблицы в основную одним запросом
+     *
+     * @param stagingTableName название промежуточной таблицы
+     * @return количество вставленных и обновлённых строк
+     * @throws SQLException ошибка переноса
+     * @throws Exception    не были предварительно указаны колонки для вставки
+     */
+    public int moveFrom(String stagingTableName) throws SQLException, Exception {
+        return isMerge
+                ? table.mergeFrom(stagingTableName, keyColumns, isUpdate)
+                : table.upsertFrom(stagingTableName, keyColumns, isUpdate);
+    }
+
+    /**
+     * Удалить временную промежуточную таблицу
+     *
+     * @throws SQLException невозможно удалить таблицу
+     */
+    public void dropStagingTable() throws SQLException {
+        if (stagingTable != null) {
+            table.dropTable(stagingTable.getTableName());
+            stagingTable = null;
+        }
+    }
+
+    /**
+     * Возвращает количество вставленных и обновлённых строк основной таблицы
+     *
+     * @return количество строк
+     */
+    public long getRowsCount() {
+        return rowsCount;
+    }
+}
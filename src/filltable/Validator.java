@@ -0,0 +1,309 @@
+package filltable;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Проверка файла без загрузки (режим validate).
+ * Строки данных делятся на диапазоны байтов, которые проверяются одновременно на всех ядрах:
+ * количество колонок, кодировка UTF-8 и соответствие значений типам колонок таблицы.
+ * К БД нужно только соединение для чтения метаданных таблицы, транзакция вставки не открывается.
+ * Все ошибки записываются в отчёт рядом с файлом в формате файла отклонённых строк
+ * с дополнительной колонкой позиции строки в файле.
+ * Сжатый файл и файл CSV проверяются одним потоком, распаковка идёт параллельно с проверкой.
+ * Стандартный ввод и именованный канал читаются один раз и проверяются одним потоком по мере поступления данных.
+ */
+public class Validator {
+
+    /**
+     * Расширение файла отчёта о проверке
+     */
+    public static final String REPORT_EXTENSION = ".report";
+
+    /**
+     * Имя колонки отчёта с позицией строки в файле в байтах
+     */
+    public static final String REPORT_OFFSET_COLUMN = "reject_offset";
+
+    private final Arguments arguments;
+
+    /**
+     * Создаёт проверку файлов
+     *
+     * @param arguments аргументы командной строки
+     */
+    public Validator(Arguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Проверить файл или несколько файлов и вывести итог по каждому
+     *
+     * @throws Exception ошибка получения списка файлов, соединения с БД или чтения файла
+     */
+    public void validate() throws Exception {
+        List<String> filePaths = InputFiles.resolve(arguments.getFilePath());
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+
+        long errorsCount = 0;
+        try (Connection connection = DriverManager.getConnection(arguments.getConnectionUrl())) {
+            Table table = new Table(connection, arguments.getTableName());
+            ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+            try {
+                for (var filePath : filePaths) {
+                    errorsCount += validateFile(filePath, table, executor, threadsCount);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (filePaths.size() > 1) {
+            System.out.printf("Проверено файлов: %d, ошибок: %d\n", filePaths.size(), errorsCount);
+        }
+    }
+
+    /**
+     * Проверить один файл по частям и записать отчёт об ошибках
+     *
+     * @param filePath     путь к файлу
+     * @param table        таблица, по типам колонок которой проверяются значения
+     * @param executor     потоки проверки
+     * @param threadsCount количество потоков проверки
+     * @return количество ошибочных строк
+     * @throws Exception ошибка чтения файла или записи отчёта
+     */
+    private long validateFile(String filePath, Table table, ExecutorService executor, int threadsCount)
+            throws Exception {
+        long startNanos = System.nanoTime();
+        String[] fileColumns;
+        ColumnsIntersection columnsIntersection;
+        List<FileRange> ranges;
+        // поток читается один раз: его проверяет текущий поток выполнения, продолжая чтение после заголовка
+        boolean isStream = InputFiles.isStream(filePath);
+        FileFormat format = arguments.getFileFormat();
+        DataFile headerFile = new DataFile(filePath, format);
+        try {
+            fileColumns = headerFile.getFileColumns();
+            columnsIntersection = headerFile.setDesiredColumns(table.getColumns(), arguments.getColumnMapping());
+            ranges = isStream ? List.of()
+                    : Compression.detect(filePath) == Compression.NONE && format.isSplittable()
+                    ? FileRange.split(filePath, threadsCount, format)
+                    : List.of(new FileRange(headerFile.getPosition(), -1));
+        } catch (Exception e) {
+            headerFile.close();
+            throw e;
+        }
+        if (!isStream) {
+            headerFile.close();
+        }
+
+        System.out.printf("Файл %s\n", filePath);
+        if (columnsIntersection.getColumnsIntersection().isEmpty()) {
+            headerFile.close();
+            System.out.println("Не было найдено соответствий колонок таблицы и файла");
+            return 0;
+        }
+        Main.showIntersectionMissingColumns(columnsIntersection);
+        table.setInsertColumns(columnsIntersection.getColumnsIntersection());
+        RowConverter rowConverter = table.getRowConverter();
+
+        List<FragmentResult> results = new ArrayList<>();
+        if (isStream) {
+            results.add(validateFragment(headerFile, rowConverter));
+        }
+        List<Future<FragmentResult>> futures = new ArrayList<>();
+        for (var range : ranges) {
+            futures.add(executor.submit(() -> {
+                DataFile dataFile = new DataFile(filePath, range, fileColumns, format);
+                dataFile.setColumnsIntersection(columnsIntersection);
+                return validateFragment(dataFile, rowConverter);
+            }));
+        }
+        for (var future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        long linesCount = 0;
+        long errorsCount = 0;
+        long bytesCount = 0;
+        for (var result : results) {
+            linesCount += result.linesCount;
+            errorsCount += result.errors.size() + result.skippedErrorsCount;
+            bytesCount += result.bytesCount;
+        }
+
+        String reportPath = InputFiles.getOutputBasePath(filePath) + REPORT_EXTENSION;
+        if (errorsCount > 0) {
+            writeReport(reportPath, fileColumns, format, results, arguments.getMaxErrors());
+        } else {
+            Files.deleteIfExists(Paths.get(reportPath));
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf(Locale.ROOT, "Проверено строк: %d (%.1f МБ) за %.1f с, %.1f МБ/с, ошибочных строк: %d\n",
+                linesCount, bytesCount / 1048576.0, seconds, bytesCount / 1048576.0 / seconds, errorsCount);
+        if (arguments.getMaxErrors() >= 0 && errorsCount > arguments.getMaxErrors()) {
+            System.out.printf("Первые %d ошибок записаны в файл %s\n", arguments.getMaxErrors(), reportPath);
+        } else if (errorsCount > 0) {
+            System.out.printf("Ошибки записаны в файл %s\n", reportPath);
+        } else {
+            System.out.println("Ошибок не найдено, файл можно загружать");
+        }
+        return errorsCount;
+    }
+
+    /**
+     * Проверить строки одного диапазона файла, файл закрывается.
+     * Номера строк считаются от начала диапазона, номера от начала файла получаются после проверки всех диапазонов.
+     *
+     * @param dataFile     файл, открытый на диапазоне, с построенным пересечением колонок
+     * @param rowConverter преобразователь значений по типам колонок
+     * @return количество строк и ошибки диапазона
+     * @throws IOException ошибка чтения файла
+     */
+    private FragmentResult validateFragment(DataFile dataFile, RowConverter rowConverter) throws IOException {
+        FragmentResult result = new FragmentResult();
+        int maxErrors = arguments.getMaxErrors();
+        try {
+            long startPosition = dataFile.getPosition();
+            while (true) {
+                long position = dataFile.getPosition();
+                boolean isCounted = false;
+                try {
+                    if (!dataFile.next()) {
+                        break;
+                    }
+                    result.linesCount++;
+                    isCounted = true;
+                    dataFile.checkEncoding();
+                    rowConverter.check(dataFile);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    // строка с неверным количеством колонок отвергается ещё при чтении
+                    if (!isCounted) {
+                        result.linesCount++;
+                    }
+                    // при заданном max-errors в отчёт попадают только первые ошибки, но считаются все
+                    if (maxErrors < 0 || result.errors.size() < maxErrors) {
+                        result.errors.add(new LineError(result.linesCount, position, dataFile.getLastLine(),
+                                e.getMessage()));
+                    } else {
+                        result.skippedErrorsCount++;
+                    }
+                }
+            }
+            result.bytesCount = dataFile.getPosition() - startPosition;
+        } finally {
+            dataFile.close();
+        }
+        return result;
+    }
+
+    /**
+     * Записать отчёт об ошибках в формате файла отклонённых строк.
+     * К колонкам файла добавляются номер строки от начала файла, позиция строки в байтах и причина ошибки.
+     *
+     * @param reportPath  путь к отчёту
+     * @param fileColumns имена колонок файла
+     * @param format      формат файла, в нём же записывается отчёт
+     * @param results     результаты проверки диапазонов в порядке следования в файле
+     * @param maxErrors   наибольшее количество ошибок в отчёте, -1 - без ограничения
+     * @throws IOException ошибка записи отчёта
+     */
+    private static void writeReport(String reportPath, String[] fileColumns, FileFormat format,
+                                    List<FragmentResult> results, int maxErrors) throws IOException {
+        try (BufferedWriter report = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportPath), StandardCharsets.UTF_8))) {
+            report.write(format.formatLine(fileColumns));
+            report.write(format.getDelimiter());
+            report.write(format.formatLine(RowErrorHandler.REJECT_LINE_COLUMN, REPORT_OFFSET_COLUMN,
+                    RowErrorHandler.REJECT_REASON_COLUMN));
+            report.write('\n');
+
+            long linesBefore = 0;
+            int written = 0;
+            for (var result : results) {
+                for (var error : result.errors) {
+                    if (maxErrors >= 0 && written == maxErrors) {
+                        return;
+                    }
+                    written++;
+                    // сообщение ошибки записывается по правилам формата файла, чтобы не нарушить его структуру
+                    report.write(error.line);
+                    report.write(format.getDelimiter());
+                    report.write(format.formatLine(String.valueOf(linesBefore + error.lineNumber),
+                            String.valueOf(error.position), String.valueOf(error.reason)));
+                    report.write('\n');
+                }
+                linesBefore += result.linesCount;
+            }
+        }
+    }
+
+    /**
+     * Результат проверки одного диапазона файла
+     */
+    private static class FragmentResult {
+
+        private long linesCount = 0;
+
+        private long bytesCount = 0;
+
+        /**
+         * Ошибки, попавшие в отчёт
+         */
+        private final List<LineError> errors = new ArrayList<>();
+
+        /**
+         * Количество ошибок сверх допустимого, не попавших в отчёт
+         */
+        private long skippedErrorsCount = 0;
+    }
+
+    /**
+     * Ошибка в строке файла
+     */
+    private static class LineError {
+
+        /**
+         * Номер строки данных от начала диапазона
+         */
+        private final long lineNumber;
+
+        /**
+         * Позиция начала строки в файле
+         */
+        private final long position;
+
+        private final String line;
+
+        private final String reason;
+
+        LineError(long lineNumber, long position, String line, String reason) {
+            this.lineNumber = lineNumber;
+            this.position = position;
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+}
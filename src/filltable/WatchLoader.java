@@ -0,0 +1,394 @@
+package filltable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загрузка файлов, появляющихся в папке (режим watch), для частых небольших загрузок.
+ * Программа работает, пока её не остановят: раз в заданное количество секунд просматривает папку
+ * и загружает готовые файлы по одному, каждый своей транзакцией. При остановке процесса загрузка
+ * текущего файла завершается, затем сеанс закрывается.
+ * Файл готов, если его размер и время изменения не поменялись с прошлого просмотра, поэтому
+ * дописываемый файл не загружается. Загруженный файл переносится в подпапку loaded, незагруженный - в failed,
+ * вместе с файлом отклонённых строк.
+ * Соединение, метаданные таблицы, пересечения колонок по заголовкам и подготовленные запросы на вставку
+ * сохраняются между файлами, поэтому небольшой файл загружается без повторной подготовки.
+ * Сохранённые метаданные сбрасываются, если при просмотре папки изменилась версия структуры таблицы
+ * в каталоге или если загрузка файла не удалась.
+ */
+public class WatchLoader {
+
+    /**
+     * Подпапка для загруженных файлов
+     */
+    public static final String LOADED_DIRECTORY = "loaded";
+
+    /**
+     * Подпапка для файлов, загрузка которых не удалась
+     */
+    public static final String FAILED_DIRECTORY = "failed";
+
+    private final Arguments arguments;
+
+    private final Path directory;
+
+    /**
+     * Сеанс загрузки, открывается заново, если соединение потеряно
+     */
+    private SessionProfile.Session session = null;
+
+    /**
+     * Таблица с сохранёнными метаданными и подготовленными запросами, null - метаданные не прочитаны
+     */
+    private Table table = null;
+
+    /**
+     * Версия структуры таблицы, для которой прочитаны метаданные
+     */
+    private String schemaVersion = null;
+
+    /**
+     * Пересечения колонок по заголовкам файлов для сохранённых метаданных таблицы.
+     * null - файлы с таким заголовком не загружаются.
+     */
+    private final Map<List<String>, ColumnsIntersection> intersections = new HashMap<>();
+
+    /**
+     * Размер и время изменения файлов при прошлом просмотре папки
+     */
+    private Map<Path, List<Long>> lastSeen = new HashMap<>();
+
+    /**
+     * Сигнал остановки ожидания файлов
+     */
+    private final CountDownLatch stopSignal = new CountDownLatch(1);
+
+    /**
+     * Создаёт загрузку файлов из папки
+     *
+     * @param arguments аргументы командной строки, путь к файлу - папка
+     */
+    public WatchLoader(Arguments arguments) {
+        this.arguments = arguments;
+        this.directory = Paths.get(arguments.getFilePath());
+    }
+
+    /**
+     * Просматривать папку и загружать готовые файлы до остановки.
+     * При остановке процесса ожидание прекращается после загрузки текущего файла.
+     *
+     * @throws Exception ошибка чтения папки или переноса файла
+     * @see WatchLoader#stop() остановить ожидание
+     */
+    public void watch() throws Exception {
+        Files.createDirectories(directory.resolve(LOADED_DIRECTORY));
+        Files.createDirectories(directory.resolve(FAILED_DIRECTORY));
+        System.out.printf("Ожидание файлов в папке %s, просмотр раз в %d с\n", directory,
+                arguments.getWatchSeconds());
+
+        Thread watchThread = Thread.currentThread();
+        Thread shutdownHook = new Thread(() -> {
+            stop();
+            try {
+                watchThread.join();
+            } catch (InterruptedException ignored) {
+                // процесс завершается
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try (LoadMetrics metrics = Main.startMetrics(arguments)) {
+            do {
+                // структура таблицы проверяется один раз за просмотр и заново после сброса метаданных
+                boolean isChecked = false;
+                for (var file : findReadyFiles()) {
+                    if ((!isChecked || table == null) && !prepareTable()) {
+                        break;
+                    }
+                    isChecked = true;
+                    loadFile(file, metrics);
+                    if (stopSignal.getCount() == 0) {
+                        break;
+                    }
+                }
+            } while (!stopSignal.await(arguments.getWatchSeconds(), TimeUnit.SECONDS));
+        } finally {
+            closeSession();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // процесс уже завершается
+            }
+        }
+        System.out.println("Ожидание файлов остановлено");
+    }
+
+    /**
+     * Остановить ожидание файлов. Загрузка текущего файла завершается.
+     */
+    public void stop() {
+        stopSignal.countDown();
+    }
+
+    /**
+     * Подготовить соединение и метаданные таблицы перед загрузкой файла
+     *
+     * @return true - можно загружать, false - БД или таблица недоступна, файлы загрузятся при следующем просмотре
+     */
+    private boolean prepareTable() {
+        try {
+            checkSchemaVersion();
+            return true;
+        } catch (SQLException e) {
+            System.out.printf("Нет доступа к таблице %s: %s\n", arguments.getTableName(), e.getMessage());
+            closeSession();
+            return false;
+        }
+    }
+
+    /**
+     * Найти файлы папки, не изменившиеся с прошлого просмотра
+     *
+     * @return пути к готовым файлам в порядке имён
+     * @throws IOException ошибка чтения папки
+     */
+    private List<Path> findReadyFiles() throws IOException {
+        Map<Path, List<Long>> seen = new HashMap<>();
+        List<Path> ready = new ArrayList<>();
+        List<String> filePaths;
+        try {
+            filePaths = InputFiles.resolve(directory.toString());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // в папке пока нет файлов
+            filePaths = List.of();
+        }
+        for (var filePath : filePaths) {
+            Path file = Paths.get(filePath);
+            List<Long> state = List.of(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            seen.put(file, state);
+            if (state.equals(lastSeen.get(file))) {
+                ready.add(file);
+            }
+        }
+        lastSeen = seen;
+        return ready;
+    }
+
+    /**
+     * Сбросить сохранённые метаданные таблицы, если её структура изменилась.
+     * Если соединение потеряно, открывается новое.
+     *
+     * @throws SQLException невозможно открыть соединение или прочитать каталог
+     */
+    private void checkSchemaVersion() throws SQLException {
+        if (session != null && !session.getConnection().isValid(5)) {
+            System.out.println("Соединение с БД потеряно, открывается новое");
+            closeSession();
+        }
+        if (session == null) {
+            session = SessionProfile.open(arguments.getConnectionUrl(), arguments.getSessionProfile());
+            session.getConnection().setAutoCommit(false);
+        }
+
+        Connection connection = session.getConnection();
+        String version = Table.readSchemaVersion(connection, arguments.getTableName());
+        connection.commit();
+        if (table != null && !Objects.equals(version, schemaVersion)) {
+            System.out.printf("Структура таблицы %s изменилась, метаданные читаются заново\n",
+                    arguments.getTableName());
+            invalidate();
+        }
+        if (table == null) {
+            table = new Table(connection, arguments.getTableName());
+            connection.commit();
+            schemaVersion = version;
+        }
+    }
+
+    /**
+     * Загрузить один файл и перенести его в подпапку loaded или failed
+     *
+     * @param file    путь к файлу
+     * @param metrics общие показатели загрузки
+     * @throws IOException ошибка переноса файла
+     */
+    private void loadFile(Path file, LoadMetrics metrics) throws IOException {
+        long startNanos = System.nanoTime();
+        String filePath = file.toString();
+        String rejectFilePath = filePath + ".reject";
+        String status;
+        boolean isSuccess = false;
+        try {
+            Connection connection = session.getConnection();
+            DataFile dataFile = new DataFile(filePath, arguments.getFileFormat());
+            ColumnsIntersection columnsIntersection;
+            try {
+                columnsIntersection = getColumnsIntersection(dataFile);
+            } catch (Exception e) {
+                dataFile.close();
+                throw e;
+            }
+            if (columnsIntersection == null) {
+                dataFile.close();
+                status = "пропущен, нет соответствия колонок";
+            } else {
+                FileLoader loader = new FileLoader(arguments, connection, metrics);
+                isSuccess = loader.load(filePath, dataFile, table, columnsIntersection.getColumnsIntersection(),
+                        rejectFilePath);
+                status = isSuccess
+                        ? String.format("загружен, строк загружено: %d, пропущено: %d",
+                        loader.getMetrics().getRowsInserted(), loader.getErrorsCount())
+                        : "изменения отменены";
+            }
+        } catch (Exception e) {
+            status = "ошибка: " + e.getMessage();
+            rollback();
+        }
+        if (!isSuccess) {
+            // ошибка могла быть вызвана изменением структуры таблицы, следующий файл прочитает метаданные заново
+            invalidate();
+        }
+
+        Path movedFile = moveFile(file, Paths.get(rejectFilePath),
+                directory.resolve(isSuccess ? LOADED_DIRECTORY : FAILED_DIRECTORY));
+        if (!movedFile.getFileName().equals(file.getFileName())) {
+            status += ", перенесён как " + movedFile.getFileName();
+        }
+        lastSeen.remove(file);
+        System.out.printf(Locale.ROOT, "Файл %s: %s, %.3f с\n", filePath, status,
+                (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * Перенести файл вместе с файлом отклонённых строк в подпапку.
+     * Файлы с теми же именами в подпапке не заменяются: к имени добавляется номер перед расширением
+     * (data.tsv - data_1.tsv), один и тот же для файла и файла отклонённых строк.
+     *
+     * @param file       файл с данными
+     * @param rejectFile файл отклонённых строк, может не существовать
+     * @param target     подпапка
+     * @return новый путь файла с данными
+     * @throws IOException невозможно перенести файл, в том числе если имя занято, пока файл переносился
+     */
+    private static Path moveFile(Path file, Path rejectFile, Path target) throws IOException {
+        boolean hasRejects = Files.exists(rejectFile);
+        for (int number = 0; ; number++) {
+            Path fileTarget = target.resolve(numberedName(file.getFileName().toString(), number));
+            Path rejectTarget = target.resolve(numberedName(rejectFile.getFileName().toString(), number));
+            if (Files.exists(fileTarget) || hasRejects && Files.exists(rejectTarget)) {
+                continue;
+            }
+            Files.move(file, fileTarget);
+            if (hasRejects) {
+                Files.move(rejectFile, rejectTarget);
+            }
+            return fileTarget;
+        }
+    }
+
+    /**
+     * Добавить номер к имени файла перед расширением
+     *
+     * @param fileName имя файла
+     * @param number   номер, 0 - имя не меняется
+     * @return имя файла с номером
+     */
+    private static String numberedName(String fileName, int number) {
+        if (number == 0) {
+            return fileName;
+        }
+        // расширением считается всё после первой точки, чтобы не разделять .tsv.gz
+        int extensionStart = fileName.indexOf('.', 1);
+        if (extensionStart < 0) {
+            return fileName + "_" + number;
+        }
+        return fileName.substring(0, extensionStart) + "_" + number + fileName.substring(extensionStart);
+    }
+
+    /**
+     * Получить пересечение колонок для файла: построенное ранее для такого же заголовка или новое
+     *
+     * @param dataFile файл с данными
+     * @return пересечение колонок, null - файлы с таким заголовком не загружаются
+     * @throws Exception ошибка чтения имён колонок файла или правила сопоставления колонок
+     */
+    private ColumnsIntersection getColumnsIntersection(DataFile dataFile) throws Exception {
+        List<String> header = Arrays.asList(dataFile.getFileColumns());
+        if (intersections.containsKey(header)) {
+            ColumnsIntersection columnsIntersection = intersections.get(header);
+            if (columnsIntersection != null) {
+                dataFile.setColumnsIntersection(columnsIntersection);
+            }
+            return columnsIntersection;
+        }
+
+        ColumnsIntersection columnsIntersection = dataFile.setDesiredColumns(table.getColumns(),
+                arguments.getColumnMapping());
+        if (!Main.isContinueProgramAfterColumnsIntersection(columnsIntersection, arguments.getOnError())) {
+            columnsIntersection = null;
+        }
+        intersections.put(header, columnsIntersection);
+        return columnsIntersection;
+    }
+
+    /**
+     * Сбросить сохранённые метаданные таблицы, пересечения колонок и подготовленные запросы
+     */
+    private void invalidate() {
+        if (table != null) {
+            try {
+                table.closeStatements();
+            } catch (SQLException ignored) {
+                // запросы закроются вместе с соединением
+            }
+        }
+        table = null;
+        schemaVersion = null;
+        intersections.clear();
+    }
+
+    /**
+     * Откатить незафиксированные изменения после ошибки загрузки
+     */
+    private void rollback() {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.getConnection().rollback();
+        } catch (SQLException ignored) {
+            // соединение недоступно, оно будет открыто заново при следующем просмотре папки
+        }
+    }
+
+    /**
+     * Закрыть сеанс загрузки, если он открыт
+     */
+    private void closeSession() {
+        invalidate();
+        if (session == null) {
+            return;
+        }
+        try {
+            session.close();
+        } catch (SQLException ignored) {
+            // соединение уже недоступно
+        }
+        session = null;
+    }
+}